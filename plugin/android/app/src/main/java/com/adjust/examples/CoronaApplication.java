@@ -19,6 +19,8 @@ public class CoronaApplication extends android.app.Application {
 	@Override
 	public void onCreate() {
 		super.onCreate();
+		// Start the Adjust SDK before the Corona runtime if adjust_config.json is in the assets.
+		plugin.adjust.AdjustPlugin.onCreate(this);
 		// Set up a Corona runtime listener used to add custom APIs to Lua.
 		com.ansca.corona.CoronaEnvironment.addRuntimeListener(new CoronaApplication.CoronaRuntimeEventHandler());
 	}
@@ -0,0 +1,144 @@
+//
+//  AdaptiveOfflineController.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides the SDK offline mode from the manual Lua setting and, when adaptive mode is on, from the
+ * network state.
+ * <p>
+ * The SDK is put offline as soon as the link goes bad. Going back online is delayed until the link
+ * has been good for {@link #FLUSH_DELAY_MS}, so a flapping connection does not wake the radio for
+ * every retry and the queued packages are sent together.
+ */
+final class AdaptiveOfflineController implements NetworkStateSource.Observer {
+    static final long FLUSH_DELAY_MS = 3000L;
+
+    interface OfflineModeSink {
+        void setOfflineMode(boolean offlineMode);
+    }
+
+    private final NetworkStateSource source;
+    private final OfflineModeSink sink;
+    private final ScheduledExecutorService scheduler;
+
+    private NetworkState state = NetworkState.UNKNOWN;
+    private ScheduledFuture<?> pendingFlush;
+    private boolean adaptive = false;
+    private boolean manualOfflineMode = false;
+    private boolean appliedOfflineMode = false;
+
+    AdaptiveOfflineController(NetworkStateSource source, OfflineModeSink sink, ScheduledExecutorService scheduler) {
+        this.source = source;
+        this.sink = sink;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Policy: stay offline without a connection, and on metered links while battery saver is on.
+     */
+    static boolean shouldBeOffline(NetworkState state) {
+        return !state.connected || (state.metered && state.powerSaveMode);
+    }
+
+    synchronized void setAdaptive(boolean adaptive) {
+        if (this.adaptive == adaptive) {
+            return;
+        }
+
+        this.adaptive = adaptive;
+        if (adaptive) {
+            state = source.start(this);
+        } else {
+            source.stop();
+            state = NetworkState.UNKNOWN;
+        }
+
+        update();
+    }
+
+    /**
+     * Records the offline mode requested from Lua. Without adaptive mode it is always forwarded.
+     */
+    synchronized void setManualOfflineMode(boolean offlineMode) {
+        manualOfflineMode = offlineMode;
+        if (!adaptive) {
+            cancelFlush();
+            apply(offlineMode);
+            return;
+        }
+
+        update();
+    }
+
+    @Override
+    public synchronized void onNetworkStateChanged(NetworkState state) {
+        if (!adaptive || this.state.equals(state)) {
+            return;
+        }
+
+        this.state = state;
+        update();
+    }
+
+    private void update() {
+        boolean offline = manualOfflineMode || (adaptive && shouldBeOffline(state));
+        if (offline) {
+            cancelFlush();
+            if (!appliedOfflineMode) {
+                apply(true);
+            }
+            return;
+        }
+
+        if (!appliedOfflineMode) {
+            return;
+        }
+
+        if (!adaptive) {
+            cancelFlush();
+            apply(false);
+            return;
+        }
+
+        // In adaptive mode going back online is batched behind a stable-link delay.
+        if (pendingFlush != null) {
+            return;
+        }
+
+        pendingFlush = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void flush() {
+        pendingFlush = null;
+        if (!manualOfflineMode && !(adaptive && shouldBeOffline(state))) {
+            apply(false);
+        }
+    }
+
+    private void cancelFlush() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+    }
+
+    private void apply(boolean offlineMode) {
+        appliedOfflineMode = offlineMode;
+        sink.setOfflineMode(offlineMode);
+    }
+}
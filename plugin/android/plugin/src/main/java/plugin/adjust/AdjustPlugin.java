@@ -0,0 +1,249 @@
+//
+//  AdjustPlugin.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.app.Application;
+import android.content.Context;
+import android.util.Log;
+
+import com.adjust.sdk.OnAttributionChangedListener;
+import com.adjust.sdk.OnDeeplinkResponseListener;
+import com.adjust.sdk.OnEventTrackingFailedListener;
+import com.adjust.sdk.OnEventTrackingSucceededListener;
+import com.adjust.sdk.OnSessionTrackingFailedListener;
+import com.adjust.sdk.OnSessionTrackingSucceededListener;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Native entry point to start the Adjust SDK before the Corona runtime exists.
+ * <p>
+ * Call {@link #onCreate(Application)} from your Application subclass. It returns at once; the plugin's
+ * SDK thread reads the SDK configuration from a JSON file in the app's assets and starts the SDK, so the
+ * first session is not delayed until main.lua runs and the main thread does no file or JSON work. When Lua loads the plugin later, LuaLoader attaches to the
+ * running SDK instead of creating it again, and callbacks that arrived in between are passed to the
+ * listeners registered by main.lua.
+ * <p>
+ * Also holds the process-wide state shared by both ways of starting the SDK.
+ */
+public final class AdjustPlugin {
+    private static final String TAG = "AdjustPlugin";
+
+    public static final String DEFAULT_CONFIG_ASSET = "adjust_config.json";
+
+    static final String EVENT_STATS_FILE_NAME = "adjust_event_stats.bin";
+
+    // Shared with LuaLoader, so Lua calls queue behind the early Adjust.onCreate()
+    private static final SdkExecutor sdkExecutor = new SdkExecutor();
+    private static final EventStats eventStats = new EventStats();
+    private static final NativeListeners nativeListeners = new NativeListeners();
+    private static final SdkCallbacks sdkCallbacks = new SdkCallbacks(eventStats, nativeListeners);
+    private static final GoogleAdIdPrefetcher googleAdIdPrefetcher = new GoogleAdIdPrefetcher();
+
+    private static ProcessGuard processGuard;
+    private static EarlyStart earlyStart;
+
+    private AdjustPlugin() {
+    }
+
+    /**
+     * Starts the SDK with the configuration in assets/adjust_config.json.
+     */
+    public static void onCreate(Application application) {
+        onCreate(application, DEFAULT_CONFIG_ASSET);
+    }
+
+    /**
+     * Starts the SDK with the configuration in the given assets file. Returns at once: the file is read
+     * and the SDK started on the plugin's SDK thread. Does nothing outside the main process, or if the
+     * file is missing or invalid; adjust.create() then starts the SDK as usual.
+     */
+    public static void onCreate(Application application, String configAssetName) {
+        earlyStart(application).request(application, new AssetConfigSource(application, configAssetName));
+    }
+
+    /**
+     * Registers a Java listener for attribution changes, such as an ad mediation or crash reporting
+     * component. Native listeners receive every callback of their type with the SDK's own objects, on a
+     * background thread, in addition to the Lua listeners. Registering a listener twice has no effect.
+     *
+     * @throws IllegalArgumentException if the listener is null
+     */
+    public static void addAttributionChangedListener(OnAttributionChangedListener listener) {
+        nativeListeners.addAttributionChangedListener(listener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addAttributionChangedListener(OnAttributionChangedListener)}.
+     */
+    public static void removeAttributionChangedListener(OnAttributionChangedListener listener) {
+        nativeListeners.removeAttributionChangedListener(listener);
+    }
+
+    /**
+     * Registers a Java listener for event tracking successes, see
+     * {@link #addAttributionChangedListener(OnAttributionChangedListener)}.
+     */
+    public static void addEventTrackingSucceededListener(OnEventTrackingSucceededListener listener) {
+        nativeListeners.addEventTrackingSucceededListener(listener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addEventTrackingSucceededListener(OnEventTrackingSucceededListener)}.
+     */
+    public static void removeEventTrackingSucceededListener(OnEventTrackingSucceededListener listener) {
+        nativeListeners.removeEventTrackingSucceededListener(listener);
+    }
+
+    /**
+     * Registers a Java listener for event tracking failures, see
+     * {@link #addAttributionChangedListener(OnAttributionChangedListener)}.
+     */
+    public static void addEventTrackingFailedListener(OnEventTrackingFailedListener listener) {
+        nativeListeners.addEventTrackingFailedListener(listener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addEventTrackingFailedListener(OnEventTrackingFailedListener)}.
+     */
+    public static void removeEventTrackingFailedListener(OnEventTrackingFailedListener listener) {
+        nativeListeners.removeEventTrackingFailedListener(listener);
+    }
+
+    /**
+     * Registers a Java listener for session tracking successes, see
+     * {@link #addAttributionChangedListener(OnAttributionChangedListener)}.
+     */
+    public static void addSessionTrackingSucceededListener(OnSessionTrackingSucceededListener listener) {
+        nativeListeners.addSessionTrackingSucceededListener(listener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addSessionTrackingSucceededListener(OnSessionTrackingSucceededListener)}.
+     */
+    public static void removeSessionTrackingSucceededListener(OnSessionTrackingSucceededListener listener) {
+        nativeListeners.removeSessionTrackingSucceededListener(listener);
+    }
+
+    /**
+     * Registers a Java listener for session tracking failures, see
+     * {@link #addAttributionChangedListener(OnAttributionChangedListener)}.
+     */
+    public static void addSessionTrackingFailedListener(OnSessionTrackingFailedListener listener) {
+        nativeListeners.addSessionTrackingFailedListener(listener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addSessionTrackingFailedListener(OnSessionTrackingFailedListener)}.
+     */
+    public static void removeSessionTrackingFailedListener(OnSessionTrackingFailedListener listener) {
+        nativeListeners.removeSessionTrackingFailedListener(listener);
+    }
+
+    /**
+     * Registers a Java listener for deferred deep links, see
+     * {@link #addAttributionChangedListener(OnAttributionChangedListener)}. The return value of
+     * launchReceivedDeeplink() is ignored; Lua decides whether a deferred deep link is opened.
+     */
+    public static void addDeeplinkResponseListener(OnDeeplinkResponseListener listener) {
+        nativeListeners.addDeeplinkResponseListener(listener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addDeeplinkResponseListener(OnDeeplinkResponseListener)}.
+     */
+    public static void removeDeeplinkResponseListener(OnDeeplinkResponseListener listener) {
+        nativeListeners.removeDeeplinkResponseListener(listener);
+    }
+
+    static SdkExecutor sdkExecutor() {
+        return sdkExecutor;
+    }
+
+    static SdkCallbacks sdkCallbacks() {
+        return sdkCallbacks;
+    }
+
+    static GoogleAdIdPrefetcher googleAdIdPrefetcher() {
+        return googleAdIdPrefetcher;
+    }
+
+    static EventStats eventStats() {
+        return eventStats;
+    }
+
+    static synchronized ProcessGuard processGuard(Context context) {
+        if (processGuard == null) {
+            processGuard = new ProcessGuard(context.getApplicationContext());
+        }
+
+        return processGuard;
+    }
+
+    static synchronized EarlyStart earlyStart(Context context) {
+        if (earlyStart == null) {
+            earlyStart = new EarlyStart(new StaticAdjustSdk(), sdkExecutor, sdkCallbacks, eventStats,
+                    googleAdIdPrefetcher, processGuard(context));
+        }
+
+        return earlyStart;
+    }
+
+    /**
+     * Reads the early start configuration from a JSON file in the app's assets.
+     */
+    private static final class AssetConfigSource implements EarlyStart.ConfigSource {
+        private final Context context;
+        private final String assetName;
+
+        AssetConfigSource(Context context, String assetName) {
+            this.context = context;
+            this.assetName = assetName;
+        }
+
+        @Override
+        public JSONObject read() {
+            InputStream input = null;
+            try {
+                input = context.getAssets().open(assetName);
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                int length;
+                while ((length = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, length);
+                }
+
+                return new JSONObject(output.toString("UTF-8"));
+            } catch (FileNotFoundException e) {
+                // Not configured for early start
+                Log.i(TAG, "onCreate: no " + assetName + " in assets, the SDK starts with adjust.create()");
+            } catch (IOException e) {
+                Log.e(TAG, "onCreate: cannot read " + assetName, e);
+            } catch (JSONException e) {
+                Log.e(TAG, "onCreate: invalid JSON in " + assetName, e);
+            } finally {
+                if (input != null) {
+                    try {
+                        input.close();
+                    } catch (IOException e) {
+                        // Ignore
+                    }
+                }
+            }
+
+            return null;
+        }
+    }
+}
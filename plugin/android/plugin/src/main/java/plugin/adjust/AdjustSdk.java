@@ -0,0 +1,65 @@
+//
+//  AdjustSdk.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.adjust.sdk.AdjustAttribution;
+import com.adjust.sdk.AdjustConfig;
+import com.adjust.sdk.AdjustEvent;
+import com.adjust.sdk.OnDeviceIdsRead;
+
+/**
+ * The calls the plugin makes into the Adjust SDK, one method per static Adjust method.
+ * <p>
+ * The Android implementation is {@link StaticAdjustSdk}; JVM tests and the bridge trace replay tool
+ * inject their own.
+ */
+interface AdjustSdk {
+    void onCreate(AdjustConfig adjustConfig);
+
+    void onResume();
+
+    void onPause();
+
+    void trackEvent(AdjustEvent event);
+
+    void setEnabled(boolean enabled);
+
+    boolean isEnabled();
+
+    void setOfflineMode(boolean offlineMode);
+
+    void setPushToken(String pushToken);
+
+    void setReferrer(String referrer, Context context);
+
+    void appWillOpenUrl(Uri uri);
+
+    void sendFirstPackages();
+
+    void addSessionCallbackParameter(String key, String value);
+
+    void addSessionPartnerParameter(String key, String value);
+
+    void removeSessionCallbackParameter(String key);
+
+    void removeSessionPartnerParameter(String key);
+
+    void resetSessionCallbackParameters();
+
+    void resetSessionPartnerParameters();
+
+    String getAdid();
+
+    AdjustAttribution getAttribution();
+
+    void getGoogleAdId(Context context, OnDeviceIdsRead onDeviceIdsRead);
+}
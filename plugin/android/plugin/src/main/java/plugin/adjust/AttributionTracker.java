@@ -0,0 +1,165 @@
+//
+//  AttributionTracker.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import com.adjust.sdk.AdjustAttribution;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filters the attributions reported by the SDK before they reach the Lua listeners.
+ * <p>
+ * An attribution whose fields equal the last one delivered to a listener is dropped. Changes arriving within the
+ * debounce interval of each other are delivered once, with the latest attribution. The latest
+ * attribution is also kept as a snapshot, with its JSON built once, for getAttribution().
+ */
+final class AttributionTracker {
+    static final long DEFAULT_DEBOUNCE_MS = 250L;
+
+    interface AttributionSink {
+        /**
+         * Returns true if the attribution was passed on to at least one listener.
+         */
+        boolean deliver(AdjustAttribution attribution);
+    }
+
+    /**
+     * The latest attribution and its JSON for getAttribution(), built on first use.
+     */
+    static final class Snapshot {
+        final AdjustAttribution attribution;
+        private volatile String json;
+
+        Snapshot(AdjustAttribution attribution) {
+            this.attribution = attribution;
+        }
+
+        String json() {
+            String result = json;
+            if (result == null) {
+                result = new JSONObject(LuaUtil.attributionToMap(attribution)).toString();
+                json = result;
+            }
+            return result;
+        }
+    }
+
+    private final AttributionSink sink;
+    private final ScheduledExecutorService scheduler;
+    private final Runnable deliverTask = new Runnable() {
+        @Override
+        public void run() {
+            deliverPending();
+        }
+    };
+
+    private volatile Snapshot snapshot = null;
+    private volatile long debounceMillis = DEFAULT_DEBOUNCE_MS;
+
+    // Guarded by this
+    private AdjustAttribution lastDelivered = null;
+    private AdjustAttribution pending = null;
+    private boolean deliveryScheduled = false;
+
+    AttributionTracker(AttributionSink sink, ScheduledExecutorService scheduler) {
+        this.sink = sink;
+        this.scheduler = scheduler;
+    }
+
+    void setDebounceMillis(long debounceMillis) {
+        this.debounceMillis = Math.max(0L, debounceMillis);
+    }
+
+    /**
+     * Returns the latest attribution known to the plugin, or null if there is none yet.
+     */
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Records an attribution read from the SDK outside of a callback. Does not notify the listeners.
+     */
+    Snapshot update(AdjustAttribution attribution) {
+        Snapshot current = snapshot;
+        if (current != null && same(current.attribution, attribution)) {
+            return current;
+        }
+
+        current = new Snapshot(attribution);
+        snapshot = current;
+        return current;
+    }
+
+    /**
+     * Called for every attribution the SDK reports.
+     */
+    void onAttributionChanged(AdjustAttribution attribution) {
+        update(attribution);
+
+        long delay = debounceMillis;
+        synchronized (this) {
+            pending = attribution;
+            if (deliveryScheduled) {
+                return;
+            }
+            if (delay > 0) {
+                deliveryScheduled = true;
+                scheduler.schedule(deliverTask, delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+
+        deliverPending();
+    }
+
+    private void deliverPending() {
+        AdjustAttribution attribution;
+        synchronized (this) {
+            deliveryScheduled = false;
+            attribution = pending;
+            pending = null;
+            if (attribution == null || (lastDelivered != null && same(lastDelivered, attribution))) {
+                return;
+            }
+        }
+
+        // Without a listener the attribution was not delivered, and a listener added later still gets it
+        if (sink.deliver(attribution)) {
+            synchronized (this) {
+                lastDelivered = attribution;
+            }
+        }
+    }
+
+    static boolean same(AdjustAttribution a, AdjustAttribution b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+
+        return equal(a.trackerToken, b.trackerToken)
+                && equal(a.trackerName, b.trackerName)
+                && equal(a.network, b.network)
+                && equal(a.campaign, b.campaign)
+                && equal(a.adgroup, b.adgroup)
+                && equal(a.creative, b.creative)
+                && equal(a.clickLabel, b.clickLabel)
+                && equal(a.adid, b.adid);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
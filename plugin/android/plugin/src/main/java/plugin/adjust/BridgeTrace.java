@@ -0,0 +1,52 @@
+//
+//  BridgeTrace.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+/**
+ * Binary format of the bridge call traces written by {@link BridgeTraceWriter}.
+ * <pre>
+ * trace    := MAGIC VERSION nameCount:u16 name:UTF* record*
+ * record   := RECORD_CALL time:i64 function:u16 argCount:u8 value*
+ *           | RECORD_CALLBACK time:i64 listenerType:u8 message:string
+ * value    := VALUE_NIL | VALUE_FALSE | VALUE_TRUE | VALUE_FUNCTION | VALUE_OTHER
+ *           | VALUE_NUMBER f64 | VALUE_STRING string | VALUE_TABLE pairCount:i32 (value value)*
+ * string   := length:i32 utf8Bytes
+ * </pre>
+ * Times are nanoseconds since the trace was started. Function ordinals index the name table written
+ * in the header, so a trace stays readable when functions are added to the plugin.
+ */
+final class BridgeTrace {
+    static final int MAGIC = 0x41444a54; // "ADJT"
+    static final int VERSION = 1;
+
+    static final int RECORD_CALL = 1;
+    static final int RECORD_CALLBACK = 2;
+
+    static final int VALUE_NIL = 0;
+    static final int VALUE_FALSE = 1;
+    static final int VALUE_TRUE = 2;
+    static final int VALUE_NUMBER = 3;
+    static final int VALUE_STRING = 4;
+    static final int VALUE_TABLE = 5;
+    static final int VALUE_FUNCTION = 6;
+    static final int VALUE_OTHER = 7;
+
+    /**
+     * Decoded stand-in for a Lua function argument.
+     */
+    static final Object FUNCTION = new Object() {
+        @Override
+        public String toString() {
+            return "function";
+        }
+    };
+
+    private BridgeTrace() {
+    }
+}
@@ -0,0 +1,142 @@
+//
+//  BridgeTraceReader.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads a {@link BridgeTrace} file record by record. Has no Android dependencies, so it runs on the JVM.
+ */
+final class BridgeTraceReader implements Closeable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * One recorded bridge call or SDK callback.
+     * <p>
+     * Lua values are decoded to null, Boolean, Double, String, Map (for tables) or
+     * {@link BridgeTrace#FUNCTION}.
+     */
+    static final class Record {
+        final int kind;
+        final long timeNanos;
+        final String function;
+        final Object[] args;
+        final int listenerType;
+        final String message;
+
+        Record(int kind, long timeNanos, String function, Object[] args, int listenerType, String message) {
+            this.kind = kind;
+            this.timeNanos = timeNanos;
+            this.function = function;
+            this.args = args;
+            this.listenerType = listenerType;
+            this.message = message;
+        }
+    }
+
+    private final DataInputStream in;
+    private final String[] functionNames;
+
+    BridgeTraceReader(InputStream input) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(input));
+
+        if (in.readInt() != BridgeTrace.MAGIC) {
+            throw new IOException("Not a bridge trace");
+        }
+        int version = in.readUnsignedByte();
+        if (version != BridgeTrace.VERSION) {
+            throw new IOException("Unsupported bridge trace version " + version);
+        }
+
+        functionNames = new String[in.readUnsignedShort()];
+        for (int i = 0; i < functionNames.length; i++) {
+            functionNames[i] = in.readUTF();
+        }
+    }
+
+    /**
+     * Returns the next record, or null at the end of the trace.
+     */
+    Record next() throws IOException {
+        int kind;
+        try {
+            kind = in.readUnsignedByte();
+        } catch (EOFException e) {
+            return null;
+        }
+
+        long timeNanos = in.readLong();
+        if (kind == BridgeTrace.RECORD_CALL) {
+            int function = in.readUnsignedShort();
+            Object[] args = new Object[in.readUnsignedByte()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = readValue();
+            }
+
+            String name = function < functionNames.length ? functionNames[function] : "#" + function;
+            return new Record(kind, timeNanos, name, args, -1, null);
+        }
+
+        if (kind == BridgeTrace.RECORD_CALLBACK) {
+            int listenerType = in.readUnsignedByte();
+            return new Record(kind, timeNanos, null, null, listenerType, readString());
+        }
+
+        throw new IOException("Corrupt bridge trace: unknown record kind " + kind);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private Object readValue() throws IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case BridgeTrace.VALUE_NIL:
+                return null;
+            case BridgeTrace.VALUE_FALSE:
+                return Boolean.FALSE;
+            case BridgeTrace.VALUE_TRUE:
+                return Boolean.TRUE;
+            case BridgeTrace.VALUE_NUMBER:
+                return in.readDouble();
+            case BridgeTrace.VALUE_STRING:
+                return readString();
+            case BridgeTrace.VALUE_TABLE:
+                int pairCount = in.readInt();
+                Map<Object, Object> table = new LinkedHashMap<Object, Object>();
+                for (int i = 0; i < pairCount; i++) {
+                    Object key = readValue();
+                    table.put(key, readValue());
+                }
+                return table;
+            case BridgeTrace.VALUE_FUNCTION:
+                return BridgeTrace.FUNCTION;
+            case BridgeTrace.VALUE_OTHER:
+                return null;
+            default:
+                throw new IOException("Corrupt bridge trace: unknown value type " + type);
+        }
+    }
+
+    private String readString() throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,93 @@
+//
+//  BridgeTraceReplayer.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Replays a {@link BridgeTrace} against a {@link Target} at the original pace, accelerated, or as
+ * fast as possible.
+ * <p>
+ * The replay tool in the unit test sources replays into {@link PluginReplayTarget}, which drives the
+ * plugin against a fake SDK and the test LuaState.
+ */
+final class BridgeTraceReplayer {
+    /**
+     * Receives the replayed records, in order, on the replaying thread.
+     */
+    interface Target {
+        /**
+         * A call of the Lua function with the given name. Arguments are null, Boolean, Double, String,
+         * Map for tables, or a placeholder object for functions.
+         */
+        void onCall(String function, Object[] args);
+
+        /**
+         * An SDK callback of the given listener type, with its full payload as JSON.
+         */
+        void onCallback(int listenerType, String message);
+    }
+
+    private final Target target;
+    private final double speed;
+
+    /**
+     * @param speed 1 for the original pace, higher to replay faster, 0 for no pacing
+     */
+    BridgeTraceReplayer(Target target, double speed) {
+        this.target = target;
+        this.speed = speed;
+    }
+
+    /**
+     * Replays every record of the trace read from the stream, then closes it. Returns the number of
+     * records replayed.
+     */
+    int replay(InputStream input) throws IOException, InterruptedException {
+        BridgeTraceReader reader;
+        try {
+            reader = new BridgeTraceReader(input);
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+
+        try {
+            return replay(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private int replay(BridgeTraceReader reader) throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+        int count = 0;
+
+        BridgeTraceReader.Record record;
+        while ((record = reader.next()) != null) {
+            if (speed > 0) {
+                long dueNanos = startNanos + (long) (record.timeNanos / speed);
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+                }
+            }
+
+            if (record.kind == BridgeTrace.RECORD_CALL) {
+                target.onCall(record.function, record.args);
+            } else {
+                target.onCallback(record.listenerType, record.message);
+            }
+            count++;
+        }
+
+        return count;
+    }
+}
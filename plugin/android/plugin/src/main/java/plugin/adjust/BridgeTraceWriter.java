@@ -0,0 +1,170 @@
+//
+//  BridgeTraceWriter.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.util.Log;
+
+import com.naef.jnlua.LuaState;
+import com.naef.jnlua.LuaType;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Records bridge calls and SDK callbacks into a {@link BridgeTrace} file.
+ * <p>
+ * Calls are written on the Lua thread while the arguments are still on the stack; callbacks are
+ * written from SDK threads. Output goes through a 64 KB buffer, so most calls add no disk access. The
+ * call that fills the buffer writes it to the file on its own thread, which may be the Lua thread;
+ * the rest is written on {@link #flush()} and {@link #close()}.
+ */
+final class BridgeTraceWriter {
+    private static final String TAG = "BridgeTraceWriter";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_TABLE_DEPTH = 8;
+
+    private final File file;
+    private final long startNanos;
+    private DataOutputStream out;
+
+    BridgeTraceWriter(File file, String[] functionNames) throws IOException {
+        this.file = file;
+        this.startNanos = System.nanoTime();
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+
+        out.writeInt(BridgeTrace.MAGIC);
+        out.writeByte(BridgeTrace.VERSION);
+        out.writeShort(functionNames.length);
+        for (String name : functionNames) {
+            out.writeUTF(name);
+        }
+    }
+
+    /**
+     * Records a call of the given function with the arguments currently on the Lua stack.
+     */
+    synchronized void recordCall(int function, LuaState L) {
+        if (out == null) {
+            return;
+        }
+
+        try {
+            int argCount = Math.min(L.getTop(), 255);
+            out.writeByte(BridgeTrace.RECORD_CALL);
+            out.writeLong(System.nanoTime() - startNanos);
+            out.writeShort(function);
+            out.writeByte(argCount);
+            for (int i = 1; i <= argCount; i++) {
+                writeValue(L, i, 0);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    synchronized void recordCallback(int listenerType, String message) {
+        if (out == null) {
+            return;
+        }
+
+        try {
+            out.writeByte(BridgeTrace.RECORD_CALLBACK);
+            out.writeLong(System.nanoTime() - startNanos);
+            out.writeByte(listenerType);
+            writeString(message != null ? message : "");
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    synchronized void flush() {
+        if (out == null) {
+            return;
+        }
+
+        try {
+            out.flush();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    synchronized void close() {
+        if (out == null) {
+            return;
+        }
+
+        try {
+            out.close();
+        } catch (IOException e) {
+            Log.e(TAG, "close: failed to close " + file, e);
+        }
+        out = null;
+    }
+
+    private void writeValue(LuaState L, int index, int depth) throws IOException {
+        LuaType type = L.type(index);
+        if (type == null || type == LuaType.NIL) {
+            out.writeByte(BridgeTrace.VALUE_NIL);
+        } else if (type == LuaType.BOOLEAN) {
+            out.writeByte(L.toBoolean(index) ? BridgeTrace.VALUE_TRUE : BridgeTrace.VALUE_FALSE);
+        } else if (type == LuaType.NUMBER) {
+            out.writeByte(BridgeTrace.VALUE_NUMBER);
+            out.writeDouble(L.toNumber(index));
+        } else if (type == LuaType.STRING) {
+            out.writeByte(BridgeTrace.VALUE_STRING);
+            writeString(L.toString(index));
+        } else if (type == LuaType.TABLE && depth < MAX_TABLE_DEPTH) {
+            writeTable(L, L.absIndex(index), depth);
+        } else if (type == LuaType.FUNCTION) {
+            out.writeByte(BridgeTrace.VALUE_FUNCTION);
+        } else {
+            out.writeByte(BridgeTrace.VALUE_OTHER);
+        }
+    }
+
+    private void writeTable(LuaState L, int index, int depth) throws IOException {
+        int pairCount = 0;
+        L.pushNil();
+        while (L.next(index)) {
+            pairCount++;
+            L.pop(1);
+        }
+
+        out.writeByte(BridgeTrace.VALUE_TABLE);
+        out.writeInt(pairCount);
+        L.pushNil();
+        while (L.next(index)) {
+            // Key at -2, value at -1
+            writeValue(L, -2, depth + 1);
+            writeValue(L, -1, depth + 1);
+            L.pop(1);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void fail(IOException e) {
+        Log.e(TAG, "Stopping trace after write failure to " + file, e);
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        out = null;
+    }
+}
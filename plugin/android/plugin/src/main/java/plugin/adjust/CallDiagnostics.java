@@ -0,0 +1,111 @@
+//
+//  CallDiagnostics.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.os.StrictMode;
+import android.util.Log;
+
+/**
+ * Measures the time the plugin's Lua functions spend on the calling thread.
+ * <p>
+ * Calls over the threshold are logged as they happen. While a call runs, a StrictMode thread policy
+ * logs any disk or network access made on the Lua thread, with the stack trace of the SDK method
+ * responsible. A summary per function is logged and reset by {@link #logSummary()}.
+ */
+final class CallDiagnostics {
+    private static final String TAG = "AdjustDiagnostics";
+
+    static final long DEFAULT_THRESHOLD_MS = 4L;
+
+    // Detect and log, never crash the app
+    private static final StrictMode.ThreadPolicy POLICY = new StrictMode.ThreadPolicy.Builder()
+            .detectDiskReads()
+            .detectDiskWrites()
+            .detectNetwork()
+            .penaltyLog()
+            .build();
+
+    private final String[] names;
+    private final long thresholdNanos;
+
+    // Indexed by function ordinal
+    private final long[] count;
+    private final long[] totalNanos;
+    private final long[] maxNanos;
+    private final long[] slow;
+
+    CallDiagnostics(String[] names, long thresholdMillis) {
+        this.names = names;
+        this.thresholdNanos = thresholdMillis * 1000000L;
+        this.count = new long[names.length];
+        this.totalNanos = new long[names.length];
+        this.maxNanos = new long[names.length];
+        this.slow = new long[names.length];
+    }
+
+    /**
+     * Installs the detecting thread policy and returns the one to restore in {@link #end}.
+     */
+    StrictMode.ThreadPolicy begin() {
+        StrictMode.ThreadPolicy previous = StrictMode.getThreadPolicy();
+        StrictMode.setThreadPolicy(POLICY);
+        return previous;
+    }
+
+    void end(int function, long startNanos, StrictMode.ThreadPolicy previous) {
+        long elapsed = System.nanoTime() - startNanos;
+        StrictMode.setThreadPolicy(previous);
+
+        synchronized (this) {
+            count[function]++;
+            totalNanos[function] += elapsed;
+            if (elapsed > maxNanos[function]) {
+                maxNanos[function] = elapsed;
+            }
+            if (elapsed > thresholdNanos) {
+                slow[function]++;
+            }
+        }
+
+        if (elapsed > thresholdNanos) {
+            Log.w(TAG, "adjust." + names[function] + " blocked the calling thread for "
+                    + formatMillis(elapsed) + " ms (threshold " + formatMillis(thresholdNanos) + " ms)");
+        }
+    }
+
+    synchronized void logSummary() {
+        boolean empty = true;
+        for (int function = 0; function < names.length; function++) {
+            if (count[function] == 0) {
+                continue;
+            }
+
+            empty = false;
+            Log.i(TAG, "adjust." + names[function]
+                    + " calls=" + count[function]
+                    + " total=" + formatMillis(totalNanos[function]) + "ms"
+                    + " avg=" + formatMillis(totalNanos[function] / count[function]) + "ms"
+                    + " max=" + formatMillis(maxNanos[function]) + "ms"
+                    + " slow=" + slow[function]);
+
+            count[function] = 0;
+            totalNanos[function] = 0;
+            maxNanos[function] = 0;
+            slow[function] = 0;
+        }
+
+        if (empty) {
+            Log.i(TAG, "No plugin calls since the last summary");
+        }
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.valueOf(nanos / 1000L / 1000.0);
+    }
+}
@@ -0,0 +1,169 @@
+//
+//  CallbackDispatcher.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import com.ansca.corona.CoronaRuntime;
+import com.ansca.corona.CoronaRuntimeTask;
+import com.ansca.corona.CoronaRuntimeTaskDispatcher;
+import com.naef.jnlua.LuaState;
+
+import java.util.ArrayDeque;
+
+/**
+ * Delivers pending callbacks to Lua under a time budget per frame.
+ * <p>
+ * At most one runtime task is queued at any time. Each run delivers callbacks until the budget is used
+ * up, always at least one, and queues the next task for the remainder. Priority callbacks, such as
+ * attribution and deferred deep links, are delivered before tracking callbacks, so a storm of tracking
+ * callbacks neither spikes a single frame nor delays them.
+ * <p>
+ * The dispatcher is bound to one Corona runtime at a time, identified by its Lua state, from the require
+ * of the plugin or its start until it exits. Deliveries run against the Lua state of the runtime executing
+ * the task, never a state captured earlier, and are kept until a runtime is bound. Deliveries still queued
+ * when the runtime exits are dropped, as the listener references they hold belong to it.
+ */
+final class CallbackDispatcher {
+    static final double DEFAULT_FRAME_BUDGET_MS = 1.0;
+
+    /**
+     * A callback to deliver. Runs on the Lua thread of the bound runtime.
+     */
+    interface Delivery {
+        void deliver(LuaState L);
+    }
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Delivery> priorityQueue = new ArrayDeque<Delivery>();
+    private final ArrayDeque<Delivery> queue = new ArrayDeque<Delivery>();
+
+    // Guarded by lock; true while a task is queued or running
+    private boolean scheduled = false;
+    // Guarded by lock; the Lua state of the live runtime and its task dispatcher, null between runtimes
+    private LuaState luaState = null;
+    private CoronaRuntimeTaskDispatcher taskDispatcher = null;
+
+    private volatile long frameBudgetNanos = (long)(DEFAULT_FRAME_BUDGET_MS * 1000000L);
+
+    private final CoronaRuntimeTask task = new CoronaRuntimeTask() {
+        @Override
+        public void executeUsing(CoronaRuntime runtime) {
+            drain(runtime);
+        }
+    };
+
+    /**
+     * Delivers to the runtime owning the given Lua state from now on, including the deliveries queued
+     * meanwhile.
+     */
+    void bind(LuaState L) {
+        synchronized (lock) {
+            if (luaState == L) {
+                return;
+            }
+
+            luaState = L;
+            taskDispatcher = new CoronaRuntimeTaskDispatcher(L);
+            // A task sent to the previous runtime will not run
+            scheduled = false;
+            if (priorityQueue.isEmpty() && queue.isEmpty()) {
+                return;
+            }
+            scheduled = true;
+        }
+
+        schedule();
+    }
+
+    /**
+     * Stops delivering to the runtime owning the given Lua state, which is exiting, and drops the pending
+     * deliveries.
+     */
+    void unbind(LuaState L) {
+        synchronized (lock) {
+            if (luaState != L) {
+                return;
+            }
+
+            luaState = null;
+            taskDispatcher = null;
+            scheduled = false;
+            priorityQueue.clear();
+            queue.clear();
+        }
+    }
+
+    void setFrameBudgetMillis(double frameBudgetMillis) {
+        frameBudgetNanos = (long)(frameBudgetMillis * 1000000L);
+    }
+
+    void dispatch(Delivery delivery, boolean priority) {
+        synchronized (lock) {
+            if (priority) {
+                priorityQueue.add(delivery);
+            } else {
+                queue.add(delivery);
+            }
+
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+
+        schedule();
+    }
+
+    private void drain(CoronaRuntime runtime) {
+        LuaState L = runtime.getLuaState();
+        long deadline = System.nanoTime() + frameBudgetNanos;
+        do {
+            Delivery next;
+            synchronized (lock) {
+                if (L != luaState) {
+                    // Queued before the runtime was replaced; the bound runtime has its own task
+                    return;
+                }
+                next = priorityQueue.poll();
+                if (next == null) {
+                    next = queue.poll();
+                }
+                if (next == null) {
+                    scheduled = false;
+                    return;
+                }
+            }
+
+            next.deliver(L);
+        } while (System.nanoTime() < deadline);
+
+        synchronized (lock) {
+            if (priorityQueue.isEmpty() && queue.isEmpty()) {
+                scheduled = false;
+                return;
+            }
+        }
+
+        // Carry the remainder over to the next frame
+        schedule();
+    }
+
+    private void schedule() {
+        CoronaRuntimeTaskDispatcher dispatcher;
+        synchronized (lock) {
+            dispatcher = taskDispatcher;
+            if (dispatcher == null) {
+                // No runtime to deliver to; bind() schedules the queued deliveries
+                scheduled = false;
+                return;
+            }
+        }
+
+        dispatcher.send(task);
+    }
+}
@@ -0,0 +1,279 @@
+//
+//  EarlyStart.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.adjust.sdk.AdjustConfig;
+
+import org.json.JSONObject;
+
+import java.io.File;
+
+/**
+ * Starts the SDK from Application.onCreate(), before the Corona runtime exists.
+ * <p>
+ * {@link #request} returns at once: reading the configuration, building the SDK configuration and
+ * Adjust.onCreate() run as the first task of the ordered SDK thread, so the main thread does no asset or
+ * JSON work. Until a LuaLoader takes over with {@link #handOver()}, activity resumes and pauses are
+ * reported to the SDK by lifecycle callbacks, queued behind that first task.
+ */
+final class EarlyStart {
+    private static final String TAG = "EarlyStart";
+
+    /**
+     * The JSON configuration of the early start, with the keys of the adjust.create() table.
+     */
+    interface ConfigSource {
+        /**
+         * Reads the configuration, or returns null and logs why if it is missing or invalid. Runs on the
+         * SDK thread.
+         */
+        JSONObject read();
+    }
+
+    private final AdjustSdk sdk;
+    private final SdkExecutor sdkExecutor;
+    private final SdkCallbacks sdkCallbacks;
+    private final EventStats eventStats;
+    private final GoogleAdIdPrefetcher googleAdIdPrefetcher;
+    private final ProcessGuard processGuard;
+
+    private boolean requested = false;
+    // Set on the SDK thread once Adjust.onCreate() was called with the early configuration
+    private volatile boolean started = false;
+
+    // Registered by request() until the start failed or a LuaLoader took over; guarded by this
+    private Application application = null;
+    private LifecycleCallbacks lifecycleCallbacks = null;
+    // Whether the last activity event the callbacks saw was a resume
+    private boolean resumed = false;
+
+    EarlyStart(AdjustSdk sdk, SdkExecutor sdkExecutor, SdkCallbacks sdkCallbacks, EventStats eventStats,
+               GoogleAdIdPrefetcher googleAdIdPrefetcher, ProcessGuard processGuard) {
+        this.sdk = sdk;
+        this.sdkExecutor = sdkExecutor;
+        this.sdkCallbacks = sdkCallbacks;
+        this.eventStats = eventStats;
+        this.googleAdIdPrefetcher = googleAdIdPrefetcher;
+        this.processGuard = processGuard;
+    }
+
+    /**
+     * Queues the early start with the configuration of the given source. Only the first request counts.
+     */
+    synchronized void request(final Application application, final ConfigSource configSource) {
+        if (requested) {
+            return;
+        }
+        requested = true;
+
+        // Ordered from now on; the start is the first task the SDK thread runs
+        sdkExecutor.enableOrdered();
+        sdkExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                start(application, configSource);
+            }
+        });
+
+        // No runtime listener exists yet to report the first resume, so follow the activities directly
+        this.application = application;
+        lifecycleCallbacks = new LifecycleCallbacks();
+        application.registerActivityLifecycleCallbacks(lifecycleCallbacks);
+    }
+
+    /**
+     * Returns whether the SDK was started with the early configuration. Final once the tasks queued on the
+     * SDK executor before the caller's have run.
+     */
+    boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Returns whether the lifecycle callbacks report activity resumes and pauses to the SDK, so the
+     * LuaLoader must not.
+     */
+    synchronized boolean isFollowingActivities() {
+        return lifecycleCallbacks != null;
+    }
+
+    /**
+     * Unregisters the lifecycle callbacks, as the LuaLoader reports resumes and pauses from now on. Returns
+     * true if the callbacks have not reported the current activity resume, which the LuaLoader then reports.
+     */
+    boolean handOver() {
+        Application application;
+        LifecycleCallbacks lifecycleCallbacks;
+        boolean resumed;
+        synchronized (this) {
+            application = this.application;
+            lifecycleCallbacks = this.lifecycleCallbacks;
+            resumed = this.resumed;
+            this.application = null;
+            this.lifecycleCallbacks = null;
+        }
+
+        if (lifecycleCallbacks == null) {
+            return false;
+        }
+
+        application.unregisterActivityLifecycleCallbacks(lifecycleCallbacks);
+        return !resumed;
+    }
+
+    private void start(Application application, ConfigSource configSource) {
+        JSONObject json = configSource.read();
+        if (json == null) {
+            handOver();
+            return;
+        }
+
+        String processName = json.optString("processName", null);
+        if (!processGuard.setMainProcessName(processName)) {
+            handOver();
+            return;
+        }
+
+        AdjustConfig adjustConfig = buildConfig(application, json);
+        if (adjustConfig == null) {
+            handOver();
+            return;
+        }
+
+        eventStats.setFile(new File(application.getFilesDir(), AdjustPlugin.EVENT_STATS_FILE_NAME));
+        sdkCallbacks.setDefaultShouldLaunchDeeplink(json.optBoolean("shouldLaunchDeeplink", true));
+        sdkCallbacks.install(adjustConfig);
+        sdk.onCreate(adjustConfig);
+        started = true;
+
+        // Ready by the time main.lua asks for it
+        if (json.optBoolean("prefetchGoogleAdId", false)) {
+            googleAdIdPrefetcher.prefetch(application);
+        }
+    }
+
+    /**
+     * Builds the SDK configuration from the same keys as the adjust.create() table.
+     */
+    private static AdjustConfig buildConfig(Application application, JSONObject json) {
+        String appToken = json.optString("appToken", null);
+        String environment = LuaUtil.environmentFromString(json.optString("environment", null));
+        if (appToken == null || environment == null) {
+            Log.e(TAG, "start: appToken and environment are required");
+            return null;
+        }
+
+        String logLevel = json.optString("logLevel", null);
+        boolean isLogLevelSuppress = logLevel != null && logLevel.toLowerCase().equals("suppress");
+
+        AdjustConfig adjustConfig = new AdjustConfig(application, appToken, environment, isLogLevelSuppress);
+
+        if (logLevel != null) {
+            adjustConfig.setLogLevel(LuaUtil.logLevelFromString(logLevel));
+        }
+        if (json.has("eventBufferingEnabled")) {
+            adjustConfig.setEventBufferingEnabled(json.optBoolean("eventBufferingEnabled"));
+        }
+        if (json.has("sendInBackground")) {
+            adjustConfig.setSendInBackground(json.optBoolean("sendInBackground"));
+        }
+        if (json.has("userAgent")) {
+            adjustConfig.setUserAgent(json.optString("userAgent"));
+        }
+        if (json.has("processName")) {
+            adjustConfig.setProcessName(json.optString("processName"));
+        }
+        if (json.has("defaultTracker")) {
+            adjustConfig.setDefaultTracker(json.optString("defaultTracker"));
+        }
+        if (json.has("delayStart")) {
+            adjustConfig.setDelayStart(json.optDouble("delayStart"));
+        }
+        if (json.has("isDeviceKnown")) {
+            adjustConfig.setDeviceKnown(json.optBoolean("isDeviceKnown"));
+        }
+        if (json.has("readMobileEquipmentIdentity")) {
+            adjustConfig.setReadMobileEquipmentIdentity(json.optBoolean("readMobileEquipmentIdentity"));
+        }
+        if (json.has("secretId")) {
+            adjustConfig.setAppSecret(json.optLong("secretId"), json.optLong("info1"), json.optLong("info2"),
+                    json.optLong("info3"), json.optLong("info4"));
+        }
+
+        return adjustConfig;
+    }
+
+    /**
+     * Reports activity resumes and pauses to the SDK on the SDK thread, once it was started.
+     */
+    private final class LifecycleCallbacks implements Application.ActivityLifecycleCallbacks {
+        @Override
+        public void onActivityResumed(Activity activity) {
+            synchronized (EarlyStart.this) {
+                if (lifecycleCallbacks != this) {
+                    return;
+                }
+                resumed = true;
+            }
+
+            sdkExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (started) {
+                        sdk.onResume();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+            synchronized (EarlyStart.this) {
+                if (lifecycleCallbacks != this) {
+                    return;
+                }
+                resumed = false;
+            }
+
+            sdkExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (started) {
+                        sdk.onPause();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+}
@@ -0,0 +1,298 @@
+//
+//  EventScheduler.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import com.adjust.sdk.AdjustEvent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dual-lane scheduler in front of Adjust.trackEvent().
+ * <p>
+ * High priority events (and every revenue or transaction event) are forwarded immediately. Low
+ * priority events are buffered and forwarded in batches of at most eventsPerSecond per second, so
+ * a burst of gameplay events never sits in front of a purchase in the SDK package queue.
+ * Nothing is forwarded before {@link #start()}, which is called once the SDK has been created; high
+ * priority events submitted before then are forwarded by start(), in submission order.
+ * <p>
+ * While holding, such as during gameplay, only revenue and transaction events are forwarded. Other
+ * high priority events are kept in a separate buffer and the low priority lane stops draining; when
+ * holding ends, the held events are forwarded as one batch on the scheduler thread and the low
+ * priority lane resumes.
+ */
+final class EventScheduler {
+    static final int DEFAULT_EVENTS_PER_SECOND = 10;
+    private static final long DRAIN_INTERVAL_MS = 1000L;
+
+    interface EventSink {
+        void trackEvent(AdjustEvent event);
+    }
+
+    private static final class PendingEvent {
+        final AdjustEvent event;
+        final long enqueuedAtNanos;
+
+        PendingEvent(AdjustEvent event, long enqueuedAtNanos) {
+            this.event = event;
+            this.enqueuedAtNanos = enqueuedAtNanos;
+        }
+    }
+
+    private final EventSink sink;
+    private final ScheduledExecutorService scheduler;
+    private final Object forwardLock = new Object();
+    private final ArrayDeque<PendingEvent> lowPriorityQueue = new ArrayDeque<PendingEvent>();
+    private final ArrayDeque<PendingEvent> heldQueue = new ArrayDeque<PendingEvent>();
+    // High priority events submitted before start()
+    private final ArrayDeque<AdjustEvent> startQueue = new ArrayDeque<AdjustEvent>();
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    private final Runnable releaseTask = new Runnable() {
+        @Override
+        public void run() {
+            release();
+        }
+    };
+
+    private boolean started = false;
+    private boolean drainScheduled = false;
+    private boolean holding = false;
+    private int eventsPerSecond = DEFAULT_EVENTS_PER_SECOND;
+
+    // Metrics
+    private long highPriorityForwarded;
+    private long lowPriorityForwarded;
+    private int lowPriorityMaxQueued;
+    private long held;
+    private long lowPriorityTotalWaitNanos;
+    private long lowPriorityMaxWaitNanos;
+
+    EventScheduler(EventSink sink, ScheduledExecutorService scheduler) {
+        this.sink = sink;
+        this.scheduler = scheduler;
+    }
+
+    synchronized void setEventsPerSecond(int eventsPerSecond) {
+        this.eventsPerSecond = Math.max(1, eventsPerSecond);
+    }
+
+    /**
+     * Forwards the high priority events submitted so far and starts forwarding the low priority lane.
+     */
+    void start() {
+        List<AdjustEvent> early;
+        boolean release;
+        synchronized (this) {
+            if (started) {
+                return;
+            }
+            started = true;
+            early = new ArrayList<AdjustEvent>(startQueue);
+            startQueue.clear();
+            highPriorityForwarded += early.size();
+            scheduleDrain();
+            release = !holding && !heldQueue.isEmpty();
+        }
+
+        synchronized (forwardLock) {
+            forward(early);
+        }
+
+        if (release) {
+            scheduler.execute(releaseTask);
+        }
+    }
+
+    /**
+     * Holds every event without revenue or transaction ID until {@link #setHolding(boolean)} is called
+     * with false.
+     */
+    void setHolding(boolean holding) {
+        synchronized (this) {
+            if (this.holding == holding) {
+                return;
+            }
+            this.holding = holding;
+            if (holding || !started) {
+                return;
+            }
+        }
+
+        // Off the Lua thread, which is busy switching scenes
+        scheduler.execute(releaseTask);
+    }
+
+    /**
+     * @param holdable false for revenue and transaction events, which are never held
+     */
+    void submit(AdjustEvent event, boolean highPriority, boolean holdable) {
+        if (highPriority) {
+            synchronized (this) {
+                if (holding && holdable) {
+                    heldQueue.add(new PendingEvent(event, System.nanoTime()));
+                    held++;
+                    return;
+                }
+                if (!started) {
+                    startQueue.add(event);
+                    return;
+                }
+                highPriorityForwarded++;
+            }
+            sink.trackEvent(event);
+            return;
+        }
+
+        synchronized (this) {
+            if (holding) {
+                held++;
+            }
+            lowPriorityQueue.add(new PendingEvent(event, System.nanoTime()));
+            lowPriorityMaxQueued = Math.max(lowPriorityMaxQueued, lowPriorityQueue.size());
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Forwards every buffered and held event right away, ignoring the budget. Used before the app is
+     * suspended.
+     */
+    void flush() {
+        synchronized (forwardLock) {
+            forward(takeHeld());
+            forward(take(Integer.MAX_VALUE, true));
+        }
+    }
+
+    synchronized int getLowPriorityQueued() {
+        return lowPriorityQueue.size();
+    }
+
+    synchronized int getHeldQueued() {
+        return heldQueue.size();
+    }
+
+    synchronized long getHeld() {
+        return held;
+    }
+
+    synchronized long getHighPriorityForwarded() {
+        return highPriorityForwarded;
+    }
+
+    synchronized long getLowPriorityForwarded() {
+        return lowPriorityForwarded;
+    }
+
+    synchronized int getLowPriorityMaxQueued() {
+        return lowPriorityMaxQueued;
+    }
+
+    synchronized double getLowPriorityAverageWaitMillis() {
+        return lowPriorityForwarded == 0 ? 0.0 : lowPriorityTotalWaitNanos / 1e6 / lowPriorityForwarded;
+    }
+
+    synchronized double getLowPriorityMaxWaitMillis() {
+        return lowPriorityMaxWaitNanos / 1e6;
+    }
+
+    private void drain() {
+        synchronized (this) {
+            drainScheduled = false;
+        }
+
+        synchronized (forwardLock) {
+            forward(take(eventsPerSecond(), false));
+        }
+
+        synchronized (this) {
+            scheduleDrain();
+        }
+    }
+
+    private void release() {
+        synchronized (forwardLock) {
+            forward(takeHeld());
+        }
+
+        synchronized (this) {
+            scheduleDrain();
+        }
+    }
+
+    private synchronized int eventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    private synchronized List<AdjustEvent> takeHeld() {
+        if (!started || heldQueue.isEmpty()) {
+            return null;
+        }
+
+        List<AdjustEvent> batch = new ArrayList<AdjustEvent>(heldQueue.size());
+        for (PendingEvent pending : heldQueue) {
+            batch.add(pending.event);
+        }
+
+        highPriorityForwarded += heldQueue.size();
+        heldQueue.clear();
+        return batch;
+    }
+
+    private synchronized List<AdjustEvent> take(int max, boolean force) {
+        if (!started || (holding && !force)) {
+            return null;
+        }
+
+        int count = Math.min(max, lowPriorityQueue.size());
+        if (count == 0) {
+            return null;
+        }
+
+        List<AdjustEvent> batch = new ArrayList<AdjustEvent>(count);
+        long now = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            PendingEvent pending = lowPriorityQueue.poll();
+            long wait = now - pending.enqueuedAtNanos;
+            lowPriorityTotalWaitNanos += wait;
+            lowPriorityMaxWaitNanos = Math.max(lowPriorityMaxWaitNanos, wait);
+            batch.add(pending.event);
+        }
+
+        lowPriorityForwarded += count;
+        return batch;
+    }
+
+    private void forward(List<AdjustEvent> batch) {
+        if (batch == null) {
+            return;
+        }
+
+        for (AdjustEvent event : batch) {
+            sink.trackEvent(event);
+        }
+    }
+
+    private void scheduleDrain() {
+        if (!started || holding || drainScheduled || lowPriorityQueue.isEmpty()) {
+            return;
+        }
+
+        drainScheduled = true;
+        scheduler.schedule(drainTask, DRAIN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,246 @@
+//
+//  EventStats.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counters per event token: events tracked from Lua, and tracking successes, final failures and
+ * failures the SDK will retry, as reported by the SDK callbacks.
+ * <p>
+ * Each token is interned to an id on first use, which indexes one long array per counter, so counting
+ * does not allocate and a persist snapshot is a copy of a few arrays. Counts are persisted to a small
+ * binary file by {@link #persist()}. The file is only read on first use, and counts recorded before that
+ * are added to the persisted ones. A file of another version, or one that cannot be read to the end, is
+ * ignored as a whole.
+ */
+final class EventStats {
+    private static final String TAG = "EventStats";
+
+    private static final int VERSION = 1;
+
+    static final int TRACKED = 0;
+    static final int SUCCEEDED = 1;
+    static final int FAILED = 2;
+    static final int RETRIED = 3;
+    static final int COUNTER_COUNT = 4;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    // Guarded by this
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+    // Token of each id, and per counter the count of each id
+    private String[] tokens = new String[INITIAL_CAPACITY];
+    private final long[][] counts = new long[COUNTER_COUNT][INITIAL_CAPACITY];
+    private int size = 0;
+
+    private File file;
+    private boolean loaded = false;
+    private boolean dirty = false;
+
+    /**
+     * Sets the file the counters are persisted to. Does not read it yet.
+     */
+    synchronized void setFile(File file) {
+        if (this.file == null) {
+            this.file = file;
+        }
+    }
+
+    /**
+     * Reads the persisted counters now, so the first {@link #get} does not touch the disk.
+     */
+    synchronized void preload() {
+        load();
+    }
+
+    synchronized void onTracked(String eventToken) {
+        increment(eventToken, TRACKED);
+    }
+
+    synchronized void onSucceeded(String eventToken) {
+        increment(eventToken, SUCCEEDED);
+    }
+
+    synchronized void onFailed(String eventToken, boolean willRetry) {
+        increment(eventToken, willRetry ? RETRIED : FAILED);
+    }
+
+    /**
+     * Returns a copy of the counters of a token, indexed by the counter constants.
+     */
+    synchronized long[] get(String eventToken) {
+        load();
+        long[] values = new long[COUNTER_COUNT];
+        Integer id = ids.get(eventToken);
+        if (id != null) {
+            for (int counter = 0; counter < COUNTER_COUNT; counter++) {
+                values[counter] = counts[counter][id];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Writes the counters to the file if they changed since the last write.
+     */
+    void persist() {
+        File target;
+        String[] snapshotTokens;
+        long[][] snapshotCounts = new long[COUNTER_COUNT][];
+        synchronized (this) {
+            if (!dirty || file == null) {
+                return;
+            }
+
+            load();
+            target = file;
+            snapshotTokens = Arrays.copyOf(tokens, size);
+            for (int counter = 0; counter < COUNTER_COUNT; counter++) {
+                snapshotCounts[counter] = Arrays.copyOf(counts[counter], size);
+            }
+            dirty = false;
+        }
+
+        File temp = new File(target.getPath() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            output.writeInt(VERSION);
+            output.writeInt(snapshotTokens.length);
+            for (int id = 0; id < snapshotTokens.length; id++) {
+                output.writeUTF(snapshotTokens[id]);
+                for (int counter = 0; counter < COUNTER_COUNT; counter++) {
+                    output.writeLong(snapshotCounts[counter][id]);
+                }
+            }
+            output.close();
+            output = null;
+
+            if (!temp.renameTo(target)) {
+                Log.e(TAG, "persist: cannot replace " + target);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "persist: cannot write " + temp, e);
+            synchronized (this) {
+                dirty = true;
+            }
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    private void increment(String eventToken, int counter) {
+        if (eventToken == null) {
+            return;
+        }
+
+        // Interned first, as interning may replace the counter arrays
+        int id = id(eventToken);
+        counts[counter][id]++;
+        dirty = true;
+    }
+
+    // Returns the id of the token, interning it on first use
+    private int id(String eventToken) {
+        Integer id = ids.get(eventToken);
+        if (id != null) {
+            return id;
+        }
+
+        if (size == tokens.length) {
+            int capacity = size * 2;
+            tokens = Arrays.copyOf(tokens, capacity);
+            for (int counter = 0; counter < COUNTER_COUNT; counter++) {
+                counts[counter] = Arrays.copyOf(counts[counter], capacity);
+            }
+        }
+
+        tokens[size] = eventToken;
+        ids.put(eventToken, size);
+        return size++;
+    }
+
+    private void load() {
+        if (loaded || file == null) {
+            return;
+        }
+        loaded = true;
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != VERSION) {
+                return;
+            }
+
+            int count = input.readInt();
+            if (count < 0) {
+                throw new IOException("invalid token count " + count);
+            }
+
+            // Read to the end before merging, so a damaged file adds nothing. Grown as read, as a damaged
+            // count must not size an allocation.
+            List<String> persistedTokens = new ArrayList<String>();
+            List<long[]> persistedCounts = new ArrayList<long[]>();
+            for (int i = 0; i < count; i++) {
+                persistedTokens.add(input.readUTF());
+                long[] values = new long[COUNTER_COUNT];
+                for (int counter = 0; counter < COUNTER_COUNT; counter++) {
+                    values[counter] = input.readLong();
+                }
+                persistedCounts.add(values);
+            }
+            if (input.read() != -1) {
+                throw new IOException("trailing data");
+            }
+
+            for (int i = 0; i < count; i++) {
+                int id = id(persistedTokens.get(i));
+                long[] values = persistedCounts.get(i);
+                for (int counter = 0; counter < COUNTER_COUNT; counter++) {
+                    counts[counter][id] += values[counter];
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing persisted yet
+        } catch (IOException e) {
+            Log.e(TAG, "load: cannot read " + file, e);
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+//
+//  EventTablePool.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import com.ansca.corona.CoronaLua;
+import com.naef.jnlua.LuaState;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Event tables kept in the Lua registry and reused across callbacks, per event name.
+ * <p>
+ * Lifetime contract: a pooled table only belongs to the listener while it is being called. Once the
+ * listener returns, the table goes back to the pool and its fields are overwritten by the next callback
+ * of the same name. Listeners must copy the values they keep instead of storing the event table. Fields
+ * a listener adds to the table are not cleared.
+ * <p>
+ * Only used on the Lua thread.
+ */
+final class EventTablePool {
+    // Idle tables kept per event name; deliveries are sequential, so one is normally enough
+    private static final int MAX_IDLE_PER_NAME = 2;
+
+    private final Map<String, ArrayDeque<Integer>> idle = new HashMap<String, ArrayDeque<Integer>>();
+    private final Map<Integer, String> names = new HashMap<Integer, String>();
+
+    // The Lua state the registry references belong to
+    private LuaState luaState;
+
+    /**
+     * Pushes an event table with its name field set and returns its reference for {@link #release}.
+     */
+    int push(LuaState L, String name) {
+        if (L != luaState) {
+            // The runtime was replaced; references into the old registry are meaningless
+            idle.clear();
+            names.clear();
+            luaState = L;
+        }
+
+        ArrayDeque<Integer> tables = idle.get(name);
+        Integer ref = tables != null ? tables.poll() : null;
+        if (ref != null) {
+            L.rawGet(LuaState.REGISTRYINDEX, ref);
+            return ref;
+        }
+
+        CoronaLua.newEvent(L, name);
+        int newRef = CoronaLua.newRef(L, -1);
+        names.put(newRef, name);
+        return newRef;
+    }
+
+    void release(LuaState L, int ref) {
+        String name = names.get(ref);
+        if (L != luaState || name == null) {
+            return;
+        }
+
+        ArrayDeque<Integer> tables = idle.get(name);
+        if (tables == null) {
+            tables = new ArrayDeque<Integer>();
+            idle.put(name, tables);
+        }
+
+        if (tables.size() < MAX_IDLE_PER_NAME) {
+            tables.add(ref);
+        } else {
+            names.remove(ref);
+            CoronaLua.deleteRef(L, ref);
+        }
+    }
+
+    /**
+     * Releases every registry reference held by the pool.
+     */
+    void clear(LuaState L) {
+        if (L == luaState) {
+            for (Integer ref : names.keySet()) {
+                CoronaLua.deleteRef(L, ref);
+            }
+        }
+
+        idle.clear();
+        names.clear();
+        luaState = null;
+    }
+}
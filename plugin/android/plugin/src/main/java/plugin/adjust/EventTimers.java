@@ -0,0 +1,97 @@
+//
+//  EventTimers.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.os.SystemClock;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Named timers measuring durations for trackEventWithTimer().
+ * <p>
+ * Timer names are interned into ids once, and start times are kept in an array indexed by id. Times come
+ * from the monotonic elapsedRealtime() clock, so they are not affected by changes of the wall clock.
+ * Time spent while the app is suspended is not counted.
+ */
+final class EventTimers {
+    private static final long NOT_STARTED = -1L;
+
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+    private long[] starts = new long[8];
+
+    // Guarded by this; when the app was suspended, NOT_STARTED while it runs
+    private long suspendedAt = NOT_STARTED;
+
+    EventTimers() {
+        Arrays.fill(starts, NOT_STARTED);
+    }
+
+    /**
+     * Starts the timer with the given name, restarting it if it is running.
+     */
+    synchronized void start(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = ids.size();
+            ids.put(name, id);
+            if (id == starts.length) {
+                int length = starts.length;
+                starts = Arrays.copyOf(starts, length * 2);
+                Arrays.fill(starts, length, starts.length, NOT_STARTED);
+            }
+        }
+
+        starts[id] = now();
+    }
+
+    /**
+     * Stops the timer with the given name and returns its duration in milliseconds, or -1 if it was not
+     * started.
+     */
+    synchronized long stop(String name) {
+        Integer id = ids.get(name);
+        if (id == null || starts[id] == NOT_STARTED) {
+            return -1L;
+        }
+
+        long duration = now() - starts[id];
+        starts[id] = NOT_STARTED;
+        return duration;
+    }
+
+    synchronized void pause() {
+        if (suspendedAt == NOT_STARTED) {
+            suspendedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Moves the start of every running timer forward by the time spent suspended.
+     */
+    synchronized void resume() {
+        if (suspendedAt == NOT_STARTED) {
+            return;
+        }
+
+        long paused = SystemClock.elapsedRealtime() - suspendedAt;
+        suspendedAt = NOT_STARTED;
+        for (int i = 0; i < starts.length; i++) {
+            if (starts[i] != NOT_STARTED) {
+                starts[i] += paused;
+            }
+        }
+    }
+
+    // While suspended, time stands still at the moment of the suspend
+    private long now() {
+        return suspendedAt != NOT_STARTED ? suspendedAt : SystemClock.elapsedRealtime();
+    }
+}
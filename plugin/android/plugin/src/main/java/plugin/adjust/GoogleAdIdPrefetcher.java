@@ -0,0 +1,146 @@
+//
+//  GoogleAdIdPrefetcher.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.adjust.sdk.Adjust;
+import com.adjust.sdk.OnDeviceIdsRead;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the Google advertising ID ahead of the first getGoogleAdId() call.
+ * <p>
+ * Reading the ID binds to Google Play Services, which can take hundreds of milliseconds. Once
+ * {@link #prefetch(Context)} has started the lookup, callers are answered from its result as soon as it
+ * is known, and callers arriving earlier wait for the same lookup. An ID that was read is kept for the
+ * lifetime of the process. A failed lookup is reported to the callers waiting for it and not kept, so the
+ * next call reads the ID again. One instance exists per process, see {@link AdjustPlugin}.
+ */
+final class GoogleAdIdPrefetcher {
+    private static final String TAG = "GoogleAdIdPrefetcher";
+
+    private final List<OnDeviceIdsRead> waiting = new ArrayList<OnDeviceIdsRead>();
+
+    // Guarded by this; prefetching stays set once asked for, requested only while a lookup runs
+    private boolean prefetching = false;
+    private boolean requested = false;
+    private boolean resolved = false;
+    private String googleAdId = null;
+    private long requestedAtNanos;
+    private long latencyNanos = -1L;
+    private long answeredFromCache = 0;
+
+    /**
+     * Starts the lookup if the ID is neither known nor being read. Returns immediately.
+     */
+    void prefetch(Context context) {
+        synchronized (this) {
+            prefetching = true;
+            if (!startLookup()) {
+                return;
+            }
+        }
+
+        read(context);
+    }
+
+    synchronized boolean isPrefetching() {
+        return prefetching;
+    }
+
+    /**
+     * Answers from the prefetched ID, or once the running lookup completes. Starts a new lookup if the
+     * previous one failed. Must only be called after {@link #prefetch(Context)}.
+     */
+    void get(Context context, OnDeviceIdsRead callback) {
+        String result;
+        synchronized (this) {
+            if (!resolved) {
+                waiting.add(callback);
+                if (!startLookup()) {
+                    return;
+                }
+                result = null;
+            } else {
+                answeredFromCache++;
+                result = googleAdId;
+            }
+        }
+
+        if (result != null) {
+            callback.onGoogleAdIdRead(result);
+        } else {
+            read(context);
+        }
+    }
+
+    synchronized boolean isResolved() {
+        return resolved;
+    }
+
+    /**
+     * Returns the milliseconds the lookup took, or -1 while it is running or was not started.
+     */
+    synchronized double getLatencyMillis() {
+        return latencyNanos < 0 ? -1.0 : latencyNanos / 1e6;
+    }
+
+    synchronized long getAnsweredFromCache() {
+        return answeredFromCache;
+    }
+
+    // Returns true if the caller has to start the lookup
+    private boolean startLookup() {
+        if (requested || resolved) {
+            return false;
+        }
+        requested = true;
+        requestedAtNanos = System.nanoTime();
+        return true;
+    }
+
+    private void read(Context context) {
+        // The SDK reads the ID on a background thread and reports it on the main thread
+        Adjust.getGoogleAdId(context.getApplicationContext(), new OnDeviceIdsRead() {
+            @Override
+            public void onGoogleAdIdRead(String googleAdId) {
+                onRead(googleAdId);
+            }
+        });
+    }
+
+    private void onRead(String googleAdId) {
+        List<OnDeviceIdsRead> callbacks;
+        long latency;
+        synchronized (this) {
+            // Without an ID the callers waiting now are answered, and the next one starts a new lookup
+            this.googleAdId = googleAdId;
+            requested = false;
+            resolved = googleAdId != null;
+            latencyNanos = System.nanoTime() - requestedAtNanos;
+            latency = latencyNanos;
+            callbacks = new ArrayList<OnDeviceIdsRead>(waiting);
+            waiting.clear();
+        }
+
+        if (googleAdId != null) {
+            Log.i(TAG, "Google advertising ID read in " + (latency / 1000000L) + " ms");
+        } else {
+            Log.w(TAG, "Google advertising ID could not be read, " + (latency / 1000000L) + " ms");
+        }
+
+        for (OnDeviceIdsRead callback : callbacks) {
+            callback.onGoogleAdIdRead(googleAdId);
+        }
+    }
+}
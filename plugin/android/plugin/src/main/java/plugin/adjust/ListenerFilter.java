@@ -0,0 +1,40 @@
+//
+//  ListenerFilter.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import java.util.Set;
+
+/**
+ * Java-side predicate of a Lua listener, matched against the raw SDK callback object so that
+ * callbacks nobody is interested in never cross into Lua.
+ * <p>
+ * A null criterion matches anything. Criteria that do not apply to a callback type (e.g. eventToken
+ * for session callbacks) are ignored.
+ */
+final class ListenerFilter {
+    private final Set<String> eventTokens;
+    private final Boolean willRetry;
+
+    ListenerFilter(Set<String> eventTokens, Boolean willRetry) {
+        this.eventTokens = eventTokens;
+        this.willRetry = willRetry;
+    }
+
+    boolean matches(String eventToken, Boolean willRetry) {
+        if (eventTokens != null && eventToken != null && !eventTokens.contains(eventToken)) {
+            return false;
+        }
+
+        if (this.willRetry != null && willRetry != null && !this.willRetry.equals(willRetry)) {
+            return false;
+        }
+
+        return true;
+    }
+}
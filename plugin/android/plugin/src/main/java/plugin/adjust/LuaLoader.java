@@ -9,34 +9,35 @@
 // Adjust SDK is named "plugin.adjust"
 package plugin.adjust;
 
+import android.content.Context;
 import android.net.Uri;
+import android.os.StrictMode;
 import android.util.Log;
-import com.adjust.sdk.Adjust;
 import com.adjust.sdk.AdjustAttribution;
 import com.adjust.sdk.AdjustConfig;
 import com.adjust.sdk.AdjustEvent;
-import com.adjust.sdk.AdjustEventFailure;
-import com.adjust.sdk.AdjustEventSuccess;
-import com.adjust.sdk.AdjustSessionFailure;
-import com.adjust.sdk.AdjustSessionSuccess;
-import com.adjust.sdk.LogLevel;
-import com.adjust.sdk.OnAttributionChangedListener;
-import com.adjust.sdk.OnDeeplinkResponseListener;
 import com.adjust.sdk.OnDeviceIdsRead;
-import com.adjust.sdk.OnEventTrackingFailedListener;
-import com.adjust.sdk.OnEventTrackingSucceededListener;
-import com.adjust.sdk.OnSessionTrackingFailedListener;
-import com.adjust.sdk.OnSessionTrackingSucceededListener;
 import com.ansca.corona.CoronaEnvironment;
 import com.ansca.corona.CoronaLua;
 import com.ansca.corona.CoronaRuntime;
 import com.ansca.corona.CoronaRuntimeListener;
-import com.ansca.corona.CoronaRuntimeTask;
 import com.naef.jnlua.JavaFunction;
 import com.naef.jnlua.LuaState;
 import com.naef.jnlua.NamedJavaFunction;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * Implements the Lua interface for a Corona plugin.
  * <p>
@@ -61,17 +62,168 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 	public static final String EVENT_GET_GOOGLE_AD_ID = "adjust_getGoogleAdId";
 	public static final String EVENT_GET_AMAZON_AD_ID = "adjust_getAmazonAdId";
 
-	// Listeners
-	private int attributionChangedListener;
-	private int eventTrackingSuccessListener;
-	private int eventTrackingFailureListener;
-	private int sessionTrackingSuccessListener;
-	private int sessionTrackingFailureListener;
-	private int deferredDeeplinkListener;
+	// Longest onSuspended() waits for queued SDK calls in ordered mode
+	private static final long SUSPEND_AWAIT_MS = 1000L;
+
+	private static final String TRACE_FILE_NAME = "adjust_bridge_trace.bin";
+
+	// Lua function ordinals, used as indices into FUNCTION_NAMES
+	private static final int FUNCTION_CREATE = 0;
+	private static final int FUNCTION_TRACK_EVENT = 1;
+	private static final int FUNCTION_SET_ENABLED = 2;
+	private static final int FUNCTION_IS_ENABLED = 3;
+	private static final int FUNCTION_SET_REFERRER = 4;
+	private static final int FUNCTION_SET_OFFLINE_MODE = 5;
+	private static final int FUNCTION_SET_PUSH_TOKEN = 6;
+	private static final int FUNCTION_APP_WILL_OPEN_URL = 7;
+	private static final int FUNCTION_SEND_FIRST_PACKAGE = 8;
+	private static final int FUNCTION_ADD_SESSION_CALLBACK_PARAMETER = 9;
+	private static final int FUNCTION_ADD_SESSION_PARTNER_PARAMETER = 10;
+	private static final int FUNCTION_REMOVE_SESSION_CALLBACK_PARAMETER = 11;
+	private static final int FUNCTION_REMOVE_SESSION_PARTNER_PARAMETER = 12;
+	private static final int FUNCTION_RESET_SESSION_CALLBACK_PARAMETERS = 13;
+	private static final int FUNCTION_RESET_SESSION_PARTNER_PARAMETERS = 14;
+	private static final int FUNCTION_GET_IDFA = 15;
+	private static final int FUNCTION_GET_ATTRIBUTION = 16;
+	private static final int FUNCTION_SET_ATTRIBUTION_LISTENER = 17;
+	private static final int FUNCTION_SET_EVENT_TRACKING_SUCCESS_LISTENER = 18;
+	private static final int FUNCTION_SET_EVENT_TRACKING_FAILURE_LISTENER = 19;
+	private static final int FUNCTION_SET_SESSION_TRACKING_SUCCESS_LISTENER = 20;
+	private static final int FUNCTION_SET_SESSION_TRACKING_FAILURE_LISTENER = 21;
+	private static final int FUNCTION_SET_DEFERRED_DEEPLINK_LISTENER = 22;
+	private static final int FUNCTION_GET_ADID = 23;
+	private static final int FUNCTION_GET_GOOGLE_AD_ID = 24;
+	private static final int FUNCTION_GET_AMAZON_AD_ID = 25;
+	private static final int FUNCTION_GET_EVENT_SCHEDULER_METRICS = 26;
+	private static final int FUNCTION_ADD_LISTENER = 27;
+	private static final int FUNCTION_REMOVE_LISTENER = 28;
+	private static final int FUNCTION_START_BRIDGE_TRACE = 29;
+	private static final int FUNCTION_STOP_BRIDGE_TRACE = 30;
+	private static final int FUNCTION_GET_SUPPRESSED_CALLS = 31;
+	private static final int FUNCTION_SET_DIAGNOSTICS_ENABLED = 32;
+	private static final int FUNCTION_GET_EVENT_STATS = 33;
+	private static final int FUNCTION_SET_GAME_STATE = 34;
+	private static final int FUNCTION_GET_PARAMETER_VIOLATIONS = 35;
+	private static final int FUNCTION_START_TIMER = 36;
+	private static final int FUNCTION_TRACK_EVENT_WITH_TIMER = 37;
+	private static final int FUNCTION_PREFETCH_GOOGLE_AD_ID = 38;
+	private static final int FUNCTION_GET_GOOGLE_AD_ID_METRICS = 39;
+
+	// Lua function names, indexed by the FUNCTION_* ordinals above
+	static final String[] FUNCTION_NAMES = new String[] {
+			"create",
+			"trackEvent",
+			"setEnabled",
+			"isEnabled",
+			"setReferrer",
+			"setOfflineMode",
+			"setPushToken",
+			"appWillOpenUrl",
+			"sendFirstPackage",
+			"addSessionCallbackParameter",
+			"addSessionPartnerParameter",
+			"removeSessionCallbackParameter",
+			"removeSessionPartnerParameter",
+			"resetSessionCallbackParameters",
+			"resetSessionPartnerParameters",
+			"getIdfa",
+			"getAttribution",
+			"setAttributionListener",
+			"setEventTrackingSuccessListener",
+			"setEventTrackingFailureListener",
+			"setSessionTrackingSuccessListener",
+			"setSessionTrackingFailureListener",
+			"setDeferredDeeplinkListener",
+			"getAdid",
+			"getGoogleAdId",
+			"getAmazonAdId",
+			"getEventSchedulerMetrics",
+			"addListener",
+			"removeListener",
+			"startBridgeTrace",
+			"stopBridgeTrace",
+			"getSuppressedCalls",
+			"setDiagnosticsEnabled",
+			"getEventStats",
+			"setGameState",
+			"getParameterViolations",
+			"startTimer",
+			"trackEventWithTimer",
+			"prefetchGoogleAdId",
+			"getGoogleAdIdMetrics"
+	};
+
+	// Lua functions registered by invoke(), built once per process
+	private final NamedJavaFunction[] luaFunctions;
+
+	// Listener and callback configuration, read lock-free from SDK callback threads
+	private final AtomicReference<PluginState> state = new AtomicReference<PluginState>(PluginState.INITIAL);
+	private final Object stateLock = new Object();
+
+	// Built by initialize() in the main process only, on the Lua thread and before the SDK is created
+
+	// Timer thread shared by the plugin's deferred work
+	private ScheduledExecutorService scheduler;
+
+	// Arbitrates between manual and network-driven offline mode
+	private AdaptiveOfflineController offlineController;
+
+	// Forwards events to the SDK through the high and low priority lanes
+	private EventScheduler eventScheduler;
+
+	// Drops repeated attributions, debounces changes and keeps the latest for getAttribution()
+	private AttributionTracker attributionTracker;
+
+	// Values last applied through the setters, used to drop calls that would not change SDK state
+	private SetterMirror setterMirror;
+
+	// Application context, for the SDK configuration and the plugin's files
+	private final Context context;
+
+	// Whether this is the app's main process, where the SDK runs
+	private final ProcessGuard processGuard;
+
+	// The Adjust SDK the calls from Lua go to
+	private final AdjustSdk sdk;
+
+	// Calls made before create() in an undecided process, as { function, argument table reference, argument count }.
+	// The count keeps nil arguments, which the table cannot hold. Lua thread only.
+	private final List<int[]> deferredCalls = new ArrayList<int[]>();
+
+	// Runs the calls into the SDK, inline or on the ordered SDK thread
+	private final SdkExecutor sdkExecutor;
+
+	// Routes SDK callbacks to the Lua listeners; shared with an SDK started from Application.onCreate()
+	private final SdkCallbacks sdkCallbacks;
+
+	// Tracked and reported events per token, persisted across sessions
+	private final EventStats eventStats;
+
+	// The SDK start from Application.onCreate(), if the app requested one
+	private final EarlyStart earlyStart;
+
+	// Google advertising ID read ahead of getGoogleAdId(); shared with an early started SDK
+	private final GoogleAdIdPrefetcher googleAdIdPrefetcher = AdjustPlugin.googleAdIdPrefetcher();
+
+	// Durations measured for trackEventWithTimer()
+	private final EventTimers eventTimers = new EventTimers();
+
+	// Size limits on event and session parameters
+	private final ParameterGovernor parameterGovernor = new ParameterGovernor();
+
+	// Times the calls made from Lua while diagnostics are enabled, null otherwise
+	private volatile CallDiagnostics diagnostics = null;
+
+	// Delivers callbacks to Lua under a per-frame time budget
+	private final CallbackDispatcher callbackDispatcher = new CallbackDispatcher();
+
+	// Reused callback event tables when pooling is on, null otherwise. Lua thread only.
+	private EventTablePool eventTablePool = null;
+
+	// Records bridge calls and SDK callbacks while a trace is running, null otherwise
+	private volatile BridgeTraceWriter traceWriter = null;
 
 	private Uri uri = null;
-	private boolean didStartAdjustSdk = false;
-	private boolean shouldLaunchDeeplink = true;
 
 	/**
 	 * Creates a new Lua interface to this plugin.
@@ -82,19 +234,131 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 	 */
 	@SuppressWarnings("unused")
 	public LuaLoader() {
-		// Initialize listeners to REFNIL
-		attributionChangedListener = CoronaLua.REFNIL;
-		eventTrackingSuccessListener = CoronaLua.REFNIL;
-		eventTrackingFailureListener = CoronaLua.REFNIL;
-		sessionTrackingSuccessListener = CoronaLua.REFNIL;
-		sessionTrackingFailureListener = CoronaLua.REFNIL;
-		deferredDeeplinkListener = CoronaLua.REFNIL;
+		this(CoronaEnvironment.getApplicationContext(),
+				AdjustPlugin.processGuard(CoronaEnvironment.getApplicationContext()),
+				new StaticAdjustSdk(),
+				AdjustPlugin.sdkExecutor(),
+				AdjustPlugin.sdkCallbacks(),
+				AdjustPlugin.eventStats(),
+				AdjustPlugin.earlyStart(CoronaEnvironment.getApplicationContext()));
 
 		// Set up this plugin to listen for Corona runtime events to be received by methods
 		// onLoaded(), onStarted(), onSuspended(), onResumed(), and onExiting().
 		CoronaEnvironment.addRuntimeListener(this);
 	}
 
+	/**
+	 * Creates a Lua interface to the given SDK, with the process-wide parts passed in, for JVM tests and the
+	 * bridge trace replay tool. Not registered for Corona runtime events.
+	 */
+	LuaLoader(Context context, ProcessGuard processGuard, AdjustSdk sdk, SdkExecutor sdkExecutor,
+			  SdkCallbacks sdkCallbacks, EventStats eventStats, EarlyStart earlyStart) {
+		this.context = context;
+		this.processGuard = processGuard;
+		this.sdk = sdk;
+		this.sdkExecutor = sdkExecutor;
+		this.sdkCallbacks = sdkCallbacks;
+		this.eventStats = eventStats;
+		this.earlyStart = earlyStart;
+
+		// Build the Lua function table once; invoke() re-registers the same instances on every require()
+		luaFunctions = new NamedJavaFunction[FUNCTION_NAMES.length];
+		for (int i = 0; i < FUNCTION_NAMES.length; i++) {
+			luaFunctions[i] = new LuaFunction(this, i);
+		}
+
+		// Worker processes build nothing else; a main process with a custom name builds the rest in create()
+		if (processGuard.isMainProcess()) {
+			initialize();
+
+			// Attach to an SDK already started from Application.onCreate(); create() attaches if it is still starting
+			if (earlyStart.isStarted()) {
+				synchronized (stateLock) {
+					state.set(state.get()
+							.withShouldLaunchDeeplink(sdkCallbacks.defaultShouldLaunchDeeplink())
+							.withSdkStarted(true));
+				}
+				eventScheduler.start();
+				takeOverLifecycle();
+			}
+		}
+	}
+
+	/**
+	 * Reports activity resumes and pauses from now on, instead of the lifecycle callbacks of an early start.
+	 */
+	private void takeOverLifecycle() {
+		if (earlyStart.handOver()) {
+			sdkExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					sdk.onResume();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Builds the parts of the plugin that only the main process needs, and starts reading their persisted state.
+	 * Does nothing if they are built already.
+	 */
+	private void initialize() {
+		if (scheduler != null) {
+			return;
+		}
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("adjust-plugin"));
+
+		offlineController = new AdaptiveOfflineController(
+				new SystemNetworkStateSource(context),
+				new AdaptiveOfflineController.OfflineModeSink() {
+					@Override
+					public void setOfflineMode(final boolean offlineMode) {
+						sdkExecutor.execute(new Runnable() {
+							@Override
+							public void run() {
+								sdk.setOfflineMode(offlineMode);
+							}
+						});
+					}
+				},
+				scheduler);
+
+		eventScheduler = new EventScheduler(
+				new EventScheduler.EventSink() {
+					@Override
+					public void trackEvent(final AdjustEvent event) {
+						sdkExecutor.execute(new Runnable() {
+							@Override
+							public void run() {
+								sdk.trackEvent(event);
+							}
+						});
+					}
+				},
+				scheduler);
+
+		attributionTracker = new AttributionTracker(
+				new AttributionTracker.AttributionSink() {
+					@Override
+					public boolean deliver(AdjustAttribution attribution) {
+						return sdkCallbacks.deliverAttribution(attribution);
+					}
+				},
+				scheduler);
+
+		setterMirror = new SetterMirror(context);
+		eventStats.setFile(new File(context.getFilesDir(),
+				AdjustPlugin.EVENT_STATS_FILE_NAME));
+		scheduler.execute(new Runnable() {
+			@Override
+			public void run() {
+				eventStats.preload();
+				setterMirror.preload();
+			}
+		});
+	}
+
 	/**
 	 * Called when this plugin is being loaded via the Lua require() function.
 	 * <p>
@@ -110,38 +374,23 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 	 */
 	@Override
 	public int invoke(LuaState L) {
-		// Register this plugin into Lua with the following functions.
-		NamedJavaFunction[] luaFunctions = new NamedJavaFunction[] {
-				new CreateWrapper(),
-				new TrackEventWrapper(),
-				new SetEnabledWrapper(),
-				new IsEnabledWrapper(),
-				new SetReferrerWrapper(),
-				new SetOfflineModeWrapper(),
-				new SetPushTokenWrapper(),
-				new AppWillOpenUrlWrapper(),
-				new SendFirstPackageWrapper(),
-				new AddSessionCallbackParameterWrapper(),
-				new AddSessionPartnerParameterWrapper(),
-				new RemoveSessionCallbackParameterWrapper(),
-				new RemoveSessionPartnerParameterWrapper(),
-				new ResetSessionCallbackParametersWrapper(),
-				new ResetSessionPartnerParametersWrapper(),
-				new GetIdfaWrapper(),
-				new GetAttributionWrapper(),
-				new SetAttributionListenerWrapper(),
-				new SetEventTrackingSuccessListenerWrapper(),
-				new SetEventTrackingFailureListenerWrapper(),
-				new SetSessionTrackingSuccessListenerWrapper(),
-				new SetSessionTrackingFailureListenerWrapper(),
-				new SetDeferredDeeplinkListenerWrapper(),
-				new GetAdidWrapper(),
-				new GetGoogleAdIdWrapper(),
-				new GetAmazonAdIdWrapper()
-		};
+		// Register this plugin into Lua with the prebuilt function table.
 		String libName = L.toString(1);
 		L.register(libName, luaFunctions);
 
+		// Deliver to the runtime requiring the plugin, which may have started long before
+		callbackDispatcher.bind(L);
+		sdkCallbacks.attach(this);
+
+		// Runs on a later frame, once the requiring code has registered its listeners. Needed when the plugin is
+		// required after the runtime started, as onStarted() has then passed.
+		callbackDispatcher.dispatch(new CallbackDispatcher.Delivery() {
+			@Override
+			public void deliver(LuaState luaState) {
+				sdkCallbacks.replayPending();
+			}
+		}, true);
+
 		// Returning 1 indicates that the Lua require() function will return the above Lua library.
 		return 1;
 	}
@@ -160,6 +409,7 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 		// This is because this listener cannot be added to the CoronaEnvironment until after
 		// this plugin has been required-in by Lua, which occurs after the onLoaded() event.
 		// However, this method will be called when a 2nd Corona activity has been created.
+		callbackDispatcher.bind(runtime.getLuaState());
 	}
 
 	/**
@@ -171,6 +421,11 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 	 */
 	@Override
 	public void onStarted(CoronaRuntime runtime) {
+		// Already bound in invoke() when the plugin was required by this runtime
+		callbackDispatcher.bind(runtime.getLuaState());
+
+		// main.lua has registered its listeners; pass on what an early started SDK reported meanwhile
+		sdkCallbacks.replayPending();
 	}
 
 	/**
@@ -184,7 +439,46 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 	 */
 	@Override
 	public void onSuspended(CoronaRuntime runtime) {
-		Adjust.onPause();
+		if (!processGuard.isMainProcess()) {
+			return;
+		}
+
+		// Time in the background does not count towards event durations
+		eventTimers.pause();
+
+		// Hand buffered low priority events to the SDK, which persists its package queue
+		eventScheduler.flush();
+		if (!earlyStart.isFollowingActivities()) {
+			sdkExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					sdk.onPause();
+				}
+			});
+		}
+
+		// Let queued SDK calls reach the SDK before the process may be killed in the background
+		if (!sdkExecutor.await(SUSPEND_AWAIT_MS)) {
+			Log.w(TAG, "onSuspended: SDK calls still queued after " + SUSPEND_AWAIT_MS + " ms");
+		}
+
+		BridgeTraceWriter trace = traceWriter;
+		if (trace != null) {
+			trace.flush();
+		}
+
+		// Off this thread; a few bytes per token, written only if a counter changed
+		scheduler.execute(new Runnable() {
+			@Override
+			public void run() {
+				eventStats.persist();
+			}
+		});
+
+		CallDiagnostics diagnostics = this.diagnostics;
+		if (diagnostics != null) {
+			diagnostics.logSummary();
+		}
 	}
 
 	/**
@@ -196,7 +490,23 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 	 */
 	@Override
 	public void onResumed(CoronaRuntime runtime) {
-		Adjust.onResume();
+		if (!processGuard.isMainProcess()) {
+			return;
+		}
+
+		eventTimers.resume();
+
+		// Until this plugin takes over, an early start follows the activities itself
+		if (earlyStart.isFollowingActivities()) {
+			return;
+		}
+
+		sdkExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				sdk.onResume();
+			}
+		});
 	}
 
 	/**
@@ -212,27 +522,34 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 	 */
 	@Override
 	public void onExiting(CoronaRuntime runtime) {
-		// Remove the Lua listener reference.
-		CoronaLua.deleteRef(runtime.getLuaState(), attributionChangedListener);
-		CoronaLua.deleteRef(runtime.getLuaState(), sessionTrackingSuccessListener);
-		CoronaLua.deleteRef(runtime.getLuaState(), sessionTrackingFailureListener);
-		CoronaLua.deleteRef(runtime.getLuaState(), eventTrackingSuccessListener);
-		CoronaLua.deleteRef(runtime.getLuaState(), eventTrackingFailureListener);
-		CoronaLua.deleteRef(runtime.getLuaState(), deferredDeeplinkListener);
-
-		attributionChangedListener = CoronaLua.REFNIL;
-		eventTrackingSuccessListener = CoronaLua.REFNIL;
-		eventTrackingFailureListener = CoronaLua.REFNIL;
-		sessionTrackingSuccessListener = CoronaLua.REFNIL;
-		sessionTrackingFailureListener = CoronaLua.REFNIL;
-		deferredDeeplinkListener = CoronaLua.REFNIL;
-	}
-
-	private void dispatchEvent(final LuaState luaState, final int listener, final String name, final String message) {
-		CoronaEnvironment.getCoronaActivity().getRuntimeTaskDispatcher().send(new CoronaRuntimeTask() {
+		// Queued deliveries hold listener references of this runtime's Lua state
+		callbackDispatcher.unbind(runtime.getLuaState());
+		runDeferredCalls(runtime.getLuaState(), false);
+
+		// Publish the reset state before releasing the Lua listener references,
+		// so callbacks in flight can no longer pick them up.
+		int[] listeners;
+		synchronized (stateLock) {
+			PluginState current = state.get();
+			listeners = current.listeners();
+			state.set(current.withoutListeners());
+		}
+
+		for (int listener : listeners) {
+			CoronaLua.deleteRef(runtime.getLuaState(), listener);
+		}
+
+		if (eventTablePool != null) {
+			eventTablePool.clear(runtime.getLuaState());
+		}
+	}
+
+	private void dispatchEvent(final int listener, final String name, final String message) {
+		// Getter answers are requested by Lua and small, so they share the priority lane
+		callbackDispatcher.dispatch(new CallbackDispatcher.Delivery() {
 			@Override
-			public void executeUsing(CoronaRuntime runtime) {
-				CoronaLua.newEvent(luaState, name);
+			public void deliver(LuaState luaState) {
+				int event = pushEvent(luaState, name);
 
 				luaState.pushString(message);
 				luaState.setField(-2, "message");
@@ -242,9 +559,96 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 					CoronaLua.dispatchEvent(luaState, listener, 0);
 				} catch (Exception e) {
 					e.printStackTrace();
+				} finally {
+					releaseEvent(luaState, event);
 				}
 			}
-		});
+		}, true);
+	}
+
+	/**
+	 * Returns the running bridge trace, or null. Safe to call from any thread.
+	 */
+	BridgeTraceWriter traceWriter() {
+		return traceWriter;
+	}
+
+	/**
+	 * Returns the filter in front of the attribution listeners. Safe to call from any thread.
+	 */
+	AttributionTracker attributionTracker() {
+		return attributionTracker;
+	}
+
+	/**
+	 * Returns the current state snapshot. Safe to call from any thread.
+	 */
+	PluginState state() {
+		return state.get();
+	}
+
+	/**
+	 * Pushes the event table for a callback: a pooled one when event table pooling is on, a new one otherwise.
+	 * Returns the pooled table's reference, or REFNIL.
+	 */
+	private int pushEvent(LuaState luaState, String name) {
+		if (eventTablePool == null) {
+			CoronaLua.newEvent(luaState, name);
+			return CoronaLua.REFNIL;
+		}
+
+		return eventTablePool.push(luaState, name);
+	}
+
+	private void releaseEvent(LuaState luaState, int event) {
+		if (eventTablePool != null && event != CoronaLua.REFNIL) {
+			eventTablePool.release(luaState, event);
+		}
+	}
+
+	/**
+	 * Dispatches to each of the given listener handles that is still registered when the callback is delivered on the
+	 * Lua thread, so a listener removed in the meantime is never called, even if its reference was reused.
+	 */
+	void dispatchListenerEvent(final int type, final int[] listeners, final String name, final String[] messages,
+							   final JSONObject jsonResponse) {
+		boolean priority = type == PluginState.TYPE_ATTRIBUTION || type == PluginState.TYPE_DEFERRED_DEEPLINK;
+		callbackDispatcher.dispatch(new CallbackDispatcher.Delivery() {
+			@Override
+			public void deliver(LuaState luaState) {
+				// Shared by all listeners, so the response is converted at most once
+				JsonResponseAccessor jsonResponseAccessor = jsonResponse != null ? new JsonResponseAccessor(jsonResponse) : null;
+
+				for (int i = 0; i < listeners.length; i++) {
+					int listener = state.get().ref(listeners[i]);
+					if (listener == CoronaLua.REFNIL) {
+						continue;
+					}
+
+					int event = pushEvent(luaState, name);
+
+					luaState.pushString(messages[i]);
+					luaState.setField(-2, "message");
+
+					// Always set, so a pooled table does not keep the accessor of an earlier callback
+					if (jsonResponseAccessor != null) {
+						luaState.pushJavaFunction(jsonResponseAccessor);
+					} else {
+						luaState.pushNil();
+					}
+					luaState.setField(-2, "getJsonResponse");
+
+					// Dispatch event to library's listener
+					try {
+						CoronaLua.dispatchEvent(luaState, listener, 0);
+					} catch (Exception e) {
+						e.printStackTrace();
+					} finally {
+						releaseEvent(luaState, event);
+					}
+				}
+			}
+		}, priority);
 	}
 
 	/**
@@ -258,11 +662,25 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 			return 0;
 		}
 
+		// Main process name
+		L.getField(1, "processName");
+		String processName = L.isNil(2) ? null : L.checkString(2);
+		L.pop(1);
+
+		// Secondary processes skip initialization entirely
+		if (!processGuard.setMainProcessName(processName)) {
+			runDeferredCalls(L, false);
+			return 0;
+		}
+
+		// A main process with a custom name is only known as such now
+		initialize();
+		runDeferredCalls(L, true);
+
 		String logLevel = null;
 		String appToken = null;
         String userAgent = null;
 		String environment = null;
-        String processName = null;
 		String defaultTracker = null;
 
 		boolean readImei = false;
@@ -270,6 +688,8 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
         boolean sendInBackground = false;
         boolean isLogLevelSuppress = false;
 		boolean eventBufferingEnabled = false;
+		boolean adaptiveOfflineMode = false;
+		boolean asyncSdkCalls = false;
 
 		double delayStart = 0.0;
 
@@ -296,45 +716,83 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 
 		// Environment
 		L.getField(1, "environment");
-		environment = L.checkString(2);
-		if (environment != null) {
-			if (environment.toLowerCase().equals("sandbox")) {
-				environment = AdjustConfig.ENVIRONMENT_SANDBOX;
-			} else if (environment.toLowerCase().equals("production")) {
-				environment = AdjustConfig.ENVIRONMENT_PRODUCTION;
-			}
-		}
+		environment = LuaUtil.environmentFromString(L.checkString(2));
 		L.pop(1);
 
 		final AdjustConfig adjustConfig =
-				new AdjustConfig(CoronaEnvironment.getApplicationContext(), appToken, environment, isLogLevelSuppress);
+				new AdjustConfig(context, appToken, environment, isLogLevelSuppress);
 
 		// Log level
 		if (logLevel != null) {
-			if (logLevel.toLowerCase().equals("verbose")) {
-				adjustConfig.setLogLevel(LogLevel.VERBOSE);
-			} else if (logLevel.toLowerCase().equals("debug")) {
-				adjustConfig.setLogLevel(LogLevel.DEBUG);
-			} else if (logLevel.toLowerCase().equals("info")) {
-				adjustConfig.setLogLevel(LogLevel.INFO);
-			} else if (logLevel.toLowerCase().equals("warn")) {
-				adjustConfig.setLogLevel(LogLevel.WARN);
-			} else if (logLevel.toLowerCase().equals("error")) {
-				adjustConfig.setLogLevel(LogLevel.ERROR);
-			} else if (logLevel.toLowerCase().equals("assert")) {
-				adjustConfig.setLogLevel(LogLevel.ASSERT);
-			} else if (logLevel.toLowerCase().equals("suppress")) {
-				adjustConfig.setLogLevel(LogLevel.SUPRESS);
-			} else {
-				adjustConfig.setLogLevel(LogLevel.INFO);
+			adjustConfig.setLogLevel(LuaUtil.logLevelFromString(logLevel));
+		}
+
+		// Adaptive offline mode
+		L.getField(1, "adaptiveOfflineMode");
+		if (!L.isNil(2)) {
+			adaptiveOfflineMode = L.checkBoolean(2);
+		}
+		L.pop(1);
+
+		// Parameter size limits
+		L.getField(1, "parameterLimits");
+		if (!L.isNil(2)) {
+			readParameterLimits(L, 2);
+		}
+		L.pop(1);
+
+		// Callback delivery budget per frame
+		L.getField(1, "callbackFrameBudgetMs");
+		if (!L.isNil(2)) {
+			callbackDispatcher.setFrameBudgetMillis(L.checkNumber(2));
+		}
+		L.pop(1);
+
+		// Event table pooling
+		L.getField(1, "poolEventTables");
+		if (!L.isNil(2) && L.checkBoolean(2) && eventTablePool == null) {
+			eventTablePool = new EventTablePool();
+		}
+		L.pop(1);
+
+		// Ordered SDK thread
+		L.getField(1, "asyncSdkCalls");
+		if (!L.isNil(2)) {
+			asyncSdkCalls = L.checkBoolean(2);
+		}
+		L.pop(1);
+
+		// Lazy JSON response
+		L.getField(1, "lazyJsonResponse");
+		if (!L.isNil(2)) {
+			boolean lazyJsonResponse = L.checkBoolean(2);
+			synchronized (stateLock) {
+				state.set(state.get().withLazyJsonResponse(lazyJsonResponse));
 			}
 		}
+		L.pop(1);
+
+		// Window in which attribution changes are merged into one delivery
+		L.getField(1, "attributionDebounceMs");
+		if (!L.isNil(2)) {
+			attributionTracker.setDebounceMillis((long)L.checkNumber(2));
+		}
+		L.pop(1);
+
+		// Low priority event lane budget
+		L.getField(1, "lowPriorityEventsPerSecond");
+		if (!L.isNil(2)) {
+			eventScheduler.setEventsPerSecond((int)L.checkNumber(2));
+		}
+		L.pop(1);
 
-		// Event buffering
+		// Event buffering (only settable at creation, so adaptive offline mode turns it on unless told otherwise)
 		L.getField(1, "eventBufferingEnabled");
 		if (!L.isNil(2)) {
 			eventBufferingEnabled = L.checkBoolean(2);
 			adjustConfig.setEventBufferingEnabled(eventBufferingEnabled);
+		} else if (adaptiveOfflineMode) {
+			adjustConfig.setEventBufferingEnabled(true);
 		}
 		L.pop(1);
 
@@ -342,12 +800,9 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 		adjustConfig.setSdkPrefix("corona4.12.2");
 
 		// Main process name
-		L.getField(1, "processName");
-		if (!L.isNil(2)) {
-			processName = L.checkString(2);
+		if (processName != null) {
 			adjustConfig.setProcessName(processName);
 		}
-		L.pop(1);
 
 		// Default tracker
 		L.getField(1, "defaultTracker");
@@ -375,8 +830,12 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 
 		// Launching deferred deep link
 		L.getField(1, "shouldLaunchDeeplink");
-		if (!L.isNil(2)) {
-			this.shouldLaunchDeeplink = L.checkBoolean(2);
+		final boolean shouldLaunchDeeplinkSet = !L.isNil(2);
+		if (shouldLaunchDeeplinkSet) {
+			boolean shouldLaunchDeeplink = L.checkBoolean(2);
+			synchronized (stateLock) {
+				state.set(state.get().withShouldLaunchDeeplink(shouldLaunchDeeplink));
+			}
 		}
 		L.pop(1);
 
@@ -435,75 +894,47 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
             adjustConfig.setAppSecret(secretId, info1, info2, info3, info4);
         }
 
-		// Attribution callback
-		if (this.attributionChangedListener != CoronaLua.REFNIL) {
-			adjustConfig.setOnAttributionChangedListener(new OnAttributionChangedListener() {
-				@Override
-				public void onAttributionChanged(AdjustAttribution adjustAttribution) {
-					dispatchEvent(L, LuaLoader.this.attributionChangedListener, EVENT_ATTRIBUTION_CHANGED, new JSONObject(LuaUtil.attributionToMap(adjustAttribution)).toString());
-				}
-			});
+		if (asyncSdkCalls) {
+			sdkExecutor.enableOrdered();
 		}
 
-		// Event tracking succeeded callback
-		if (this.eventTrackingSuccessListener != CoronaLua.REFNIL) {
-			adjustConfig.setOnEventTrackingSucceededListener(new OnEventTrackingSucceededListener() {
-				@Override
-				public void onFinishedEventTrackingSucceeded(AdjustEventSuccess adjustEventSuccess) {
-					dispatchEvent(L, LuaLoader.this.eventTrackingSuccessListener, EVENT_EVENT_TRACKING_SUCCESS, new JSONObject(LuaUtil.eventSuccessToMap(adjustEventSuccess)).toString());
-				}
-			});
-		}
+		final Uri pendingUri = this.uri;
+		this.uri = null;
 
-		// Event tracking failed callback
-		if (this.eventTrackingFailureListener != CoronaLua.REFNIL) {
-			adjustConfig.setOnEventTrackingFailedListener(new OnEventTrackingFailedListener() {
-				@Override
-				public void onFinishedEventTrackingFailed(AdjustEventFailure adjustEventFailure) {
-					dispatchEvent(L, LuaLoader.this.eventTrackingFailureListener, EVENT_EVENT_TRACKING_FAILURE, new JSONObject(LuaUtil.eventFailureToMap(adjustEventFailure)).toString());
-				}
-			});
-		}
+		// Callbacks are always installed and routed to the Lua listeners registered at the time they arrive
+		sdkCallbacks.install(adjustConfig);
 
-		// Session tracking succeeded callback
-		if (this.sessionTrackingSuccessListener != CoronaLua.REFNIL) {
-			adjustConfig.setOnSessionTrackingSucceededListener(new OnSessionTrackingSucceededListener() {
-				@Override
-				public void onFinishedSessionTrackingSucceeded(AdjustSessionSuccess adjustSessionSuccess) {
-					dispatchEvent(L, LuaLoader.this.sessionTrackingSuccessListener, EVENT_SESSION_TRACKING_SUCCESS, new JSONObject(LuaUtil.sessionSuccessToMap(adjustSessionSuccess)).toString());
+		sdkExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				// Queued behind an early start from Application.onCreate(), so its outcome is known here
+				if (earlyStart.isStarted()) {
+					// Keep the running SDK, only the plugin options above apply
+					Log.i(TAG, "adjust_create: SDK already started natively, SDK options are taken from the assets config");
+					if (!shouldLaunchDeeplinkSet) {
+						synchronized (stateLock) {
+							state.set(state.get().withShouldLaunchDeeplink(sdkCallbacks.defaultShouldLaunchDeeplink()));
+						}
+					}
+					takeOverLifecycle();
+				} else {
+					sdk.onCreate(adjustConfig);
+					sdk.onResume();
 				}
-			});
-		}
 
-		// Session tracking failed callback
-		if (this.sessionTrackingFailureListener != CoronaLua.REFNIL) {
-			adjustConfig.setOnSessionTrackingFailedListener(new OnSessionTrackingFailedListener() {
-				@Override
-				public void onFinishedSessionTrackingFailed(AdjustSessionFailure adjustSessionFailure) {
-					dispatchEvent(L, LuaLoader.this.sessionTrackingFailureListener, EVENT_SESSION_TRACKING_FAILURE, new JSONObject(LuaUtil.sessionFailureToMap(adjustSessionFailure)).toString());
+				if (pendingUri != null) {
+					sdk.appWillOpenUrl(pendingUri);
 				}
-			});
-		}
+			}
+		});
 
-		// Deferred deeplink callback listener
-		if (this.deferredDeeplinkListener != CoronaLua.REFNIL) {
-			adjustConfig.setOnDeeplinkResponseListener(new OnDeeplinkResponseListener() {
-				@Override
-				public boolean launchReceivedDeeplink(Uri uri) {
-					dispatchEvent(L, LuaLoader.this.deferredDeeplinkListener, EVENT_DEFERRED_DEEPLINK, new JSONObject(LuaUtil.deferredDeeplinkToMap(uri)).toString());
-					return LuaLoader.this.shouldLaunchDeeplink;
-				}
-			});
+		// Later calls are queued behind onCreate() in ordered mode, so the SDK counts as started already
+		synchronized (stateLock) {
+			state.set(state.get().withSdkStarted(true));
 		}
 
-		Adjust.onCreate(adjustConfig);
-		Adjust.onResume();
-		didStartAdjustSdk = true;
-
-		if (this.uri != null) {
-			Adjust.appWillOpenUrl(uri);
-			this.uri = null;
-		}
+		offlineController.setAdaptive(adaptiveOfflineMode);
+		eventScheduler.start();
 
 		return 0;
 	}
@@ -514,6 +945,13 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 	 * next element to be used
 	 */
 	public int adjust_trackEvent(final LuaState L) {
+		return trackEvent(L, null, null);
+	}
+
+	/**
+	 * Tracks the event table at index 1, with an extra partner parameter if durationKey is not null.
+	 */
+	private int trackEvent(LuaState L, String durationKey, String duration) {
 		if (!L.isTable(1)) {
 			Log.e(TAG, "adjust_trackEvent: adjust_trackEvent() must be supplied with a table");
 			return 0;
@@ -524,6 +962,7 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
         String orderId = null;
         String currency = null;
 		String eventToken = null;
+		String priority = null;
 
 		// Event token
 		L.getField(1, "eventToken");
@@ -563,6 +1002,7 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 		L.getField(1, "callbackParameters");
 		if (!L.isNil(2) && L.isTable(2)) {
 			int length = L.length(2);
+			int callbackBytes = 0;
 
 			for (int i = 1; i <= length; i++) {
 				// Push the table to the stack
@@ -576,7 +1016,11 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 				String value = L.checkString(4);
 				L.pop(1);
 
-				event.addCallbackParameter(key, value);
+				String admitted = parameterGovernor.admit(key, value, callbackBytes);
+				if (admitted != null) {
+					event.addCallbackParameter(key, admitted);
+					callbackBytes += ParameterGovernor.size(key, admitted);
+				}
 
 				// Pop the stack
 				L.pop(1);
@@ -585,6 +1029,7 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 		L.pop(1);
 
 		// Partner parameters
+		int partnerBytes = 0;
 		L.getField(1, "partnerParameters");
 		if (!L.isNil(2) && L.isTable(2)) {
 			int length = L.length(2);
@@ -601,7 +1046,11 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 				String value = L.checkString(4);
 				L.pop(1);
 
-				event.addPartnerParameter(key, value);
+				String admitted = parameterGovernor.admit(key, value, partnerBytes);
+				if (admitted != null) {
+					event.addPartnerParameter(key, admitted);
+					partnerBytes += ParameterGovernor.size(key, admitted);
+				}
 
 				// Pop the stack
 				L.pop(1);
@@ -609,40 +1058,89 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 		}
 		L.pop(1);
 
-		Adjust.trackEvent(event);
+		// Measured duration, subject to the same limits as the other partner parameters
+		if (durationKey != null) {
+			String admitted = parameterGovernor.admit(durationKey, duration, partnerBytes);
+			if (admitted != null) {
+				event.addPartnerParameter(durationKey, admitted);
+			}
+		}
+
+		// Priority
+		L.getField(1, "priority");
+		if (!L.isNil(2)) {
+			priority = L.checkString(2);
+		}
+		L.pop(1);
+
+		// Revenue and transaction events always take the high priority lane
+		boolean highPriority = revenue != -1.0 || orderId != null || !"low".equalsIgnoreCase(priority);
+		eventScheduler.submit(event, highPriority, revenue == -1.0 && orderId == null);
+		eventStats.onTracked(eventToken);
 		return 0;
 	}
 
 	private int adjust_setEnabled(LuaState L) {
-		boolean enabled = L.checkBoolean(1);
-		Adjust.setEnabled(enabled);
+		final boolean enabled = L.checkBoolean(1);
+		if (setterMirror.setEnabled(enabled)) {
+			sdkExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					sdk.setEnabled(enabled);
+				}
+			});
+
+			// A disabled SDK drops what it was given, so it has to be sent again after enabling
+			if (!enabled) {
+				setterMirror.clearPersisted();
+			}
+		}
 		return 0;
 	}
 
 	private int adjust_isEnabled(LuaState L) {
 		// Hardcoded listener index for ADJUST
 		int listenerIndex = 1;
-		int listener = CoronaLua.REFNIL;
 
 		// Assign and dispatch event immediately
 		if (CoronaLua.isListener(L, listenerIndex, "ADJUST")) {
-			listener = CoronaLua.newRef(L, listenerIndex);
-			dispatchEvent(L, listener, EVENT_IS_ADJUST_ENABLED, Adjust.isEnabled() ? "true" : "false");
+			final int finalListener = CoronaLua.newRef(L, listenerIndex);
+			sdkExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					dispatchEvent(finalListener, EVENT_IS_ADJUST_ENABLED, sdk.isEnabled() ? "true" : "false");
+				}
+			});
 		}
 
 		return 0;
 	}
 
 	private int adjust_setPushToken(LuaState L) {
-		String pushToken = L.checkString(1);
-		Adjust.setPushToken(pushToken);
+		final String pushToken = L.checkString(1);
+		if (setterMirror.setPushToken(pushToken)) {
+			sdkExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					sdk.setPushToken(pushToken);
+					if (isSdkActive()) {
+						setterMirror.persistPushToken(pushToken);
+					}
+				}
+			});
+		}
 		return 0;
 	}
 
 	private int adjust_appWillOpenUrl(LuaState L) {
 		final Uri uri = Uri.parse(L.checkString(1));
-		if (didStartAdjustSdk) {
-			Adjust.appWillOpenUrl(uri);
+		if (state.get().sdkStarted) {
+			sdkExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					sdk.appWillOpenUrl(uri);
+				}
+			});
 			return 0;
 		}
 
@@ -651,43 +1149,100 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 	}
 
 	private int adjust_sendFirstPackage(LuaState L) {
-		Adjust.sendFirstPackages();
+		sdkExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				sdk.sendFirstPackages();
+			}
+		});
 		return 0;
 	}
 
 	private int adjust_addSessionCallbackParameter(LuaState L) {
-		String key = L.checkString(1);
-		String value = L.checkString(2);
-		Adjust.addSessionCallbackParameter(key, value);
+		final String key = L.checkString(1);
+		final String value = parameterGovernor.admitSession(ParameterGovernor.SESSION_CALLBACK, key, L.checkString(2));
+		if (value == null) {
+			return 0;
+		}
+		if (setterMirror.addSessionCallbackParameter(key, value)) {
+			sdkExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					sdk.addSessionCallbackParameter(key, value);
+				}
+			});
+		}
 		return 0;
 	}
 
 	private int adjust_addSessionPartnerParameter(LuaState L) {
-		String key = L.checkString(1);
-		String value = L.checkString(2);
-		Adjust.addSessionPartnerParameter(key, value);
+		final String key = L.checkString(1);
+		final String value = parameterGovernor.admitSession(ParameterGovernor.SESSION_PARTNER, key, L.checkString(2));
+		if (value == null) {
+			return 0;
+		}
+		if (setterMirror.addSessionPartnerParameter(key, value)) {
+			sdkExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					sdk.addSessionPartnerParameter(key, value);
+				}
+			});
+		}
 		return 0;
 	}
 
 	private int adjust_removeSessionCallbackParameter(LuaState L) {
-		String key = L.checkString(1);
-		Adjust.removeSessionCallbackParameter(key);
+		final String key = L.checkString(1);
+		parameterGovernor.removeSession(ParameterGovernor.SESSION_CALLBACK, key);
+		if (setterMirror.removeSessionCallbackParameter(key)) {
+			sdkExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					sdk.removeSessionCallbackParameter(key);
+				}
+			});
+		}
 		return 0;
 	}
 
 	private int adjust_removeSessionPartnerParameter(LuaState L) {
-		String key = L.checkString(1);
-		Adjust.removeSessionPartnerParameter(key);
+		final String key = L.checkString(1);
+		parameterGovernor.removeSession(ParameterGovernor.SESSION_PARTNER, key);
+		if (setterMirror.removeSessionPartnerParameter(key)) {
+			sdkExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					sdk.removeSessionPartnerParameter(key);
+				}
+			});
+		}
 		return 0;
 	}
 
 	private int adjust_resetSessionCallbackParameters(LuaState L) {
-		Adjust.resetSessionCallbackParameters();
+		parameterGovernor.resetSession(ParameterGovernor.SESSION_CALLBACK);
+		if (setterMirror.resetSessionCallbackParameters()) {
+			sdkExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					sdk.resetSessionCallbackParameters();
+				}
+			});
+		}
 		return 0;
 	}
 
 	private int adjust_resetSessionPartnerParameters(LuaState L) {
-		Adjust.resetSessionPartnerParameters();
+		parameterGovernor.resetSession(ParameterGovernor.SESSION_PARTNER);
+		if (setterMirror.resetSessionPartnerParameters()) {
+			sdkExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					sdk.resetSessionPartnerParameters();
+				}
+			});
+		}
 		return 0;
 	}
 
@@ -699,7 +1254,7 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 		// Assign and dispatch event immediately
 		if (CoronaLua.isListener(L, listenerIndex, "ADJUST")) {
 			listener = CoronaLua.newRef(L, listenerIndex);
-			dispatchEvent(L, listener, EVENT_GET_IDFA, "");
+			dispatchEvent(listener, EVENT_GET_IDFA, "");
 		}
 
 		return 0;
@@ -714,12 +1269,19 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 		if (CoronaLua.isListener(L, listenerIndex, "ADJUST")) {
 			listener = CoronaLua.newRef(L, listenerIndex);
 			final int finalListener = listener;
-			Adjust.getGoogleAdId(CoronaEnvironment.getCoronaActivity(), new OnDeviceIdsRead() {
+			OnDeviceIdsRead callback = new OnDeviceIdsRead() {
 				@Override
 				public void onGoogleAdIdRead(String googleAdId) {
-					dispatchEvent(L, finalListener, EVENT_GET_GOOGLE_AD_ID, googleAdId != null ? googleAdId : "");
+					dispatchEvent(finalListener, EVENT_GET_GOOGLE_AD_ID, googleAdId != null ? googleAdId : "");
 				}
-			});
+			};
+
+			// Answer from the prefetched ID when prefetching was requested
+			if (googleAdIdPrefetcher.isPrefetching()) {
+				googleAdIdPrefetcher.get(context, callback);
+			} else {
+				sdk.getGoogleAdId(CoronaEnvironment.getCoronaActivity(), callback);
+			}
 		}
 
 		return 0;
@@ -728,17 +1290,21 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 	private int adjust_getAdid(final LuaState L) {
 		// Hardcoded listener index for ADJUST
 		int listenerIndex = 1;
-		int listener = CoronaLua.REFNIL;
 
 		// Assign and dispatch event immediately
 		if (CoronaLua.isListener(L, listenerIndex, "ADJUST")) {
-			listener = CoronaLua.newRef(L, listenerIndex);
-			String adid = Adjust.getAdid();
-			if (adid == null) {
-				adid = "";
-			}
+			final int finalListener = CoronaLua.newRef(L, listenerIndex);
+			sdkExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					String adid = sdk.getAdid();
+					if (adid == null) {
+						adid = "";
+					}
 
-			dispatchEvent(L, listener, EVENT_GET_ADID, adid);
+					dispatchEvent(finalListener, EVENT_GET_ADID, adid);
+				}
+			});
 		}
 
 		return 0;
@@ -752,7 +1318,7 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 		// Assign and dispatch event immediately
 		if (CoronaLua.isListener(L, listenerIndex, "ADJUST")) {
 			listener = CoronaLua.newRef(L, listenerIndex);
-			dispatchEvent(L, listener, EVENT_GET_AMAZON_AD_ID, "");
+			dispatchEvent(listener, EVENT_GET_AMAZON_AD_ID, "");
 		}
 
 		return 0;
@@ -761,405 +1327,668 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 	private int adjust_getAttribution(LuaState L) {
 		// Hardcoded listener index for ADJUST
 		int listenerIndex = 1;
-		int listener = CoronaLua.REFNIL;
 
 		// Assign and dispatch event immediately
 		if (CoronaLua.isListener(L, listenerIndex, "ADJUST")) {
-			listener = CoronaLua.newRef(L, listenerIndex);
-			AdjustAttribution attribution = Adjust.getAttribution();
-			dispatchEvent(L, listener, EVENT_GET_ATTRIBUTION, new JSONObject(LuaUtil.attributionToMap(attribution)).toString());
+			final int finalListener = CoronaLua.newRef(L, listenerIndex);
+
+			// Answer from the last attribution the SDK reported, without a call into the SDK
+			AttributionTracker.Snapshot snapshot = attributionTracker.snapshot();
+			if (snapshot != null) {
+				dispatchEvent(finalListener, EVENT_GET_ATTRIBUTION, snapshot.json());
+				return 0;
+			}
+
+			sdkExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					AdjustAttribution attribution = sdk.getAttribution();
+					String json = attribution != null
+							? attributionTracker.update(attribution).json()
+							: new JSONObject(LuaUtil.attributionToMap(null)).toString();
+					dispatchEvent(finalListener, EVENT_GET_ATTRIBUTION, json);
+				}
+			});
 		}
 
 		return 0;
 	}
 
-	private int adjust_setOfflineMode(LuaState L) {
-		boolean offlineMode = L.checkBoolean(1);
-		Adjust.setOfflineMode(offlineMode);
-		return 0;
+	private int adjust_getEventSchedulerMetrics(LuaState L) {
+		// Plugin-local state, so the metrics are returned directly instead of through a listener
+		L.newTable();
+		L.pushNumber(eventScheduler.getHighPriorityForwarded());
+		L.setField(-2, "highPriorityForwarded");
+		L.pushNumber(eventScheduler.getLowPriorityForwarded());
+		L.setField(-2, "lowPriorityForwarded");
+		L.pushNumber(eventScheduler.getLowPriorityQueued());
+		L.setField(-2, "lowPriorityQueued");
+		L.pushNumber(eventScheduler.getLowPriorityMaxQueued());
+		L.setField(-2, "lowPriorityMaxQueued");
+		L.pushNumber(eventScheduler.getLowPriorityAverageWaitMillis());
+		L.setField(-2, "lowPriorityAverageWaitMs");
+		L.pushNumber(eventScheduler.getLowPriorityMaxWaitMillis());
+		L.setField(-2, "lowPriorityMaxWaitMs");
+		L.pushNumber(eventScheduler.getHeld());
+		L.setField(-2, "held");
+		L.pushNumber(eventScheduler.getHeldQueued());
+		L.setField(-2, "heldQueued");
+		return 1;
 	}
 
-	private int adjust_setReferrer(LuaState L) {
-		String referrer = L.checkString(1);
-		Adjust.setReferrer(referrer, CoronaEnvironment.getApplicationContext());
-		return 0;
-	}
+	/**
+	 * Reads the parameterLimits create option: maxKeyBytes, maxValueBytes, maxSetBytes, and oversized,
+	 * either "truncate" (the default) or "reject".
+	 */
+	private void readParameterLimits(LuaState L, int index) {
+		if (!L.isTable(index)) {
+			Log.e(TAG, "adjust_create: parameterLimits must be a table");
+			return;
+		}
 
-	private int adjust_setAttributionListener(LuaState L) {
-		// Hardcoded listener index for ADJUST
-		int listenerIndex = 1;
+		int maxKeyBytes = 0;
+		int maxValueBytes = 0;
+		int maxSetBytes = 0;
+		boolean reject = false;
 
-		if (CoronaLua.isListener(L, listenerIndex, "ADJUST")) {
-			this.attributionChangedListener = CoronaLua.newRef(L, listenerIndex);
+		L.getField(index, "maxKeyBytes");
+		if (!L.isNil(-1)) {
+			maxKeyBytes = (int)L.checkNumber(-1);
 		}
+		L.pop(1);
 
-		return 0;
-	}
+		L.getField(index, "maxValueBytes");
+		if (!L.isNil(-1)) {
+			maxValueBytes = (int)L.checkNumber(-1);
+		}
+		L.pop(1);
 
-	private int adjust_setEventTrackingSuccessListener(LuaState L) {
-		// Hardcoded listener index for ADJUST
-		int listenerIndex = 1;
+		L.getField(index, "maxSetBytes");
+		if (!L.isNil(-1)) {
+			maxSetBytes = (int)L.checkNumber(-1);
+		}
+		L.pop(1);
 
-		if (CoronaLua.isListener(L, listenerIndex, "ADJUST")) {
-			this.eventTrackingSuccessListener = CoronaLua.newRef(L, listenerIndex);
+		L.getField(index, "oversized");
+		if (!L.isNil(-1)) {
+			reject = "reject".equalsIgnoreCase(L.checkString(-1));
 		}
+		L.pop(1);
 
-		return 0;
+		parameterGovernor.setLimits(maxKeyBytes, maxValueBytes, maxSetBytes, reject);
 	}
 
-	private int adjust_setEventTrackingFailureListener(LuaState L) {
-		// Hardcoded listener index for ADJUST
-		int listenerIndex = 1;
-
-		if (CoronaLua.isListener(L, listenerIndex, "ADJUST")) {
-			this.eventTrackingFailureListener = CoronaLua.newRef(L, listenerIndex);
-		}
+	/**
+	 * Returns a table with the number of parameters that broke a size limit, and how many of them were
+	 * truncated or dropped.
+	 */
+	private int adjust_getParameterViolations(LuaState L) {
+		long[] violations = parameterGovernor.getViolations();
+		L.newTable();
+		L.pushNumber(violations[ParameterGovernor.KEY_TOO_LONG]);
+		L.setField(-2, "keyTooLong");
+		L.pushNumber(violations[ParameterGovernor.VALUE_TOO_LONG]);
+		L.setField(-2, "valueTooLong");
+		L.pushNumber(violations[ParameterGovernor.SET_TOO_LARGE]);
+		L.setField(-2, "setTooLarge");
+		L.pushNumber(violations[ParameterGovernor.TRUNCATED]);
+		L.setField(-2, "truncated");
+		L.pushNumber(violations[ParameterGovernor.REJECTED]);
+		L.setField(-2, "rejected");
+		return 1;
+	}
 
+	/**
+	 * Starts reading the Google advertising ID in the background, so later getGoogleAdId() calls are
+	 * answered without waiting for Google Play Services. Best called right after require().
+	 */
+	private int adjust_prefetchGoogleAdId(LuaState L) {
+		googleAdIdPrefetcher.prefetch(context);
 		return 0;
 	}
 
-	private int adjust_setSessionTrackingSuccessListener(LuaState L) {
-		// Hardcoded listener index for ADJUST
-		int listenerIndex = 1;
-
-		if (CoronaLua.isListener(L, listenerIndex, "ADJUST")) {
-			this.sessionTrackingSuccessListener = CoronaLua.newRef(L, listenerIndex);
-		}
+	private int adjust_getGoogleAdIdMetrics(LuaState L) {
+		L.newTable();
+		L.pushBoolean(googleAdIdPrefetcher.isPrefetching());
+		L.setField(-2, "prefetching");
+		L.pushBoolean(googleAdIdPrefetcher.isResolved());
+		L.setField(-2, "resolved");
+		L.pushNumber(googleAdIdPrefetcher.getLatencyMillis());
+		L.setField(-2, "lookupMs");
+		L.pushNumber(googleAdIdPrefetcher.getAnsweredFromCache());
+		L.setField(-2, "answeredFromCache");
+		return 1;
+	}
 
+	private int adjust_startTimer(LuaState L) {
+		eventTimers.start(L.checkString(1));
 		return 0;
 	}
 
-	private int adjust_setSessionTrackingFailureListener(LuaState L) {
-		// Hardcoded listener index for ADJUST
-		int listenerIndex = 1;
-
-		if (CoronaLua.isListener(L, listenerIndex, "ADJUST")) {
-			this.sessionTrackingFailureListener = CoronaLua.newRef(L, listenerIndex);
+	/**
+	 * Tracks the event table like trackEvent(), adding the time since startTimer(name) in milliseconds
+	 * as a partner parameter, named by the optional third argument or "duration". Stops the timer and
+	 * returns the duration, or nil if the timer was not started; the event is tracked either way.
+	 */
+	private int adjust_trackEventWithTimer(LuaState L) {
+		String name = L.checkString(2);
+		String durationKey = L.isNoneOrNil(3) ? "duration" : L.checkString(3);
+		long duration = eventTimers.stop(name);
+
+		// trackEvent() reads the fields of the table at index 1 into index 2
+		L.setTop(1);
+		if (duration < 0) {
+			Log.w(TAG, "adjust_trackEventWithTimer: timer " + name + " was not started");
+			trackEvent(L, null, null);
+			L.pushNil();
+		} else {
+			trackEvent(L, durationKey, Long.toString(duration));
+			L.pushNumber(duration);
 		}
-
-		return 0;
+		return 1;
 	}
 
-	private int adjust_setDeferredDeeplinkListener(LuaState L) {
-		// Hardcoded listener index for ADJUST
-		int listenerIndex = 1;
-
-		if (CoronaLua.isListener(L, listenerIndex, "ADJUST")) {
-			this.deferredDeeplinkListener = CoronaLua.newRef(L, listenerIndex);
+	/**
+	 * Takes "gameplay", "loading" or "idle". During gameplay, events without revenue or transaction ID
+	 * are held; they are forwarded to the SDK once the game is loading or idle again.
+	 */
+	private int adjust_setGameState(LuaState L) {
+		String gameState = L.checkString(1);
+		if ("gameplay".equals(gameState)) {
+			eventScheduler.setHolding(true);
+		} else if ("loading".equals(gameState) || "idle".equals(gameState)) {
+			eventScheduler.setHolding(false);
+		} else {
+			Log.e(TAG, "adjust_setGameState: unknown game state " + gameState);
 		}
-
 		return 0;
 	}
 
-	private class CreateWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "create";
-		}
-
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_create(L);
+	/**
+	 * Returns a table with the number of setter calls dropped because they would not have changed SDK
+	 * state, per function name.
+	 */
+	private int adjust_getSuppressedCalls(LuaState L) {
+		L.newTable();
+		for (Map.Entry<String, Integer> entry : setterMirror.getSuppressedCalls().entrySet()) {
+			L.pushNumber(entry.getValue());
+			L.setField(-2, entry.getKey());
 		}
+		return 1;
 	}
 
-	private class TrackEventWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "trackEvent";
-		}
-
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_trackEvent(L);
-		}
+	/**
+	 * Returns a table with the tracked, succeeded, failed and retried counts of an event token. Failures
+	 * the SDK retries are counted as retried, final failures as failed.
+	 */
+	private int adjust_getEventStats(LuaState L) {
+		long[] counts = eventStats.get(L.checkString(1));
+		L.newTable();
+		L.pushNumber(counts[EventStats.TRACKED]);
+		L.setField(-2, "tracked");
+		L.pushNumber(counts[EventStats.SUCCEEDED]);
+		L.setField(-2, "succeeded");
+		L.pushNumber(counts[EventStats.FAILED]);
+		L.setField(-2, "failed");
+		L.pushNumber(counts[EventStats.RETRIED]);
+		L.setField(-2, "retried");
+		return 1;
 	}
 
-	private class SetEnabledWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "setEnabled";
-		}
+	/**
+	 * Starts recording bridge calls and SDK callbacks to a trace file in the app's files directory,
+	 * replacing any running trace. Returns the path of the trace file, or nil if it could not be created.
+	 */
+	private int adjust_startBridgeTrace(LuaState L) {
+		stopBridgeTrace();
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_setEnabled(L);
+		File file = new File(context.getFilesDir(), TRACE_FILE_NAME);
+		try {
+			traceWriter = new BridgeTraceWriter(file, FUNCTION_NAMES);
+		} catch (IOException e) {
+			Log.e(TAG, "adjust_startBridgeTrace: failed to create " + file, e);
+			L.pushNil();
+			return 1;
 		}
-	}
 
-	private class IsEnabledWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "isEnabled";
-		}
+		L.pushString(file.getAbsolutePath());
+		return 1;
+	}
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_isEnabled(L);
-		}
+	private int adjust_stopBridgeTrace(LuaState L) {
+		stopBridgeTrace();
+		return 0;
 	}
 
-	private class SetReferrerWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "setReferrer";
+	private void stopBridgeTrace() {
+		BridgeTraceWriter trace = traceWriter;
+		traceWriter = null;
+		if (trace != null) {
+			trace.close();
 		}
+	}
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_setReferrer(L);
+	private int adjust_setOfflineMode(LuaState L) {
+		boolean offlineMode = L.checkBoolean(1);
+		if (setterMirror.setOfflineMode(offlineMode)) {
+			offlineController.setManualOfflineMode(offlineMode);
 		}
+		return 0;
 	}
 
-	private class SetOfflineModeWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "setOfflineMode";
+	private int adjust_setReferrer(LuaState L) {
+		final String referrer = L.checkString(1);
+		if (setterMirror.setReferrer(referrer)) {
+			sdkExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					sdk.setReferrer(referrer, context);
+					if (isSdkActive()) {
+						setterMirror.persistReferrer(referrer);
+					}
+				}
+			});
 		}
+		return 0;
+	}
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_setOfflineMode(L);
-		}
+	/**
+	 * Returns true if the SDK has been started and is enabled, so a value passed to it now is kept. Runs on the
+	 * thread of the SDK calls.
+	 */
+	private boolean isSdkActive() {
+		return state.get().sdkStarted && sdk.isEnabled();
 	}
 
-	private class SetPushTokenWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "setPushToken";
-		}
+	private int adjust_setAttributionListener(LuaState L) {
+		return setListener(L, PluginState.TYPE_ATTRIBUTION);
+	}
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_setPushToken(L);
-		}
+	private int adjust_setEventTrackingSuccessListener(LuaState L) {
+		return setListener(L, PluginState.TYPE_EVENT_TRACKING_SUCCESS);
 	}
 
-	private class AppWillOpenUrlWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "appWillOpenUrl";
-		}
+	private int adjust_setEventTrackingFailureListener(LuaState L) {
+		return setListener(L, PluginState.TYPE_EVENT_TRACKING_FAILURE);
+	}
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_appWillOpenUrl(L);
-		}
+	private int adjust_setSessionTrackingSuccessListener(LuaState L) {
+		return setListener(L, PluginState.TYPE_SESSION_TRACKING_SUCCESS);
 	}
 
-	private class SendFirstPackageWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "sendFirstPackage";
-		}
+	private int adjust_setSessionTrackingFailureListener(LuaState L) {
+		return setListener(L, PluginState.TYPE_SESSION_TRACKING_FAILURE);
+	}
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_sendFirstPackage(L);
-		}
+	private int adjust_setDeferredDeeplinkListener(LuaState L) {
+		return setListener(L, PluginState.TYPE_DEFERRED_DEEPLINK);
 	}
 
-	private class AddSessionCallbackParameterWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "addSessionCallbackParameter";
-		}
+	/**
+	 * Replaces the listener of the given type with the function at index 1, or removes it when passed nil.
+	 * An optional array of field names at index 2 limits the payload passed to the listener.
+	 */
+	private int setListener(LuaState L, int type) {
+		// Hardcoded listener index for ADJUST
+		int listenerIndex = 1;
+		int listener;
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_addSessionCallbackParameter(L);
+		if (CoronaLua.isListener(L, listenerIndex, "ADJUST")) {
+			listener = CoronaLua.newRef(L, listenerIndex);
+		} else if (L.isNoneOrNil(listenerIndex)) {
+			listener = CoronaLua.REFNIL;
+		} else {
+			Log.e(TAG, "setListener: listener must be a function, a table or nil");
+			return 0;
 		}
-	}
 
-	private class AddSessionPartnerParameterWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "addSessionPartnerParameter";
-		}
+		Set<String> fields = L.isTable(2) ? readFields(L, 2) : null;
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_addSessionPartnerParameter(L);
+		int previous;
+		synchronized (stateLock) {
+			PluginState current = state.get();
+			previous = current.primary(type);
+			state.set(current.withPrimary(type, listener, fields));
 		}
+
+		CoronaLua.deleteRef(L, previous);
+		return 0;
 	}
 
-	private class RemoveSessionCallbackParameterWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "removeSessionCallbackParameter";
+	/**
+	 * Adds a filtered listener: addListener(type, listener [, filter]). Returns a handle for removeListener().
+	 * <p>
+	 * The filter table may hold eventToken (a string or an array of strings), willRetry (a boolean) and
+	 * fields (an array of the payload fields passed to the listener).
+	 */
+	private int adjust_addListener(LuaState L) {
+		String typeName = L.checkString(1);
+		int type = PluginState.typeForName(typeName);
+		if (type == -1) {
+			Log.e(TAG, "adjust_addListener: unknown listener type " + typeName);
+			return 0;
 		}
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_removeSessionCallbackParameter(L);
+		// Listener index for ADJUST
+		int listenerIndex = 2;
+		if (!CoronaLua.isListener(L, listenerIndex, "ADJUST")) {
+			Log.e(TAG, "adjust_addListener: listener must be a function or a table");
+			return 0;
 		}
-	}
 
-	private class RemoveSessionPartnerParameterWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "removeSessionPartnerParameter";
-		}
+		Set<String> eventTokens = null;
+		Boolean willRetry = null;
+		Set<String> fields = null;
+
+		if (L.isTable(3)) {
+			// Event token(s)
+			L.getField(3, "eventToken");
+			if (L.isTable(4)) {
+				eventTokens = new HashSet<String>();
+				int length = L.length(4);
+				for (int i = 1; i <= length; i++) {
+					L.rawGet(4, i);
+					eventTokens.add(L.checkString(5));
+					L.pop(1);
+				}
+			} else if (!L.isNil(4)) {
+				eventTokens = Collections.singleton(L.checkString(4));
+			}
+			L.pop(1);
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_removeSessionPartnerParameter(L);
-		}
-	}
+			// Will retry
+			L.getField(3, "willRetry");
+			if (!L.isNil(4)) {
+				willRetry = L.checkBoolean(4);
+			}
+			L.pop(1);
 
-	private class ResetSessionCallbackParametersWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "resetSessionCallbackParameters";
+			// Payload fields
+			L.getField(3, "fields");
+			if (L.isTable(4)) {
+				fields = readFields(L, 4);
+			}
+			L.pop(1);
 		}
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_resetSessionCallbackParameters(L);
+		int listener = CoronaLua.newRef(L, listenerIndex);
+		int handle;
+		synchronized (stateLock) {
+			PluginState current = state.get();
+			handle = current.nextHandle();
+			state.set(current.withListener(type, listener, new ListenerFilter(eventTokens, willRetry), fields));
 		}
+
+		L.pushInteger(handle);
+		return 1;
 	}
 
-	private class ResetSessionPartnerParametersWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "resetSessionPartnerParameters";
+	/**
+	 * Reads an array of payload field names, e.g. { "eventToken", "willRetry" }.
+	 */
+	private static Set<String> readFields(LuaState L, int index) {
+		Set<String> fields = new HashSet<String>();
+		int length = L.length(index);
+		for (int i = 1; i <= length; i++) {
+			L.rawGet(index, i);
+			fields.add(L.checkString(-1));
+			L.pop(1);
 		}
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_resetSessionPartnerParameters(L);
-		}
+		return fields;
 	}
 
-	private class GetIdfaWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "getIdfa";
+	private int adjust_removeListener(LuaState L) {
+		int handle = (int)L.checkNumber(1);
+		int listener;
+		synchronized (stateLock) {
+			PluginState current = state.get();
+			listener = current.listener(handle);
+			state.set(current.withoutListener(handle));
 		}
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_getIdfa(L);
-		}
+		CoronaLua.deleteRef(L, listener);
+		return 0;
 	}
 
-	private class GetAdidWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "getAdid";
-		}
+	/**
+	 * Enables or disables diagnostics: setDiagnosticsEnabled(enabled [, thresholdMs]).
+	 */
+	private int adjust_setDiagnosticsEnabled(LuaState L) {
+		boolean enabled = L.checkBoolean(1);
+		long thresholdMillis = L.isNoneOrNil(2) ? CallDiagnostics.DEFAULT_THRESHOLD_MS : (long)L.checkNumber(2);
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_getAdid(L);
+		CallDiagnostics previous = diagnostics;
+		diagnostics = enabled ? new CallDiagnostics(FUNCTION_NAMES, thresholdMillis) : null;
+		if (previous != null) {
+			previous.logSummary();
 		}
+		return 0;
 	}
 
-	private class GetGoogleAdIdWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "getGoogleAdId";
+	/**
+	 * Records and times a Lua call as configured, then routes it to its plugin method.
+	 */
+	int invokeFunction(int function, LuaState L) {
+		// Outside the main process every function but create(), which may name the main process, is a no-op
+		if (function != FUNCTION_CREATE && !processGuard.isMainProcess()) {
+			// Until create() names it, a process without the package name may still be the main process
+			if (processGuard.isUndecided()) {
+				if (isListenerFunction(function)) {
+					return callFunction(function, L);
+				}
+				deferCall(function, L);
+			}
+			return 0;
 		}
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_getGoogleAdId(L);
+		BridgeTraceWriter trace = traceWriter;
+		if (trace != null) {
+			trace.recordCall(function, L);
 		}
-	}
 
-	private class GetAmazonAdIdWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "getAmazonAdId";
+		CallDiagnostics diagnostics = this.diagnostics;
+		if (diagnostics == null) {
+			return callFunction(function, L);
 		}
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_getAmazonAdId(L);
+		long start = System.nanoTime();
+		StrictMode.ThreadPolicy policy = diagnostics.begin();
+		try {
+			return callFunction(function, L);
+		} finally {
+			diagnostics.end(function, start, policy);
 		}
 	}
 
-	private class GetAttributionWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "getAttribution";
-		}
-
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_getAttribution(L);
-		}
+	/**
+	 * Returns true for the functions that only change the listener configuration, which every process can keep.
+	 */
+	private static boolean isListenerFunction(int function) {
+		return (function >= FUNCTION_SET_ATTRIBUTION_LISTENER && function <= FUNCTION_SET_DEFERRED_DEEPLINK_LISTENER)
+				|| function == FUNCTION_ADD_LISTENER
+				|| function == FUNCTION_REMOVE_LISTENER;
 	}
 
-	private class SetAttributionListenerWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "setAttributionListener";
-		}
+	/**
+	 * Keeps a call made before create() in an undecided process, with its arguments, for create() to replay.
+	 */
+	private void deferCall(int function, LuaState L) {
+		int count = L.getTop();
+		L.newTable();
+		for (int i = 1; i <= count; i++) {
+			L.pushValue(i);
+			L.rawSet(-2, i);
+		}
+		int arguments = CoronaLua.newRef(L, -1);
+		L.pop(1);
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_setAttributionListener(L);
-		}
+		deferredCalls.add(new int[] { function, arguments, count });
 	}
 
-	private class SetEventTrackingSuccessListenerWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "setEventTrackingSuccessListener";
-		}
+	/**
+	 * Replays the deferred calls in the main process, in the order they were made, or drops them in a worker process.
+	 */
+	private void runDeferredCalls(LuaState L, boolean replay) {
+		List<int[]> calls = new ArrayList<int[]>(deferredCalls);
+		deferredCalls.clear();
+
+		for (int[] call : calls) {
+			if (replay) {
+				L.pushJavaFunction(luaFunctions[call[0]]);
+				L.rawGet(LuaState.REGISTRYINDEX, call[1]);
+				int table = L.getTop();
+				for (int i = 1; i <= call[2]; i++) {
+					L.rawGet(table, i);
+				}
+				L.remove(table);
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_setEventTrackingSuccessListener(L);
-		}
-	}
+				try {
+					L.call(call[2], 0);
+				} catch (RuntimeException e) {
+					Log.e(TAG, "Deferred " + FUNCTION_NAMES[call[0]] + "() failed", e);
+				}
+			}
 
-	private class SetEventTrackingFailureListenerWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "setEventTrackingFailureListener";
+			CoronaLua.deleteRef(L, call[1]);
 		}
+	}
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_setEventTrackingFailureListener(L);
+	/**
+	 * Routes a Lua call to the plugin method registered under the given FUNCTION_* ordinal.
+	 */
+	private int callFunction(int function, LuaState L) {
+		switch (function) {
+			case FUNCTION_CREATE:
+				return adjust_create(L);
+			case FUNCTION_TRACK_EVENT:
+				return adjust_trackEvent(L);
+			case FUNCTION_SET_ENABLED:
+				return adjust_setEnabled(L);
+			case FUNCTION_IS_ENABLED:
+				return adjust_isEnabled(L);
+			case FUNCTION_SET_REFERRER:
+				return adjust_setReferrer(L);
+			case FUNCTION_SET_OFFLINE_MODE:
+				return adjust_setOfflineMode(L);
+			case FUNCTION_SET_PUSH_TOKEN:
+				return adjust_setPushToken(L);
+			case FUNCTION_APP_WILL_OPEN_URL:
+				return adjust_appWillOpenUrl(L);
+			case FUNCTION_SEND_FIRST_PACKAGE:
+				return adjust_sendFirstPackage(L);
+			case FUNCTION_ADD_SESSION_CALLBACK_PARAMETER:
+				return adjust_addSessionCallbackParameter(L);
+			case FUNCTION_ADD_SESSION_PARTNER_PARAMETER:
+				return adjust_addSessionPartnerParameter(L);
+			case FUNCTION_REMOVE_SESSION_CALLBACK_PARAMETER:
+				return adjust_removeSessionCallbackParameter(L);
+			case FUNCTION_REMOVE_SESSION_PARTNER_PARAMETER:
+				return adjust_removeSessionPartnerParameter(L);
+			case FUNCTION_RESET_SESSION_CALLBACK_PARAMETERS:
+				return adjust_resetSessionCallbackParameters(L);
+			case FUNCTION_RESET_SESSION_PARTNER_PARAMETERS:
+				return adjust_resetSessionPartnerParameters(L);
+			case FUNCTION_GET_IDFA:
+				return adjust_getIdfa(L);
+			case FUNCTION_GET_ATTRIBUTION:
+				return adjust_getAttribution(L);
+			case FUNCTION_SET_ATTRIBUTION_LISTENER:
+				return adjust_setAttributionListener(L);
+			case FUNCTION_SET_EVENT_TRACKING_SUCCESS_LISTENER:
+				return adjust_setEventTrackingSuccessListener(L);
+			case FUNCTION_SET_EVENT_TRACKING_FAILURE_LISTENER:
+				return adjust_setEventTrackingFailureListener(L);
+			case FUNCTION_SET_SESSION_TRACKING_SUCCESS_LISTENER:
+				return adjust_setSessionTrackingSuccessListener(L);
+			case FUNCTION_SET_SESSION_TRACKING_FAILURE_LISTENER:
+				return adjust_setSessionTrackingFailureListener(L);
+			case FUNCTION_SET_DEFERRED_DEEPLINK_LISTENER:
+				return adjust_setDeferredDeeplinkListener(L);
+			case FUNCTION_GET_ADID:
+				return adjust_getAdid(L);
+			case FUNCTION_GET_GOOGLE_AD_ID:
+				return adjust_getGoogleAdId(L);
+			case FUNCTION_GET_AMAZON_AD_ID:
+				return adjust_getAmazonAdId(L);
+			case FUNCTION_GET_EVENT_SCHEDULER_METRICS:
+				return adjust_getEventSchedulerMetrics(L);
+			case FUNCTION_ADD_LISTENER:
+				return adjust_addListener(L);
+			case FUNCTION_REMOVE_LISTENER:
+				return adjust_removeListener(L);
+			case FUNCTION_START_BRIDGE_TRACE:
+				return adjust_startBridgeTrace(L);
+			case FUNCTION_STOP_BRIDGE_TRACE:
+				return adjust_stopBridgeTrace(L);
+			case FUNCTION_GET_SUPPRESSED_CALLS:
+				return adjust_getSuppressedCalls(L);
+			case FUNCTION_SET_DIAGNOSTICS_ENABLED:
+				return adjust_setDiagnosticsEnabled(L);
+			case FUNCTION_GET_EVENT_STATS:
+				return adjust_getEventStats(L);
+			case FUNCTION_SET_GAME_STATE:
+				return adjust_setGameState(L);
+			case FUNCTION_GET_PARAMETER_VIOLATIONS:
+				return adjust_getParameterViolations(L);
+			case FUNCTION_START_TIMER:
+				return adjust_startTimer(L);
+			case FUNCTION_TRACK_EVENT_WITH_TIMER:
+				return adjust_trackEventWithTimer(L);
+			case FUNCTION_PREFETCH_GOOGLE_AD_ID:
+				return adjust_prefetchGoogleAdId(L);
+			case FUNCTION_GET_GOOGLE_AD_ID_METRICS:
+				return adjust_getGoogleAdIdMetrics(L);
+			default:
+				Log.e(TAG, "invokeFunction: unknown function ordinal " + function);
+				return 0;
 		}
 	}
 
-	private class SetSessionTrackingSuccessListenerWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "setSessionTrackingSuccessListener";
+	/**
+	 * Lua accessor for the server response of a callback, installed as event.getJsonResponse.
+	 * The JSONObject is only converted to a string the first time it is called.
+	 */
+	private static final class JsonResponseAccessor implements JavaFunction {
+		private final JSONObject jsonResponse;
+		private String jsonResponseString;
+
+		JsonResponseAccessor(JSONObject jsonResponse) {
+			this.jsonResponse = jsonResponse;
 		}
 
 		@Override
 		public int invoke(LuaState L) {
-			return adjust_setSessionTrackingSuccessListener(L);
+			if (jsonResponseString == null) {
+				jsonResponseString = jsonResponse.toString();
+			}
+
+			L.pushString(jsonResponseString);
+			return 1;
 		}
 	}
 
-	private class SetSessionTrackingFailureListenerWrapper implements NamedJavaFunction {
-		@Override
-		public String getName() {
-			return "setSessionTrackingFailureListener";
-		}
+	/**
+	 * Single NamedJavaFunction implementation for every Lua function of this plugin.
+	 * Dispatches through invokeFunction() by ordinal, so adding a function does not add a class.
+	 */
+	private static final class LuaFunction implements NamedJavaFunction {
+		private final LuaLoader loader;
+		private final int function;
 
-		@Override
-		public int invoke(LuaState L) {
-			return adjust_setSessionTrackingFailureListener(L);
+		LuaFunction(LuaLoader loader, int function) {
+			this.loader = loader;
+			this.function = function;
 		}
-	}
 
-	private class SetDeferredDeeplinkListenerWrapper implements NamedJavaFunction {
 		@Override
 		public String getName() {
-			return "setDeferredDeeplinkListener";
+			return FUNCTION_NAMES[function];
 		}
 
 		@Override
 		public int invoke(LuaState L) {
-			return adjust_setDeferredDeeplinkListener(L);
+			return loader.invokeFunction(function, L);
 		}
 	}
 }
@@ -12,13 +12,17 @@ package plugin.adjust;
 import android.net.Uri;
 
 import com.adjust.sdk.AdjustAttribution;
+import com.adjust.sdk.AdjustConfig;
 import com.adjust.sdk.AdjustEventFailure;
 import com.adjust.sdk.AdjustEventSuccess;
 import com.adjust.sdk.AdjustSessionFailure;
 import com.adjust.sdk.AdjustSessionSuccess;
+import com.adjust.sdk.LogLevel;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Created by ab on 14.09.17.
@@ -58,85 +62,179 @@ final public class LuaUtil {
     private static final String SESSION_FAILED_WILL_RETRY = "willRetry";
     private static final String SESSION_FAILED_JSON_RESPONSE = "jsonResponse";
 
+    public static String environmentFromString(String environment) {
+        if (null == environment) {
+            return null;
+        }
+
+        if (environment.toLowerCase().equals("sandbox")) {
+            return AdjustConfig.ENVIRONMENT_SANDBOX;
+        } else if (environment.toLowerCase().equals("production")) {
+            return AdjustConfig.ENVIRONMENT_PRODUCTION;
+        }
+
+        return environment;
+    }
+
+    public static LogLevel logLevelFromString(String logLevel) {
+        if (logLevel.toLowerCase().equals("verbose")) {
+            return LogLevel.VERBOSE;
+        } else if (logLevel.toLowerCase().equals("debug")) {
+            return LogLevel.DEBUG;
+        } else if (logLevel.toLowerCase().equals("info")) {
+            return LogLevel.INFO;
+        } else if (logLevel.toLowerCase().equals("warn")) {
+            return LogLevel.WARN;
+        } else if (logLevel.toLowerCase().equals("error")) {
+            return LogLevel.ERROR;
+        } else if (logLevel.toLowerCase().equals("assert")) {
+            return LogLevel.ASSERT;
+        } else if (logLevel.toLowerCase().equals("suppress")) {
+            return LogLevel.SUPRESS;
+        }
+
+        return LogLevel.INFO;
+    }
+
     public static Map attributionToMap(AdjustAttribution attribution) {
+        return attributionToMap(attribution, null);
+    }
+
+    public static Map attributionToMap(AdjustAttribution attribution, Set<String> fields) {
         Map map = new HashMap();
 
         if (null == attribution) {
             return map;
         }
 
-        map.put(ATTRIBUTION_TRACKER_TOKEN, null != attribution.trackerToken ? attribution.trackerToken : "");
-        map.put(ATTRIBUTION_TRACKER_NAME, null != attribution.trackerName ? attribution.trackerName : "");
-        map.put(ATTRIBUTION_NETWORK, null != attribution.network ? attribution.network : "");
-        map.put(ATTRIBUTION_CAMPAIGN, null != attribution.campaign ? attribution.campaign : "");
-        map.put(ATTRIBUTION_ADGROUP, null != attribution.adgroup ? attribution.adgroup : "");
-        map.put(ATTRIBUTION_CREATIVE, null != attribution.creative ? attribution.creative : "");
-        map.put(ATTRIBUTION_CLICK_LABEL, null != attribution.clickLabel ? attribution.clickLabel : "");
-        map.put(ATTRIBUTION_ADID, null != attribution.adid ? attribution.adid : "");
+        if (wants(fields, ATTRIBUTION_TRACKER_TOKEN)) {
+            map.put(ATTRIBUTION_TRACKER_TOKEN, null != attribution.trackerToken ? attribution.trackerToken : "");
+        }
+        if (wants(fields, ATTRIBUTION_TRACKER_NAME)) {
+            map.put(ATTRIBUTION_TRACKER_NAME, null != attribution.trackerName ? attribution.trackerName : "");
+        }
+        if (wants(fields, ATTRIBUTION_NETWORK)) {
+            map.put(ATTRIBUTION_NETWORK, null != attribution.network ? attribution.network : "");
+        }
+        if (wants(fields, ATTRIBUTION_CAMPAIGN)) {
+            map.put(ATTRIBUTION_CAMPAIGN, null != attribution.campaign ? attribution.campaign : "");
+        }
+        if (wants(fields, ATTRIBUTION_ADGROUP)) {
+            map.put(ATTRIBUTION_ADGROUP, null != attribution.adgroup ? attribution.adgroup : "");
+        }
+        if (wants(fields, ATTRIBUTION_CREATIVE)) {
+            map.put(ATTRIBUTION_CREATIVE, null != attribution.creative ? attribution.creative : "");
+        }
+        if (wants(fields, ATTRIBUTION_CLICK_LABEL)) {
+            map.put(ATTRIBUTION_CLICK_LABEL, null != attribution.clickLabel ? attribution.clickLabel : "");
+        }
+        if (wants(fields, ATTRIBUTION_ADID)) {
+            map.put(ATTRIBUTION_ADID, null != attribution.adid ? attribution.adid : "");
+        }
 
         return map;
     }
 
-    public static Map eventSuccessToMap(AdjustEventSuccess eventSuccess) {
+    public static Map eventSuccessToMap(AdjustEventSuccess eventSuccess, boolean includeJsonResponse, Set<String> fields) {
         Map map = new HashMap<String, String>();
 
         if (null == eventSuccess) {
             return map;
         }
 
-        map.put(EVENT_SUCCESS_MESSAGE, null != eventSuccess.message ? eventSuccess.message : "");
-        map.put(EVENT_SUCCESS_TIMESTAMP, null != eventSuccess.timestamp ? eventSuccess.timestamp : "");
-        map.put(EVENT_SUCCESS_ADID, null != eventSuccess.adid ? eventSuccess.adid : "");
-        map.put(EVENT_SUCCESS_EVENT_TOKEN, null != eventSuccess.eventToken ? eventSuccess.eventToken : "");
-        map.put(EVENT_SUCCESS_JSON_RESPONSE, null != eventSuccess.jsonResponse ? eventSuccess.jsonResponse.toString() : "");
+        if (wants(fields, EVENT_SUCCESS_MESSAGE)) {
+            map.put(EVENT_SUCCESS_MESSAGE, null != eventSuccess.message ? eventSuccess.message : "");
+        }
+        if (wants(fields, EVENT_SUCCESS_TIMESTAMP)) {
+            map.put(EVENT_SUCCESS_TIMESTAMP, null != eventSuccess.timestamp ? eventSuccess.timestamp : "");
+        }
+        if (wants(fields, EVENT_SUCCESS_ADID)) {
+            map.put(EVENT_SUCCESS_ADID, null != eventSuccess.adid ? eventSuccess.adid : "");
+        }
+        if (wants(fields, EVENT_SUCCESS_EVENT_TOKEN)) {
+            map.put(EVENT_SUCCESS_EVENT_TOKEN, null != eventSuccess.eventToken ? eventSuccess.eventToken : "");
+        }
+        if (includeJsonResponse && wants(fields, EVENT_SUCCESS_JSON_RESPONSE)) {
+            map.put(EVENT_SUCCESS_JSON_RESPONSE, null != eventSuccess.jsonResponse ? eventSuccess.jsonResponse.toString() : "");
+        }
 
         return map;
     }
 
-    public static Map eventFailureToMap(AdjustEventFailure eventFailure) {
+    public static Map eventFailureToMap(AdjustEventFailure eventFailure, boolean includeJsonResponse, Set<String> fields) {
         Map map = new HashMap();
 
         if (null == eventFailure) {
             return map;
         }
 
-        map.put(EVENT_FAILED_MESSAGE, null != eventFailure.message ? eventFailure.message : "");
-        map.put(EVENT_FAILED_TIMESTAMP, null != eventFailure.timestamp ? eventFailure.timestamp : "");
-        map.put(EVENT_FAILED_ADID, null != eventFailure.adid ? eventFailure.adid : "");
-        map.put(EVENT_FAILED_EVENT_TOKEN, null != eventFailure.eventToken ? eventFailure.eventToken : "");
-        map.put(EVENT_FAILED_WILL_RETRY, eventFailure.willRetry ? "true" : "false");
-        map.put(EVENT_FAILED_JSON_RESPONSE, null != eventFailure.jsonResponse ? eventFailure.jsonResponse.toString() : "");
+        if (wants(fields, EVENT_FAILED_MESSAGE)) {
+            map.put(EVENT_FAILED_MESSAGE, null != eventFailure.message ? eventFailure.message : "");
+        }
+        if (wants(fields, EVENT_FAILED_TIMESTAMP)) {
+            map.put(EVENT_FAILED_TIMESTAMP, null != eventFailure.timestamp ? eventFailure.timestamp : "");
+        }
+        if (wants(fields, EVENT_FAILED_ADID)) {
+            map.put(EVENT_FAILED_ADID, null != eventFailure.adid ? eventFailure.adid : "");
+        }
+        if (wants(fields, EVENT_FAILED_EVENT_TOKEN)) {
+            map.put(EVENT_FAILED_EVENT_TOKEN, null != eventFailure.eventToken ? eventFailure.eventToken : "");
+        }
+        if (wants(fields, EVENT_FAILED_WILL_RETRY)) {
+            map.put(EVENT_FAILED_WILL_RETRY, eventFailure.willRetry ? "true" : "false");
+        }
+        if (includeJsonResponse && wants(fields, EVENT_FAILED_JSON_RESPONSE)) {
+            map.put(EVENT_FAILED_JSON_RESPONSE, null != eventFailure.jsonResponse ? eventFailure.jsonResponse.toString() : "");
+        }
 
         return map;
     }
 
-    public static Map sessionSuccessToMap(AdjustSessionSuccess sessionSuccess) {
+    public static Map sessionSuccessToMap(AdjustSessionSuccess sessionSuccess, boolean includeJsonResponse, Set<String> fields) {
         Map map = new HashMap();
 
         if (null == sessionSuccess) {
             return map;
         }
 
-        map.put(SESSION_SUCCESS_MESSAGE, null != sessionSuccess.message ? sessionSuccess.message : "");
-        map.put(SESSION_SUCCESS_TIMESTAMP, null != sessionSuccess.timestamp ? sessionSuccess.timestamp : "");
-        map.put(SESSION_SUCCESS_ADID, null != sessionSuccess.adid ? sessionSuccess.adid : "");
-        map.put(SESSION_SUCCESS_JSON_RESPONSE, null != sessionSuccess.jsonResponse ? sessionSuccess.jsonResponse.toString() : "");
+        if (wants(fields, SESSION_SUCCESS_MESSAGE)) {
+            map.put(SESSION_SUCCESS_MESSAGE, null != sessionSuccess.message ? sessionSuccess.message : "");
+        }
+        if (wants(fields, SESSION_SUCCESS_TIMESTAMP)) {
+            map.put(SESSION_SUCCESS_TIMESTAMP, null != sessionSuccess.timestamp ? sessionSuccess.timestamp : "");
+        }
+        if (wants(fields, SESSION_SUCCESS_ADID)) {
+            map.put(SESSION_SUCCESS_ADID, null != sessionSuccess.adid ? sessionSuccess.adid : "");
+        }
+        if (includeJsonResponse && wants(fields, SESSION_SUCCESS_JSON_RESPONSE)) {
+            map.put(SESSION_SUCCESS_JSON_RESPONSE, null != sessionSuccess.jsonResponse ? sessionSuccess.jsonResponse.toString() : "");
+        }
 
         return map;
     }
 
-    public static Map sessionFailureToMap(AdjustSessionFailure sessionFailure) {
+    public static Map sessionFailureToMap(AdjustSessionFailure sessionFailure, boolean includeJsonResponse, Set<String> fields) {
         Map map = new HashMap();
 
         if (null == sessionFailure) {
             return map;
         }
 
-        map.put(SESSION_FAILED_MESSAGE, null != sessionFailure.message ? sessionFailure.message : "");
-        map.put(SESSION_FAILED_TIMESTAMP, null != sessionFailure.timestamp ? sessionFailure.timestamp : "");
-        map.put(SESSION_FAILED_ADID, null != sessionFailure.adid ? sessionFailure.adid : "");
-        map.put(SESSION_FAILED_WILL_RETRY, sessionFailure.willRetry ? "true" : "false");
-        map.put(SESSION_FAILED_JSON_RESPONSE, null != sessionFailure.jsonResponse ? sessionFailure.jsonResponse.toString() : "");
+        if (wants(fields, SESSION_FAILED_MESSAGE)) {
+            map.put(SESSION_FAILED_MESSAGE, null != sessionFailure.message ? sessionFailure.message : "");
+        }
+        if (wants(fields, SESSION_FAILED_TIMESTAMP)) {
+            map.put(SESSION_FAILED_TIMESTAMP, null != sessionFailure.timestamp ? sessionFailure.timestamp : "");
+        }
+        if (wants(fields, SESSION_FAILED_ADID)) {
+            map.put(SESSION_FAILED_ADID, null != sessionFailure.adid ? sessionFailure.adid : "");
+        }
+        if (wants(fields, SESSION_FAILED_WILL_RETRY)) {
+            map.put(SESSION_FAILED_WILL_RETRY, sessionFailure.willRetry ? "true" : "false");
+        }
+        if (includeJsonResponse && wants(fields, SESSION_FAILED_JSON_RESPONSE)) {
+            map.put(SESSION_FAILED_JSON_RESPONSE, null != sessionFailure.jsonResponse ? sessionFailure.jsonResponse.toString() : "");
+        }
 
         return map;
     }
@@ -152,5 +250,28 @@ final public class LuaUtil {
 
         return map;
     }
+
+    /**
+     * Returns a copy of a payload map holding only the given fields, or the map itself if fields is null.
+     */
+    public static Map project(Map map, Set<String> fields) {
+        if (null == fields) {
+            return map;
+        }
+
+        Map projection = new HashMap(map);
+        Iterator iterator = projection.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (!fields.contains(iterator.next())) {
+                iterator.remove();
+            }
+        }
+
+        return projection;
+    }
+
+    private static boolean wants(Set<String> fields, String field) {
+        return null == fields || fields.contains(field);
+    }
 }
 
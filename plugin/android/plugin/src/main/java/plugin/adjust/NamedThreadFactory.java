@@ -0,0 +1,29 @@
+//
+//  NamedThreadFactory.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates daemon threads with a recognizable name, so plugin work shows up clearly in traces.
+ */
+final class NamedThreadFactory implements ThreadFactory {
+    private final String name;
+
+    NamedThreadFactory(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
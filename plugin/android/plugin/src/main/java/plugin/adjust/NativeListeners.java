@@ -0,0 +1,242 @@
+//
+//  NativeListeners.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.adjust.sdk.AdjustAttribution;
+import com.adjust.sdk.AdjustEventFailure;
+import com.adjust.sdk.AdjustEventSuccess;
+import com.adjust.sdk.AdjustSessionFailure;
+import com.adjust.sdk.AdjustSessionSuccess;
+import com.adjust.sdk.OnAttributionChangedListener;
+import com.adjust.sdk.OnDeeplinkResponseListener;
+import com.adjust.sdk.OnEventTrackingFailedListener;
+import com.adjust.sdk.OnEventTrackingSucceededListener;
+import com.adjust.sdk.OnSessionTrackingFailedListener;
+import com.adjust.sdk.OnSessionTrackingSucceededListener;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Java listeners registered through the add...Listener() methods of {@link AdjustPlugin}, one list per
+ * SDK listener interface.
+ * <p>
+ * They receive the SDK's own callback objects, unfiltered and without any conversion, on a background
+ * thread of their own, independently of the Lua listeners. Notifying returns right away when no
+ * listener of the callback type is registered.
+ */
+final class NativeListeners {
+    private static final String TAG = "NativeListeners";
+
+    private final CopyOnWriteArrayList<OnAttributionChangedListener> attribution =
+            new CopyOnWriteArrayList<OnAttributionChangedListener>();
+    private final CopyOnWriteArrayList<OnEventTrackingSucceededListener> eventSuccess =
+            new CopyOnWriteArrayList<OnEventTrackingSucceededListener>();
+    private final CopyOnWriteArrayList<OnEventTrackingFailedListener> eventFailure =
+            new CopyOnWriteArrayList<OnEventTrackingFailedListener>();
+    private final CopyOnWriteArrayList<OnSessionTrackingSucceededListener> sessionSuccess =
+            new CopyOnWriteArrayList<OnSessionTrackingSucceededListener>();
+    private final CopyOnWriteArrayList<OnSessionTrackingFailedListener> sessionFailure =
+            new CopyOnWriteArrayList<OnSessionTrackingFailedListener>();
+    private final CopyOnWriteArrayList<OnDeeplinkResponseListener> deeplink =
+            new CopyOnWriteArrayList<OnDeeplinkResponseListener>();
+
+    // Created with the first listener
+    private volatile ExecutorService executor;
+
+    void addAttributionChangedListener(OnAttributionChangedListener listener) {
+        add(attribution, listener);
+    }
+
+    void removeAttributionChangedListener(OnAttributionChangedListener listener) {
+        attribution.remove(listener);
+    }
+
+    void addEventTrackingSucceededListener(OnEventTrackingSucceededListener listener) {
+        add(eventSuccess, listener);
+    }
+
+    void removeEventTrackingSucceededListener(OnEventTrackingSucceededListener listener) {
+        eventSuccess.remove(listener);
+    }
+
+    void addEventTrackingFailedListener(OnEventTrackingFailedListener listener) {
+        add(eventFailure, listener);
+    }
+
+    void removeEventTrackingFailedListener(OnEventTrackingFailedListener listener) {
+        eventFailure.remove(listener);
+    }
+
+    void addSessionTrackingSucceededListener(OnSessionTrackingSucceededListener listener) {
+        add(sessionSuccess, listener);
+    }
+
+    void removeSessionTrackingSucceededListener(OnSessionTrackingSucceededListener listener) {
+        sessionSuccess.remove(listener);
+    }
+
+    void addSessionTrackingFailedListener(OnSessionTrackingFailedListener listener) {
+        add(sessionFailure, listener);
+    }
+
+    void removeSessionTrackingFailedListener(OnSessionTrackingFailedListener listener) {
+        sessionFailure.remove(listener);
+    }
+
+    void addDeeplinkResponseListener(OnDeeplinkResponseListener listener) {
+        add(deeplink, listener);
+    }
+
+    void removeDeeplinkResponseListener(OnDeeplinkResponseListener listener) {
+        deeplink.remove(listener);
+    }
+
+    void onAttributionChanged(final AdjustAttribution adjustAttribution) {
+        if (attribution.isEmpty()) {
+            return;
+        }
+
+        post(new Runnable() {
+            @Override
+            public void run() {
+                for (OnAttributionChangedListener listener : attribution) {
+                    try {
+                        listener.onAttributionChanged(adjustAttribution);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "onAttributionChanged: listener failed", e);
+                    }
+                }
+            }
+        });
+    }
+
+    void onEventTrackingSucceeded(final AdjustEventSuccess adjustEventSuccess) {
+        if (eventSuccess.isEmpty()) {
+            return;
+        }
+
+        post(new Runnable() {
+            @Override
+            public void run() {
+                for (OnEventTrackingSucceededListener listener : eventSuccess) {
+                    try {
+                        listener.onFinishedEventTrackingSucceeded(adjustEventSuccess);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "onEventTrackingSucceeded: listener failed", e);
+                    }
+                }
+            }
+        });
+    }
+
+    void onEventTrackingFailed(final AdjustEventFailure adjustEventFailure) {
+        if (eventFailure.isEmpty()) {
+            return;
+        }
+
+        post(new Runnable() {
+            @Override
+            public void run() {
+                for (OnEventTrackingFailedListener listener : eventFailure) {
+                    try {
+                        listener.onFinishedEventTrackingFailed(adjustEventFailure);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "onEventTrackingFailed: listener failed", e);
+                    }
+                }
+            }
+        });
+    }
+
+    void onSessionTrackingSucceeded(final AdjustSessionSuccess adjustSessionSuccess) {
+        if (sessionSuccess.isEmpty()) {
+            return;
+        }
+
+        post(new Runnable() {
+            @Override
+            public void run() {
+                for (OnSessionTrackingSucceededListener listener : sessionSuccess) {
+                    try {
+                        listener.onFinishedSessionTrackingSucceeded(adjustSessionSuccess);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "onSessionTrackingSucceeded: listener failed", e);
+                    }
+                }
+            }
+        });
+    }
+
+    void onSessionTrackingFailed(final AdjustSessionFailure adjustSessionFailure) {
+        if (sessionFailure.isEmpty()) {
+            return;
+        }
+
+        post(new Runnable() {
+            @Override
+            public void run() {
+                for (OnSessionTrackingFailedListener listener : sessionFailure) {
+                    try {
+                        listener.onFinishedSessionTrackingFailed(adjustSessionFailure);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "onSessionTrackingFailed: listener failed", e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Native listeners are only told about the deep link; their return value is ignored, as the answer
+     * to the SDK comes from shouldLaunchDeeplink.
+     */
+    void onDeeplinkReceived(final Uri uri) {
+        if (deeplink.isEmpty()) {
+            return;
+        }
+
+        post(new Runnable() {
+            @Override
+            public void run() {
+                for (OnDeeplinkResponseListener listener : deeplink) {
+                    try {
+                        listener.launchReceivedDeeplink(uri);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "onDeeplinkReceived: listener failed", e);
+                    }
+                }
+            }
+        });
+    }
+
+    private void post(Runnable notification) {
+        ExecutorService executor = this.executor;
+        if (executor != null) {
+            executor.execute(notification);
+        }
+    }
+
+    private <T> void add(CopyOnWriteArrayList<T> listeners, T listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener must not be null");
+        }
+
+        listeners.addIfAbsent(listener);
+        synchronized (this) {
+            if (executor == null) {
+                executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("adjust-native-callbacks"));
+            }
+        }
+    }
+}
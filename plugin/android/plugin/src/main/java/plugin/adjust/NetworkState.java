@@ -0,0 +1,51 @@
+//
+//  NetworkState.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+/**
+ * Immutable snapshot of the device conditions the adaptive offline mode reacts to.
+ */
+final class NetworkState {
+    static final NetworkState UNKNOWN = new NetworkState(true, false, false);
+
+    final boolean connected;
+    final boolean metered;
+    final boolean powerSaveMode;
+
+    NetworkState(boolean connected, boolean metered, boolean powerSaveMode) {
+        this.connected = connected;
+        this.metered = metered;
+        this.powerSaveMode = powerSaveMode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NetworkState)) {
+            return false;
+        }
+
+        NetworkState other = (NetworkState) o;
+        return connected == other.connected
+                && metered == other.metered
+                && powerSaveMode == other.powerSaveMode;
+    }
+
+    @Override
+    public int hashCode() {
+        return (connected ? 4 : 0) | (metered ? 2 : 0) | (powerSaveMode ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "connected=" + connected + ", metered=" + metered + ", powerSaveMode=" + powerSaveMode;
+    }
+}
@@ -0,0 +1,27 @@
+//
+//  NetworkStateSource.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+/**
+ * Supplies connectivity and battery state to {@link AdaptiveOfflineController}.
+ * <p>
+ * The Android implementation is {@link SystemNetworkStateSource}; JVM tests can inject their own.
+ */
+interface NetworkStateSource {
+    interface Observer {
+        void onNetworkStateChanged(NetworkState state);
+    }
+
+    /**
+     * Starts observing and returns the current state. Later changes are reported to the observer.
+     */
+    NetworkState start(Observer observer);
+
+    void stop();
+}
@@ -0,0 +1,177 @@
+//
+//  ParameterGovernor.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Enforces size limits on callback and partner parameters before they reach the SDK, which stores them
+ * in every package it queues and sends.
+ * <p>
+ * Limits are in UTF-8 bytes and apply per key, per value, and per parameter set: the callback or the
+ * partner parameters of one event, or the session callback or partner parameters. A parameter with an
+ * oversized key, or one that does not fit into its set, is dropped. An oversized value is truncated, or
+ * dropped in reject mode. A limit of 0 means no limit; with no limits set every parameter is passed on.
+ */
+final class ParameterGovernor {
+    static final int SESSION_CALLBACK = 0;
+    static final int SESSION_PARTNER = 1;
+
+    // Counted violations
+    static final int KEY_TOO_LONG = 0;
+    static final int VALUE_TOO_LONG = 1;
+    static final int SET_TOO_LARGE = 2;
+    static final int TRUNCATED = 3;
+    static final int REJECTED = 4;
+    static final int COUNTER_COUNT = 5;
+
+    private final long[] counters = new long[COUNTER_COUNT];
+
+    // Bytes of the session parameters the SDK holds, per key, indexed by SESSION_*
+    @SuppressWarnings("unchecked")
+    private final Map<String, Integer>[] sessionParameters = new Map[] {
+            new HashMap<String, Integer>(), new HashMap<String, Integer>() };
+    private final int[] sessionBytes = new int[2];
+
+    private int maxKeyBytes = 0;
+    private int maxValueBytes = 0;
+    private int maxSetBytes = 0;
+    private boolean reject = false;
+
+    synchronized void setLimits(int maxKeyBytes, int maxValueBytes, int maxSetBytes, boolean reject) {
+        this.maxKeyBytes = Math.max(0, maxKeyBytes);
+        this.maxValueBytes = Math.max(0, maxValueBytes);
+        this.maxSetBytes = Math.max(0, maxSetBytes);
+        this.reject = reject;
+    }
+
+    /**
+     * Returns the value to pass on for an event parameter, possibly truncated, or null to drop it.
+     *
+     * @param setBytes bytes of the parameters already admitted into the same set
+     */
+    synchronized String admit(String key, String value, int setBytes) {
+        if (maxKeyBytes == 0 && maxValueBytes == 0 && maxSetBytes == 0) {
+            return value;
+        }
+
+        if (maxKeyBytes > 0 && utf8Length(key) > maxKeyBytes) {
+            counters[KEY_TOO_LONG]++;
+            counters[REJECTED]++;
+            return null;
+        }
+
+        String admitted = value;
+        if (maxValueBytes > 0 && utf8Length(value) > maxValueBytes) {
+            counters[VALUE_TOO_LONG]++;
+            if (reject) {
+                counters[REJECTED]++;
+                return null;
+            }
+            admitted = truncate(value, maxValueBytes);
+            counters[TRUNCATED]++;
+        }
+
+        if (maxSetBytes > 0 && setBytes + size(key, admitted) > maxSetBytes) {
+            counters[SET_TOO_LARGE]++;
+            counters[REJECTED]++;
+            return null;
+        }
+
+        return admitted;
+    }
+
+    /**
+     * Same as {@link #admit} for a session parameter, which replaces any parameter with the same key.
+     * Records the admitted parameter.
+     */
+    synchronized String admitSession(int kind, String key, String value) {
+        Integer previous = sessionParameters[kind].get(key);
+        int setBytes = sessionBytes[kind] - (previous != null ? previous : 0);
+
+        String admitted = admit(key, value, setBytes);
+        if (admitted != null) {
+            int bytes = size(key, admitted);
+            sessionParameters[kind].put(key, bytes);
+            sessionBytes[kind] = setBytes + bytes;
+        }
+        return admitted;
+    }
+
+    synchronized void removeSession(int kind, String key) {
+        Integer previous = sessionParameters[kind].remove(key);
+        if (previous != null) {
+            sessionBytes[kind] -= previous;
+        }
+    }
+
+    synchronized void resetSession(int kind) {
+        sessionParameters[kind].clear();
+        sessionBytes[kind] = 0;
+    }
+
+    /**
+     * Returns a copy of the violation counters, indexed by the counter constants.
+     */
+    synchronized long[] getViolations() {
+        return counters.clone();
+    }
+
+    static int size(String key, String value) {
+        return utf8Length(key) + utf8Length(value);
+    }
+
+    static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Cuts a string to at most maxBytes UTF-8 bytes, without splitting a character.
+     */
+    static String truncate(String s, int maxBytes) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            int bytes;
+            int chars = 1;
+            if (c < 0x80) {
+                bytes = 1;
+            } else if (c < 0x800) {
+                bytes = 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes = 4;
+                chars = 2;
+            } else {
+                bytes = 3;
+            }
+
+            if (length + bytes > maxBytes) {
+                return s.substring(0, i);
+            }
+            length += bytes;
+            i += chars - 1;
+        }
+        return s;
+    }
+}
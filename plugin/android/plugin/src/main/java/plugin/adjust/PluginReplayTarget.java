@@ -0,0 +1,209 @@
+//
+//  PluginReplayTarget.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.adjust.sdk.AdjustAttribution;
+import com.adjust.sdk.AdjustEventFailure;
+import com.adjust.sdk.AdjustEventSuccess;
+import com.adjust.sdk.AdjustSessionFailure;
+import com.adjust.sdk.AdjustSessionSuccess;
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replays a {@link BridgeTrace} into the plugin itself, for the JVM replay tool running it against
+ * a fake SDK and the test LuaState.
+ * <p>
+ * Calls are pushed onto the given Lua state and routed through the LuaLoader exactly as Lua calls are,
+ * with a counting function standing in for every recorded listener. Callbacks are turned back into SDK
+ * callback objects and passed to the given SDK listeners, which must be the ones the LuaLoader was
+ * created with. Calls and callbacks run on the replaying thread, which stands in for both the Lua
+ * thread and the SDK threads.
+ */
+final class PluginReplayTarget implements BridgeTraceReplayer.Target {
+    private static final String TAG = "PluginReplayTarget";
+
+    private final JavaFunction listener = new JavaFunction() {
+        @Override
+        public int invoke(LuaState L) {
+            listenerCalls++;
+            return 0;
+        }
+    };
+
+    private final LuaLoader loader;
+    private final LuaState L;
+    private final SdkCallbacks sdkCallbacks;
+    private final Map<String, Integer> functions = new HashMap<String, Integer>();
+
+    private int skippedCalls = 0;
+    private int listenerCalls = 0;
+
+    PluginReplayTarget(LuaLoader loader, LuaState L, SdkCallbacks sdkCallbacks) {
+        this.loader = loader;
+        this.L = L;
+        this.sdkCallbacks = sdkCallbacks;
+
+        for (int i = 0; i < LuaLoader.FUNCTION_NAMES.length; i++) {
+            functions.put(LuaLoader.FUNCTION_NAMES[i], i);
+        }
+    }
+
+    /**
+     * Returns the number of recorded calls of functions this plugin version does not have.
+     */
+    int getSkippedCalls() {
+        return skippedCalls;
+    }
+
+    /**
+     * Returns the number of times a recorded listener was called by the plugin.
+     */
+    int getListenerCalls() {
+        return listenerCalls;
+    }
+
+    @Override
+    public void onCall(String function, Object[] args) {
+        Integer ordinal = functions.get(function);
+        if (ordinal == null) {
+            skippedCalls++;
+            return;
+        }
+
+        L.setTop(0);
+        for (Object arg : args) {
+            push(arg);
+        }
+
+        try {
+            loader.invokeFunction(ordinal, L);
+        } finally {
+            L.setTop(0);
+        }
+    }
+
+    @Override
+    public void onCallback(int listenerType, String message) {
+        JSONObject payload;
+        try {
+            payload = new JSONObject(message);
+        } catch (JSONException e) {
+            Log.w(TAG, "onCallback: skipping callback with malformed message", e);
+            return;
+        }
+
+        switch (listenerType) {
+            case PluginState.TYPE_ATTRIBUTION:
+                AdjustAttribution attribution = new AdjustAttribution();
+                attribution.trackerToken = payload.optString("trackerToken", null);
+                attribution.trackerName = payload.optString("trackerName", null);
+                attribution.network = payload.optString("network", null);
+                attribution.campaign = payload.optString("campaign", null);
+                attribution.adgroup = payload.optString("adgroup", null);
+                attribution.creative = payload.optString("creative", null);
+                attribution.clickLabel = payload.optString("clickLabel", null);
+                attribution.adid = payload.optString("adid", null);
+                sdkCallbacks.onAttributionChanged(attribution);
+                break;
+            case PluginState.TYPE_EVENT_TRACKING_SUCCESS:
+                AdjustEventSuccess eventSuccess = new AdjustEventSuccess();
+                eventSuccess.message = payload.optString("message", null);
+                eventSuccess.timestamp = payload.optString("timestamp", null);
+                eventSuccess.adid = payload.optString("adid", null);
+                eventSuccess.eventToken = payload.optString("eventToken", null);
+                eventSuccess.jsonResponse = jsonResponse(payload);
+                sdkCallbacks.onFinishedEventTrackingSucceeded(eventSuccess);
+                break;
+            case PluginState.TYPE_EVENT_TRACKING_FAILURE:
+                AdjustEventFailure eventFailure = new AdjustEventFailure();
+                eventFailure.message = payload.optString("message", null);
+                eventFailure.timestamp = payload.optString("timestamp", null);
+                eventFailure.adid = payload.optString("adid", null);
+                eventFailure.eventToken = payload.optString("eventToken", null);
+                eventFailure.willRetry = "true".equals(payload.optString("willRetry", null));
+                eventFailure.jsonResponse = jsonResponse(payload);
+                sdkCallbacks.onFinishedEventTrackingFailed(eventFailure);
+                break;
+            case PluginState.TYPE_SESSION_TRACKING_SUCCESS:
+                AdjustSessionSuccess sessionSuccess = new AdjustSessionSuccess();
+                sessionSuccess.message = payload.optString("message", null);
+                sessionSuccess.timestamp = payload.optString("timestamp", null);
+                sessionSuccess.adid = payload.optString("adid", null);
+                sessionSuccess.jsonResponse = jsonResponse(payload);
+                sdkCallbacks.onFinishedSessionTrackingSucceeded(sessionSuccess);
+                break;
+            case PluginState.TYPE_SESSION_TRACKING_FAILURE:
+                AdjustSessionFailure sessionFailure = new AdjustSessionFailure();
+                sessionFailure.message = payload.optString("message", null);
+                sessionFailure.timestamp = payload.optString("timestamp", null);
+                sessionFailure.adid = payload.optString("adid", null);
+                sessionFailure.willRetry = "true".equals(payload.optString("willRetry", null));
+                sessionFailure.jsonResponse = jsonResponse(payload);
+                sdkCallbacks.onFinishedSessionTrackingFailed(sessionFailure);
+                break;
+            case PluginState.TYPE_DEFERRED_DEEPLINK:
+                sdkCallbacks.launchReceivedDeeplink(Uri.parse(payload.optString("uri", "")));
+                break;
+            default:
+                Log.w(TAG, "onCallback: skipping callback of unknown listener type " + listenerType);
+                break;
+        }
+    }
+
+    // Recorded as a string, empty when the SDK gave none
+    private static JSONObject jsonResponse(JSONObject payload) {
+        String jsonResponse = payload.optString("jsonResponse", "");
+        if (jsonResponse.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return new JSONObject(jsonResponse);
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    private void push(Object value) {
+        if (value == null) {
+            L.pushNil();
+        } else if (value instanceof Boolean) {
+            L.pushBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            L.pushNumber((Double) value);
+        } else if (value instanceof String) {
+            L.pushString((String) value);
+        } else if (value instanceof Map) {
+            Map<?, ?> table = (Map<?, ?>) value;
+            L.newTable();
+            for (Map.Entry<?, ?> entry : table.entrySet()) {
+                if (entry.getKey() == null) {
+                    continue;
+                }
+                push(entry.getKey());
+                push(entry.getValue());
+                L.rawSet(-3);
+            }
+        } else if (value == BridgeTrace.FUNCTION) {
+            L.pushJavaFunction(listener);
+        } else {
+            L.pushNil();
+        }
+    }
+}
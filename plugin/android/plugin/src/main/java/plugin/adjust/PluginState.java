@@ -0,0 +1,298 @@
+//
+//  PluginState.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import com.ansca.corona.CoronaLua;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the plugin's listener and callback configuration.
+ * <p>
+ * The Lua thread publishes a new snapshot for every change through a single atomic reference, and
+ * SDK callback threads read whichever snapshot is current without locking. A reader therefore never
+ * observes a half-applied change such as a partial reset in onExiting().
+ * <p>
+ * Each listener type has one primary listener, set through the set*Listener() Lua functions, plus any
+ * number of filtered listeners added through addListener(). Any listener can be limited to a set of
+ * payload fields, in which case only those fields are extracted and passed to it.
+ * <p>
+ * Every registered listener gets a handle from a counter that only goes up. Callbacks are matched to
+ * handles rather than to Lua references, since Lua reuses a reference once it is deleted: a callback
+ * matched to a listener that is removed before delivery cannot reach a newer listener that got the
+ * same reference.
+ */
+final class PluginState {
+    // Listener types
+    static final int TYPE_ATTRIBUTION = 0;
+    static final int TYPE_EVENT_TRACKING_SUCCESS = 1;
+    static final int TYPE_EVENT_TRACKING_FAILURE = 2;
+    static final int TYPE_SESSION_TRACKING_SUCCESS = 3;
+    static final int TYPE_SESSION_TRACKING_FAILURE = 4;
+    static final int TYPE_DEFERRED_DEEPLINK = 5;
+    static final int TYPE_COUNT = 6;
+
+    // Lua names of the listener types, indexed by the TYPE_* constants above
+    private static final String[] TYPE_NAMES = new String[] {
+            "attribution",
+            "eventTrackingSuccess",
+            "eventTrackingFailure",
+            "sessionTrackingSuccess",
+            "sessionTrackingFailure",
+            "deferredDeeplink"
+    };
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    static final PluginState INITIAL = new PluginState(new Entry[TYPE_COUNT], NO_ENTRIES, 1, true, false, false);
+
+    private static final class Entry {
+        final int handle;
+        final int type;
+        final int ref;
+        final ListenerFilter filter;
+        // Payload fields passed to the listener, or null for all of them
+        final Set<String> fields;
+
+        Entry(int handle, int type, int ref, ListenerFilter filter, Set<String> fields) {
+            this.handle = handle;
+            this.type = type;
+            this.ref = ref;
+            this.filter = filter;
+            this.fields = fields;
+        }
+    }
+
+    // Never mutated after construction; primary is indexed by type, with null for no listener
+    private final Entry[] primary;
+    private final Entry[] filtered;
+    private final int nextHandle;
+
+    final boolean shouldLaunchDeeplink;
+    final boolean sdkStarted;
+    // Callbacks carry jsonResponse as a getJsonResponse() accessor instead of inside message
+    final boolean lazyJsonResponse;
+
+    private PluginState(Entry[] primary, Entry[] filtered, int nextHandle,
+                        boolean shouldLaunchDeeplink, boolean sdkStarted, boolean lazyJsonResponse) {
+        this.primary = primary;
+        this.filtered = filtered;
+        this.nextHandle = nextHandle;
+        this.shouldLaunchDeeplink = shouldLaunchDeeplink;
+        this.sdkStarted = sdkStarted;
+        this.lazyJsonResponse = lazyJsonResponse;
+    }
+
+    /**
+     * Returns the TYPE_* constant for a Lua type name, or -1 if unknown.
+     */
+    static int typeForName(String name) {
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            if (TYPE_NAMES[type].equals(name)) {
+                return type;
+            }
+        }
+
+        return -1;
+    }
+
+    // Copy-on-write updates
+
+    /**
+     * Returns a state with the primary listener of a type replaced, or removed for REFNIL.
+     */
+    PluginState withPrimary(int type, int ref, Set<String> fields) {
+        Entry[] newPrimary = primary.clone();
+        if (ref == CoronaLua.REFNIL) {
+            newPrimary[type] = null;
+            return new PluginState(newPrimary, filtered, nextHandle, shouldLaunchDeeplink, sdkStarted, lazyJsonResponse);
+        }
+
+        newPrimary[type] = new Entry(nextHandle, type, ref, null, fields);
+        return new PluginState(newPrimary, filtered, nextHandle + 1, shouldLaunchDeeplink, sdkStarted, lazyJsonResponse);
+    }
+
+    /**
+     * Returns a state with a filtered listener added under the handle {@link #nextHandle()}.
+     */
+    PluginState withListener(int type, int ref, ListenerFilter filter, Set<String> fields) {
+        Entry[] newFiltered = new Entry[filtered.length + 1];
+        System.arraycopy(filtered, 0, newFiltered, 0, filtered.length);
+        newFiltered[filtered.length] = new Entry(nextHandle, type, ref, filter, fields);
+        return new PluginState(primary, newFiltered, nextHandle + 1, shouldLaunchDeeplink, sdkStarted, lazyJsonResponse);
+    }
+
+    PluginState withoutListener(int handle) {
+        int index = indexOf(handle);
+        if (index == -1) {
+            return this;
+        }
+
+        Entry[] newFiltered = new Entry[filtered.length - 1];
+        System.arraycopy(filtered, 0, newFiltered, 0, index);
+        System.arraycopy(filtered, index + 1, newFiltered, index, filtered.length - index - 1);
+        return new PluginState(primary, newFiltered, nextHandle, shouldLaunchDeeplink, sdkStarted, lazyJsonResponse);
+    }
+
+    /**
+     * Returns a state without any listener. Handles keep counting up so stale handles stay invalid.
+     */
+    PluginState withoutListeners() {
+        return new PluginState(new Entry[TYPE_COUNT], NO_ENTRIES, nextHandle, shouldLaunchDeeplink, sdkStarted, lazyJsonResponse);
+    }
+
+    PluginState withShouldLaunchDeeplink(boolean shouldLaunchDeeplink) {
+        return new PluginState(primary, filtered, nextHandle, shouldLaunchDeeplink, sdkStarted, lazyJsonResponse);
+    }
+
+    PluginState withSdkStarted(boolean sdkStarted) {
+        return new PluginState(primary, filtered, nextHandle, shouldLaunchDeeplink, sdkStarted, lazyJsonResponse);
+    }
+
+    PluginState withLazyJsonResponse(boolean lazyJsonResponse) {
+        return new PluginState(primary, filtered, nextHandle, shouldLaunchDeeplink, sdkStarted, lazyJsonResponse);
+    }
+
+    // Queries
+
+    int nextHandle() {
+        return nextHandle;
+    }
+
+    /**
+     * Returns the reference of the primary listener of a type, or REFNIL if none is set.
+     */
+    int primary(int type) {
+        return primary[type] != null ? primary[type].ref : CoronaLua.REFNIL;
+    }
+
+    /**
+     * Returns the reference of the filtered listener with the given handle, or REFNIL if unknown.
+     */
+    int listener(int handle) {
+        int index = indexOf(handle);
+        return index == -1 ? CoronaLua.REFNIL : filtered[index].ref;
+    }
+
+    /**
+     * Returns the reference of the listener, primary or filtered, registered under the given handle, or
+     * REFNIL if it is no longer registered.
+     */
+    int ref(int handle) {
+        Entry entry = entry(handle);
+        return entry != null ? entry.ref : CoronaLua.REFNIL;
+    }
+
+    /**
+     * Returns the payload fields wanted by any of the given listeners, or null if one of them takes every
+     * field.
+     */
+    Set<String> fields(int[] handles) {
+        Set<String> union = null;
+        for (int handle : handles) {
+            Set<String> fields = fields(handle);
+            if (fields == null) {
+                return null;
+            }
+
+            if (union == null) {
+                union = fields;
+            } else if (!union.containsAll(fields)) {
+                union = new HashSet<String>(union);
+                union.addAll(fields);
+            }
+        }
+
+        return union;
+    }
+
+    /**
+     * Returns the payload fields of a listener, or null for all of them.
+     */
+    Set<String> fields(int handle) {
+        Entry entry = entry(handle);
+        return entry != null ? entry.fields : null;
+    }
+
+    /**
+     * Returns the handles of the listeners of a type whose filter matches, or null if none does.
+     */
+    int[] match(int type, String eventToken, Boolean willRetry) {
+        int count = primary[type] != null ? 1 : 0;
+        for (Entry entry : filtered) {
+            if (entry.type == type && entry.filter.matches(eventToken, willRetry)) {
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            return null;
+        }
+
+        int[] handles = new int[count];
+        int i = 0;
+        if (primary[type] != null) {
+            handles[i++] = primary[type].handle;
+        }
+        for (Entry entry : filtered) {
+            if (entry.type == type && entry.filter.matches(eventToken, willRetry)) {
+                handles[i++] = entry.handle;
+            }
+        }
+
+        return handles;
+    }
+
+    /**
+     * Returns the references of every registered listener.
+     */
+    int[] listeners() {
+        int count = filtered.length;
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            if (primary[type] != null) {
+                count++;
+            }
+        }
+
+        int[] refs = new int[count];
+        int i = 0;
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            if (primary[type] != null) {
+                refs[i++] = primary[type].ref;
+            }
+        }
+        for (Entry entry : filtered) {
+            refs[i++] = entry.ref;
+        }
+
+        return refs;
+    }
+
+    private Entry entry(int handle) {
+        for (Entry entry : primary) {
+            if (entry != null && entry.handle == handle) {
+                return entry;
+            }
+        }
+
+        int index = indexOf(handle);
+        return index == -1 ? null : filtered[index];
+    }
+
+    private int indexOf(int handle) {
+        for (int i = 0; i < filtered.length; i++) {
+            if (filtered[i].handle == handle) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,141 @@
+//
+//  ProcessGuard.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Tells whether the plugin runs in the app's main process.
+ * <p>
+ * The main process is the one named by the processName create option, or the package name until it is
+ * set. In any other process, such as ad or push worker processes that also load the Corona runtime,
+ * the plugin skips SDK initialization and turns its Lua functions into no-ops. A process without the
+ * package name is undecided until the main process is named, as it may be a main process with a custom
+ * name.
+ */
+final class ProcessGuard {
+    private static final String TAG = "ProcessGuard";
+
+    private final Context context;
+
+    // Resolved on first use; never changes for the lifetime of the process
+    private String currentProcessName;
+    // Explicitly configured main process name, null for the package name
+    private String mainProcessName;
+    private volatile boolean mainProcess;
+    private volatile boolean resolved = false;
+    // Set once create() or an early start has named the main process
+    private volatile boolean named = false;
+
+    ProcessGuard(Context context) {
+        this(context, null);
+    }
+
+    /**
+     * Takes the name of the current process instead of reading it, for JVM tests.
+     */
+    ProcessGuard(Context context, String currentProcessName) {
+        this.context = context;
+        this.currentProcessName = currentProcessName;
+    }
+
+    boolean isMainProcess() {
+        if (!resolved) {
+            resolve(null);
+        }
+
+        return mainProcess;
+    }
+
+    /**
+     * Returns true if this process is not the main process by its package name, but may still be named
+     * the main process by create().
+     */
+    boolean isUndecided() {
+        return !isMainProcess() && !named;
+    }
+
+    /**
+     * Sets the name of the main process and returns whether this is it. Null keeps the name set before,
+     * by default the package name.
+     */
+    synchronized boolean setMainProcessName(String processName) {
+        named = true;
+        return resolve(processName);
+    }
+
+    private synchronized boolean resolve(String processName) {
+        if (currentProcessName == null) {
+            currentProcessName = readCurrentProcessName();
+        }
+
+        if (processName != null) {
+            mainProcessName = processName;
+        }
+
+        String expected = mainProcessName != null ? mainProcessName : context.getPackageName();
+        // If the name cannot be read, behave as before rather than disabling the SDK
+        mainProcess = currentProcessName == null || currentProcessName.equals(expected);
+        resolved = true;
+
+        if (!mainProcess && named) {
+            Log.i(TAG, "Running in process " + currentProcessName + ", not in " + expected + "; Adjust calls are ignored");
+        }
+
+        return mainProcess;
+    }
+
+    private String readCurrentProcessName() {
+        // /proc avoids a binder call to the activity manager
+        FileInputStream input = null;
+        try {
+            input = new FileInputStream("/proc/self/cmdline");
+            byte[] buffer = new byte[256];
+            int length = input.read(buffer);
+            int end = 0;
+            while (end < length && buffer[end] != 0) {
+                end++;
+            }
+            if (end > 0) {
+                return new String(buffer, 0, end, "UTF-8");
+            }
+        } catch (IOException e) {
+            // Fall back to the activity manager
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+
+        ActivityManager activityManager = (ActivityManager)context.getSystemService(Context.ACTIVITY_SERVICE);
+        List<ActivityManager.RunningAppProcessInfo> processes =
+                activityManager != null ? activityManager.getRunningAppProcesses() : null;
+        if (processes != null) {
+            int pid = Process.myPid();
+            for (ActivityManager.RunningAppProcessInfo process : processes) {
+                if (process.pid == pid) {
+                    return process.processName;
+                }
+            }
+        }
+
+        return null;
+    }
+}
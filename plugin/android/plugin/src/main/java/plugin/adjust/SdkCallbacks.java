@@ -0,0 +1,376 @@
+//
+//  SdkCallbacks.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.net.Uri;
+
+import com.adjust.sdk.AdjustAttribution;
+import com.adjust.sdk.AdjustConfig;
+import com.adjust.sdk.AdjustEventFailure;
+import com.adjust.sdk.AdjustEventSuccess;
+import com.adjust.sdk.AdjustSessionFailure;
+import com.adjust.sdk.AdjustSessionSuccess;
+import com.adjust.sdk.OnAttributionChangedListener;
+import com.adjust.sdk.OnDeeplinkResponseListener;
+import com.adjust.sdk.OnEventTrackingFailedListener;
+import com.adjust.sdk.OnEventTrackingSucceededListener;
+import com.adjust.sdk.OnSessionTrackingFailedListener;
+import com.adjust.sdk.OnSessionTrackingSucceededListener;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The single SDK listener of each callback type, installed on every AdjustConfig. One instance exists per
+ * process, see {@link AdjustPlugin}.
+ * <p>
+ * Callbacks are routed to the Lua listeners of the current {@link PluginState} whose filters match when
+ * they arrive, so Lua listeners can be set, replaced or removed at any time after create(). With no
+ * matching Lua listener a callback returns before any payload is built, and otherwise only the fields
+ * wanted by the matching listeners are extracted.
+ */
+final class SdkCallbacks implements
+        OnAttributionChangedListener,
+        OnEventTrackingSucceededListener,
+        OnEventTrackingFailedListener,
+        OnSessionTrackingSucceededListener,
+        OnSessionTrackingFailedListener,
+        OnDeeplinkResponseListener {
+    // Callbacks kept while no LuaLoader is attached, when the SDK was started from Application.onCreate()
+    private static final int MAX_PENDING = 16;
+
+    private final List<Runnable> pending = new ArrayList<Runnable>();
+
+    // Counted as callbacks arrive, before they are deferred or dropped for lack of listeners
+    private final EventStats eventStats;
+
+    // Java consumers, notified as callbacks arrive, whether or not Lua is attached
+    private final NativeListeners nativeListeners;
+
+    // Answer to deferred deep links arriving before a LuaLoader is attached
+    private volatile boolean defaultShouldLaunchDeeplink = true;
+
+    private volatile LuaLoader loader;
+
+    SdkCallbacks(EventStats eventStats, NativeListeners nativeListeners) {
+        this.eventStats = eventStats;
+        this.nativeListeners = nativeListeners;
+    }
+
+    void setDefaultShouldLaunchDeeplink(boolean defaultShouldLaunchDeeplink) {
+        this.defaultShouldLaunchDeeplink = defaultShouldLaunchDeeplink;
+    }
+
+    boolean defaultShouldLaunchDeeplink() {
+        return defaultShouldLaunchDeeplink;
+    }
+
+    void attach(LuaLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Passes the callbacks that arrived before a LuaLoader was attached to the listeners registered now.
+     */
+    void replayPending() {
+        List<Runnable> replay;
+        synchronized (pending) {
+            replay = new ArrayList<Runnable>(pending);
+            pending.clear();
+        }
+
+        for (Runnable callback : replay) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Returns true and keeps the callback for {@link #replayPending()} if no LuaLoader is attached yet.
+     */
+    private boolean defer(Runnable callback) {
+        if (loader != null) {
+            return false;
+        }
+
+        synchronized (pending) {
+            if (pending.size() < MAX_PENDING) {
+                pending.add(callback);
+            }
+        }
+        return true;
+    }
+
+    void install(AdjustConfig adjustConfig) {
+        adjustConfig.setOnAttributionChangedListener(this);
+        adjustConfig.setOnEventTrackingSucceededListener(this);
+        adjustConfig.setOnEventTrackingFailedListener(this);
+        adjustConfig.setOnSessionTrackingSucceededListener(this);
+        adjustConfig.setOnSessionTrackingFailedListener(this);
+        adjustConfig.setOnDeeplinkResponseListener(this);
+    }
+
+    @Override
+    public void onAttributionChanged(final AdjustAttribution adjustAttribution) {
+        nativeListeners.onAttributionChanged(adjustAttribution);
+
+        if (defer(new Runnable() {
+            @Override
+            public void run() {
+                filterAttribution(adjustAttribution);
+            }
+        })) {
+            return;
+        }
+
+        filterAttribution(adjustAttribution);
+    }
+
+    private void filterAttribution(AdjustAttribution adjustAttribution) {
+        // Repeated and rapid attributions are filtered there, and come back through deliverAttribution()
+        loader.attributionTracker().onAttributionChanged(adjustAttribution);
+    }
+
+    /**
+     * Returns true if the attribution was dispatched to at least one Lua listener.
+     */
+    boolean deliverAttribution(AdjustAttribution adjustAttribution) {
+        LuaLoader loader = this.loader;
+        if (loader == null) {
+            return false;
+        }
+
+        PluginState state = loader.state();
+        int[] listeners = state.match(PluginState.TYPE_ATTRIBUTION, null, null);
+        BridgeTraceWriter trace = loader.traceWriter();
+        if (listeners == null && trace == null) {
+            return false;
+        }
+
+        deliver(trace, state, PluginState.TYPE_ATTRIBUTION, listeners, LuaLoader.EVENT_ATTRIBUTION_CHANGED,
+                LuaUtil.attributionToMap(adjustAttribution, fields(trace, state, PluginState.TYPE_ATTRIBUTION, listeners)),
+                null);
+        return listeners != null;
+    }
+
+    @Override
+    public void onFinishedEventTrackingSucceeded(final AdjustEventSuccess adjustEventSuccess) {
+        if (adjustEventSuccess != null) {
+            eventStats.onSucceeded(adjustEventSuccess.eventToken);
+        }
+        nativeListeners.onEventTrackingSucceeded(adjustEventSuccess);
+
+        if (defer(new Runnable() {
+            @Override
+            public void run() {
+                deliverEventTrackingSucceeded(adjustEventSuccess);
+            }
+        })) {
+            return;
+        }
+
+        deliverEventTrackingSucceeded(adjustEventSuccess);
+    }
+
+    private void deliverEventTrackingSucceeded(AdjustEventSuccess adjustEventSuccess) {
+        PluginState state = loader.state();
+        int[] listeners = state.match(PluginState.TYPE_EVENT_TRACKING_SUCCESS,
+                adjustEventSuccess != null ? adjustEventSuccess.eventToken : null, null);
+        BridgeTraceWriter trace = loader.traceWriter();
+        if (listeners == null && trace == null) {
+            return;
+        }
+
+        boolean lazy = state.lazyJsonResponse;
+        deliver(trace, state, PluginState.TYPE_EVENT_TRACKING_SUCCESS, listeners, LuaLoader.EVENT_EVENT_TRACKING_SUCCESS,
+                LuaUtil.eventSuccessToMap(adjustEventSuccess, !lazy,
+                        fields(trace, state, PluginState.TYPE_EVENT_TRACKING_SUCCESS, listeners)),
+                lazy && adjustEventSuccess != null ? adjustEventSuccess.jsonResponse : null);
+    }
+
+    @Override
+    public void onFinishedEventTrackingFailed(final AdjustEventFailure adjustEventFailure) {
+        if (adjustEventFailure != null) {
+            eventStats.onFailed(adjustEventFailure.eventToken, adjustEventFailure.willRetry);
+        }
+        nativeListeners.onEventTrackingFailed(adjustEventFailure);
+
+        if (defer(new Runnable() {
+            @Override
+            public void run() {
+                deliverEventTrackingFailed(adjustEventFailure);
+            }
+        })) {
+            return;
+        }
+
+        deliverEventTrackingFailed(adjustEventFailure);
+    }
+
+    private void deliverEventTrackingFailed(AdjustEventFailure adjustEventFailure) {
+        PluginState state = loader.state();
+        int[] listeners = state.match(PluginState.TYPE_EVENT_TRACKING_FAILURE,
+                adjustEventFailure != null ? adjustEventFailure.eventToken : null,
+                adjustEventFailure != null ? adjustEventFailure.willRetry : null);
+        BridgeTraceWriter trace = loader.traceWriter();
+        if (listeners == null && trace == null) {
+            return;
+        }
+
+        boolean lazy = state.lazyJsonResponse;
+        deliver(trace, state, PluginState.TYPE_EVENT_TRACKING_FAILURE, listeners, LuaLoader.EVENT_EVENT_TRACKING_FAILURE,
+                LuaUtil.eventFailureToMap(adjustEventFailure, !lazy,
+                        fields(trace, state, PluginState.TYPE_EVENT_TRACKING_FAILURE, listeners)),
+                lazy && adjustEventFailure != null ? adjustEventFailure.jsonResponse : null);
+    }
+
+    @Override
+    public void onFinishedSessionTrackingSucceeded(final AdjustSessionSuccess adjustSessionSuccess) {
+        nativeListeners.onSessionTrackingSucceeded(adjustSessionSuccess);
+
+        if (defer(new Runnable() {
+            @Override
+            public void run() {
+                deliverSessionTrackingSucceeded(adjustSessionSuccess);
+            }
+        })) {
+            return;
+        }
+
+        deliverSessionTrackingSucceeded(adjustSessionSuccess);
+    }
+
+    private void deliverSessionTrackingSucceeded(AdjustSessionSuccess adjustSessionSuccess) {
+        PluginState state = loader.state();
+        int[] listeners = state.match(PluginState.TYPE_SESSION_TRACKING_SUCCESS, null, null);
+        BridgeTraceWriter trace = loader.traceWriter();
+        if (listeners == null && trace == null) {
+            return;
+        }
+
+        boolean lazy = state.lazyJsonResponse;
+        deliver(trace, state, PluginState.TYPE_SESSION_TRACKING_SUCCESS, listeners, LuaLoader.EVENT_SESSION_TRACKING_SUCCESS,
+                LuaUtil.sessionSuccessToMap(adjustSessionSuccess, !lazy,
+                        fields(trace, state, PluginState.TYPE_SESSION_TRACKING_SUCCESS, listeners)),
+                lazy && adjustSessionSuccess != null ? adjustSessionSuccess.jsonResponse : null);
+    }
+
+    @Override
+    public void onFinishedSessionTrackingFailed(final AdjustSessionFailure adjustSessionFailure) {
+        nativeListeners.onSessionTrackingFailed(adjustSessionFailure);
+
+        if (defer(new Runnable() {
+            @Override
+            public void run() {
+                deliverSessionTrackingFailed(adjustSessionFailure);
+            }
+        })) {
+            return;
+        }
+
+        deliverSessionTrackingFailed(adjustSessionFailure);
+    }
+
+    private void deliverSessionTrackingFailed(AdjustSessionFailure adjustSessionFailure) {
+        PluginState state = loader.state();
+        int[] listeners = state.match(PluginState.TYPE_SESSION_TRACKING_FAILURE, null,
+                adjustSessionFailure != null ? adjustSessionFailure.willRetry : null);
+        BridgeTraceWriter trace = loader.traceWriter();
+        if (listeners == null && trace == null) {
+            return;
+        }
+
+        boolean lazy = state.lazyJsonResponse;
+        deliver(trace, state, PluginState.TYPE_SESSION_TRACKING_FAILURE, listeners, LuaLoader.EVENT_SESSION_TRACKING_FAILURE,
+                LuaUtil.sessionFailureToMap(adjustSessionFailure, !lazy,
+                        fields(trace, state, PluginState.TYPE_SESSION_TRACKING_FAILURE, listeners)),
+                lazy && adjustSessionFailure != null ? adjustSessionFailure.jsonResponse : null);
+    }
+
+    @Override
+    public boolean launchReceivedDeeplink(final Uri uri) {
+        nativeListeners.onDeeplinkReceived(uri);
+
+        if (defer(new Runnable() {
+            @Override
+            public void run() {
+                deliverDeeplink(uri);
+            }
+        })) {
+            return defaultShouldLaunchDeeplink;
+        }
+
+        return deliverDeeplink(uri);
+    }
+
+    private boolean deliverDeeplink(Uri uri) {
+        PluginState state = loader.state();
+        int[] listeners = state.match(PluginState.TYPE_DEFERRED_DEEPLINK, null, null);
+        BridgeTraceWriter trace = loader.traceWriter();
+        if (listeners != null || trace != null) {
+            deliver(trace, state, PluginState.TYPE_DEFERRED_DEEPLINK, listeners, LuaLoader.EVENT_DEFERRED_DEEPLINK,
+                    LuaUtil.deferredDeeplinkToMap(uri), null);
+        }
+
+        return state.shouldLaunchDeeplink;
+    }
+
+    /**
+     * Returns the fields to extract for a callback: all of them while a bridge trace is running, otherwise
+     * only those wanted by at least one of the matching listeners.
+     */
+    private static Set<String> fields(BridgeTraceWriter trace, PluginState state, int type, int[] listeners) {
+        if (trace != null || listeners == null) {
+            return null;
+        }
+
+        return state.fields(listeners);
+    }
+
+    /**
+     * Records the callback when a bridge trace is running and dispatches it to the matching listeners, if any.
+     * Each listener gets the payload projected to its own fields. A non-null jsonResponse is handed to Lua
+     * unconverted, behind a getJsonResponse() accessor.
+     */
+    private void deliver(BridgeTraceWriter trace, PluginState state, int type, int[] listeners, String name,
+                         Map payload, JSONObject jsonResponse) {
+        String message = new JSONObject(payload).toString();
+        if (trace != null) {
+            trace.recordCallback(type, message);
+        }
+
+        if (listeners == null) {
+            return;
+        }
+
+        // Listeners sharing a field set, or taking every extracted field, share one message string
+        Set<String> extracted = fields(trace, state, type, listeners);
+        String[] messages = new String[listeners.length];
+        Set<String> previousFields = extracted;
+        String previousMessage = message;
+        for (int i = 0; i < listeners.length; i++) {
+            Set<String> fields = state.fields(listeners[i]);
+            if (fields == null || fields.equals(extracted)) {
+                messages[i] = message;
+                continue;
+            }
+
+            if (!fields.equals(previousFields)) {
+                previousFields = fields;
+                previousMessage = new JSONObject(LuaUtil.project(payload, fields)).toString();
+            }
+            messages[i] = previousMessage;
+        }
+
+        loader.dispatchListenerEvent(type, listeners, name, messages, jsonResponse);
+    }
+}
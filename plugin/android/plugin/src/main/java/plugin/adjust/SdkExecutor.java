@@ -0,0 +1,86 @@
+//
+//  SdkExecutor.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.util.Log;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the plugin's calls into the Adjust SDK.
+ * <p>
+ * By default each call runs inline on the calling thread. Once ordered mode is switched on, calls are
+ * handed to a single background thread in submission order, so the Lua thread never waits for the
+ * SharedPreferences and disk work done inside the SDK. Ordered mode cannot be switched off again, as
+ * calls already queued would otherwise race with inline ones.
+ */
+final class SdkExecutor implements Executor {
+    private static final String TAG = "SdkExecutor";
+
+    private final Object lock = new Object();
+    private volatile ExecutorService executor;
+
+    void enableOrdered() {
+        synchronized (lock) {
+            if (executor == null) {
+                executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("adjust-sdk"));
+            }
+        }
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        ExecutorService executor = this.executor;
+        if (executor == null) {
+            command.run();
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Keep the thread, and the calls queued behind this one, alive
+                try {
+                    command.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "SDK call failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until every call submitted so far has run. Returns false if the timeout expired first.
+     */
+    boolean await(long timeoutMillis) {
+        ExecutorService executor = this.executor;
+        if (executor == null) {
+            return true;
+        }
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+
+        try {
+            return latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
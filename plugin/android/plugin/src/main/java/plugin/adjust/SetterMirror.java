@@ -0,0 +1,195 @@
+//
+//  SetterMirror.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mirror of the values last applied to the SDK through the plugin's setters.
+ * <p>
+ * Each method returns whether the call would change SDK state and therefore has to be forwarded, and
+ * counts the calls it suppresses. Push token and referrer are persisted, as the SDK acts on them across
+ * launches, but only once the started and enabled SDK has taken them in, and they are forgotten when the
+ * SDK is disabled. The other values start unknown in every process, so their first call is always
+ * forwarded.
+ */
+final class SetterMirror {
+    private static final String PREFERENCES_NAME = "adjust_plugin";
+    private static final String KEY_PUSH_TOKEN = "lastPushToken";
+    private static final String KEY_REFERRER = "lastReferrer";
+
+    private final Context context;
+    private final Map<String, Integer> suppressed = new HashMap<String, Integer>();
+    private final ParameterMirror sessionCallbackParameters = new ParameterMirror();
+    private final ParameterMirror sessionPartnerParameters = new ParameterMirror();
+
+    // Loaded by preload() off the Lua thread, or on first use if that has not run yet
+    private SharedPreferences preferences;
+    private Boolean enabled;
+    private Boolean offlineMode;
+
+    SetterMirror(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Reads the persisted values from disk. Runs on a background thread, so require() does not wait for it.
+     */
+    synchronized void preload() {
+        preferences().getString(KEY_PUSH_TOKEN, null);
+    }
+
+    synchronized boolean setEnabled(boolean enabled) {
+        if (Boolean.valueOf(enabled).equals(this.enabled)) {
+            return suppress("setEnabled");
+        }
+
+        this.enabled = enabled;
+        return true;
+    }
+
+    synchronized boolean setOfflineMode(boolean offlineMode) {
+        if (Boolean.valueOf(offlineMode).equals(this.offlineMode)) {
+            return suppress("setOfflineMode");
+        }
+
+        this.offlineMode = offlineMode;
+        return true;
+    }
+
+    synchronized boolean setPushToken(String pushToken) {
+        return isPersisted(KEY_PUSH_TOKEN, pushToken) ? suppress("setPushToken") : true;
+    }
+
+    synchronized boolean setReferrer(String referrer) {
+        return isPersisted(KEY_REFERRER, referrer) ? suppress("setReferrer") : true;
+    }
+
+    /**
+     * Records a push token the started and enabled SDK has taken in.
+     */
+    synchronized void persistPushToken(String pushToken) {
+        preferences().edit().putString(KEY_PUSH_TOKEN, pushToken).apply();
+    }
+
+    /**
+     * Records a referrer the started and enabled SDK has taken in.
+     */
+    synchronized void persistReferrer(String referrer) {
+        preferences().edit().putString(KEY_REFERRER, referrer).apply();
+    }
+
+    /**
+     * Forgets the persisted values, so they are sent again once the SDK is enabled.
+     */
+    synchronized void clearPersisted() {
+        preferences().edit().remove(KEY_PUSH_TOKEN).remove(KEY_REFERRER).apply();
+    }
+
+    synchronized boolean addSessionCallbackParameter(String key, String value) {
+        return sessionCallbackParameters.add(key, value) || suppress("addSessionCallbackParameter");
+    }
+
+    synchronized boolean addSessionPartnerParameter(String key, String value) {
+        return sessionPartnerParameters.add(key, value) || suppress("addSessionPartnerParameter");
+    }
+
+    synchronized boolean removeSessionCallbackParameter(String key) {
+        return sessionCallbackParameters.remove(key) || suppress("removeSessionCallbackParameter");
+    }
+
+    synchronized boolean removeSessionPartnerParameter(String key) {
+        return sessionPartnerParameters.remove(key) || suppress("removeSessionPartnerParameter");
+    }
+
+    synchronized boolean resetSessionCallbackParameters() {
+        return sessionCallbackParameters.reset() || suppress("resetSessionCallbackParameters");
+    }
+
+    synchronized boolean resetSessionPartnerParameters() {
+        return sessionPartnerParameters.reset() || suppress("resetSessionPartnerParameters");
+    }
+
+    /**
+     * Returns the number of suppressed calls per Lua function name.
+     */
+    synchronized Map<String, Integer> getSuppressedCalls() {
+        return new HashMap<String, Integer>(suppressed);
+    }
+
+    private boolean isPersisted(String key, String value) {
+        return value.equals(preferences().getString(key, null));
+    }
+
+    private SharedPreferences preferences() {
+        if (preferences == null) {
+            preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        }
+        return preferences;
+    }
+
+    private boolean suppress(String function) {
+        Integer count = suppressed.get(function);
+        suppressed.put(function, count == null ? 1 : count + 1);
+        return false;
+    }
+
+    /**
+     * Session parameters as far as they are known in this process. The SDK persists them itself, so a
+     * key is only known to be absent after it was removed or all parameters were reset.
+     */
+    private static final class ParameterMirror {
+        // A null value marks a key known to be absent
+        private final Map<String, String> values = new HashMap<String, String>();
+        private boolean cleared = false;
+
+        boolean add(String key, String value) {
+            if (value.equals(values.get(key))) {
+                return false;
+            }
+
+            values.put(key, value);
+            return true;
+        }
+
+        boolean remove(String key) {
+            boolean absent = values.containsKey(key) ? values.get(key) == null : cleared;
+            if (absent) {
+                return false;
+            }
+
+            values.put(key, null);
+            return true;
+        }
+
+        boolean reset() {
+            if (cleared && isAllAbsent()) {
+                return false;
+            }
+
+            values.clear();
+            cleared = true;
+            return true;
+        }
+
+        private boolean isAllAbsent() {
+            for (String value : values.values()) {
+                if (value != null) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
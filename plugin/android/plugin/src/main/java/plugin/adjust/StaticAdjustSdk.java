@@ -0,0 +1,123 @@
+//
+//  StaticAdjustSdk.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.adjust.sdk.Adjust;
+import com.adjust.sdk.AdjustAttribution;
+import com.adjust.sdk.AdjustConfig;
+import com.adjust.sdk.AdjustEvent;
+import com.adjust.sdk.OnDeviceIdsRead;
+
+/**
+ * Forwards to the static Adjust API.
+ */
+final class StaticAdjustSdk implements AdjustSdk {
+    @Override
+    public void onCreate(AdjustConfig adjustConfig) {
+        Adjust.onCreate(adjustConfig);
+    }
+
+    @Override
+    public void onResume() {
+        Adjust.onResume();
+    }
+
+    @Override
+    public void onPause() {
+        Adjust.onPause();
+    }
+
+    @Override
+    public void trackEvent(AdjustEvent event) {
+        Adjust.trackEvent(event);
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        Adjust.setEnabled(enabled);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return Adjust.isEnabled();
+    }
+
+    @Override
+    public void setOfflineMode(boolean offlineMode) {
+        Adjust.setOfflineMode(offlineMode);
+    }
+
+    @Override
+    public void setPushToken(String pushToken) {
+        Adjust.setPushToken(pushToken);
+    }
+
+    @Override
+    public void setReferrer(String referrer, Context context) {
+        Adjust.setReferrer(referrer, context);
+    }
+
+    @Override
+    public void appWillOpenUrl(Uri uri) {
+        Adjust.appWillOpenUrl(uri);
+    }
+
+    @Override
+    public void sendFirstPackages() {
+        Adjust.sendFirstPackages();
+    }
+
+    @Override
+    public void addSessionCallbackParameter(String key, String value) {
+        Adjust.addSessionCallbackParameter(key, value);
+    }
+
+    @Override
+    public void addSessionPartnerParameter(String key, String value) {
+        Adjust.addSessionPartnerParameter(key, value);
+    }
+
+    @Override
+    public void removeSessionCallbackParameter(String key) {
+        Adjust.removeSessionCallbackParameter(key);
+    }
+
+    @Override
+    public void removeSessionPartnerParameter(String key) {
+        Adjust.removeSessionPartnerParameter(key);
+    }
+
+    @Override
+    public void resetSessionCallbackParameters() {
+        Adjust.resetSessionCallbackParameters();
+    }
+
+    @Override
+    public void resetSessionPartnerParameters() {
+        Adjust.resetSessionPartnerParameters();
+    }
+
+    @Override
+    public String getAdid() {
+        return Adjust.getAdid();
+    }
+
+    @Override
+    public AdjustAttribution getAttribution() {
+        return Adjust.getAttribution();
+    }
+
+    @Override
+    public void getGoogleAdId(Context context, OnDeviceIdsRead onDeviceIdsRead) {
+        Adjust.getGoogleAdId(context, onDeviceIdsRead);
+    }
+}
@@ -0,0 +1,100 @@
+//
+//  SystemNetworkStateSource.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+
+/**
+ * Reads network state from the connectivity and power-save-mode system broadcasts.
+ * <p>
+ * Requires the ACCESS_NETWORK_STATE permission which the Adjust SDK already depends on.
+ */
+final class SystemNetworkStateSource extends BroadcastReceiver implements NetworkStateSource {
+    private static final String TAG = "SystemNetworkState";
+
+    private final Context context;
+    private Observer observer;
+
+    SystemNetworkStateSource(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public synchronized NetworkState start(Observer observer) {
+        if (this.observer == null) {
+            IntentFilter filter = new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+            }
+            context.registerReceiver(this, filter);
+        }
+
+        this.observer = observer;
+        return readState();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (observer == null) {
+            return;
+        }
+
+        observer = null;
+        context.unregisterReceiver(this);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        Observer observer;
+        synchronized (this) {
+            observer = this.observer;
+        }
+
+        if (observer != null) {
+            observer.onNetworkStateChanged(readState());
+        }
+    }
+
+    private NetworkState readState() {
+        boolean connected = true;
+        boolean metered = false;
+        boolean powerSaveMode = false;
+
+        try {
+            ConnectivityManager connectivityManager =
+                    (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            if (connectivityManager != null) {
+                NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+                connected = networkInfo != null && networkInfo.isConnected();
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                    metered = connectivityManager.isActiveNetworkMetered();
+                } else if (networkInfo != null) {
+                    metered = networkInfo.getType() == ConnectivityManager.TYPE_MOBILE;
+                }
+            }
+        } catch (SecurityException e) {
+            Log.w(TAG, "readState: missing ACCESS_NETWORK_STATE permission, assuming connected", e);
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            powerSaveMode = powerManager != null && powerManager.isPowerSaveMode();
+        }
+
+        return new NetworkState(connected, metered, powerSaveMode);
+    }
+}
@@ -0,0 +1,71 @@
+//
+//  CoronaLua.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.ansca.corona;
+
+import com.naef.jnlua.LuaState;
+import com.naef.jnlua.LuaType;
+
+/**
+ * Stand-in for the Corona Lua helpers in JVM tests, working on the test LuaState.
+ */
+public class CoronaLua {
+    public static final int REFNIL = -1;
+    public static final int NOREF = -2;
+
+    /**
+     * Returns whether the value at the index is a function, or a table with a function field of the event name.
+     */
+    public static boolean isListener(LuaState L, int index, String eventName) {
+        if (L.isFunction(index)) {
+            return true;
+        }
+        if (!L.isTable(index) || eventName == null) {
+            return false;
+        }
+
+        L.getField(index, eventName);
+        boolean isListener = L.isFunction(-1);
+        L.pop(1);
+        return isListener;
+    }
+
+    public static int newRef(LuaState L, int index) {
+        L.pushValue(index);
+        return L.ref(LuaState.REGISTRYINDEX);
+    }
+
+    public static void deleteRef(LuaState L, int ref) {
+        if (ref > 0) {
+            L.unref(LuaState.REGISTRYINDEX, ref);
+        }
+    }
+
+    public static void newEvent(LuaState L, String eventName) {
+        L.newTable();
+        L.pushString(eventName);
+        L.setField(-2, "name");
+    }
+
+    /**
+     * Calls the referenced listener with the event on top of the stack, which it pops.
+     */
+    public static void dispatchEvent(LuaState L, int listenerRef, int resultCount) throws Exception {
+        int eventIndex = L.getTop();
+        L.rawGet(LuaState.REGISTRYINDEX, listenerRef);
+        if (L.type(-1) == LuaType.TABLE) {
+            L.getField(eventIndex, "name");
+            String name = L.toString(-1);
+            L.pop(1);
+            L.getField(-1, name);
+            L.remove(-2);
+        }
+        L.insert(eventIndex);
+        L.call(1, resultCount);
+    }
+}
@@ -0,0 +1,84 @@
+//
+//  CoronaRuntime.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.ansca.corona;
+
+import com.naef.jnlua.LuaState;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stand-in for the Corona runtime in JVM tests. Tasks sent to a LuaState's runtime queue up until the test
+ * runs a frame.
+ */
+public class CoronaRuntime {
+    private static final Map<LuaState, CoronaRuntime> runtimes = new IdentityHashMap<LuaState, CoronaRuntime>();
+
+    private final LuaState luaState;
+    private final List<CoronaRuntimeTask> tasks = new ArrayList<CoronaRuntimeTask>();
+
+    private CoronaRuntime(LuaState luaState) {
+        this.luaState = luaState;
+    }
+
+    /**
+     * Returns the runtime of the given LuaState, creating it on first use.
+     */
+    public static CoronaRuntime of(LuaState L) {
+        synchronized (runtimes) {
+            CoronaRuntime runtime = runtimes.get(L);
+            if (runtime == null) {
+                runtime = new CoronaRuntime(L);
+                runtimes.put(L, runtime);
+            }
+            return runtime;
+        }
+    }
+
+    public LuaState getLuaState() {
+        return luaState;
+    }
+
+    public boolean isRunning() {
+        return true;
+    }
+
+    /**
+     * Runs the tasks queued before this frame and returns how many ran.
+     */
+    public int runFrame() {
+        List<CoronaRuntimeTask> frame;
+        synchronized (tasks) {
+            frame = new ArrayList<CoronaRuntimeTask>(tasks);
+            tasks.clear();
+        }
+
+        for (CoronaRuntimeTask task : frame) {
+            task.executeUsing(this);
+        }
+        return frame.size();
+    }
+
+    /**
+     * Runs frames until no task is left.
+     */
+    public void runAllFrames() {
+        while (runFrame() > 0) {
+            // Tasks may queue further tasks
+        }
+    }
+
+    void post(CoronaRuntimeTask task) {
+        synchronized (tasks) {
+            tasks.add(task);
+        }
+    }
+}
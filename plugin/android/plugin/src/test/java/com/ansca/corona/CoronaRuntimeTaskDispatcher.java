@@ -0,0 +1,38 @@
+//
+//  CoronaRuntimeTaskDispatcher.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.ansca.corona;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * Stand-in for the Corona task dispatcher in JVM tests, posting to the test runtime of the LuaState.
+ */
+public class CoronaRuntimeTaskDispatcher {
+    private final CoronaRuntime runtime;
+
+    public CoronaRuntimeTaskDispatcher(LuaState L) {
+        runtime = CoronaRuntime.of(L);
+    }
+
+    public CoronaRuntimeTaskDispatcher(CoronaRuntime runtime) {
+        this.runtime = runtime;
+    }
+
+    public void send(CoronaRuntimeTask task) {
+        runtime.post(task);
+    }
+
+    public boolean isRuntimeAvailable() {
+        return true;
+    }
+
+    public boolean isRuntimeUnavailable() {
+        return false;
+    }
+}
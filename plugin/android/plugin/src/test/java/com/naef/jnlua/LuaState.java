@@ -0,0 +1,531 @@
+//
+//  LuaState.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.naef.jnlua;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stand-in for the native jnlua LuaState in JVM tests, shadowing it on the unit test classpath.
+ * <p>
+ * The stack holds Java values: null for nil, Boolean, Double, String, {@link Table} and JavaFunction.
+ * Only the part of the API the plugin uses is implemented, without metatables, plus Java function calls
+ * with a stack frame of their own and the registry. Errors raise IllegalArgumentException. Counts the
+ * tables created, as a measure of the garbage the Lua GC would have to collect.
+ */
+public class LuaState {
+    public static final int REGISTRYINDEX = -10000;
+    public static final int GLOBALSINDEX = -10002;
+    public static final int MULTRET = -1;
+
+    /**
+     * A Lua table. Keys and values are stack values; numbers are always Doubles.
+     */
+    public static final class Table {
+        final Map<Object, Object> fields = new LinkedHashMap<Object, Object>();
+
+        public Object get(Object key) {
+            return fields.get(key);
+        }
+
+        public int size() {
+            return fields.size();
+        }
+
+        void put(Object key, Object value) {
+            if (key == null) {
+                throw new IllegalArgumentException("table index is nil");
+            }
+            if (value == null) {
+                fields.remove(key);
+            } else {
+                fields.put(key, value);
+            }
+        }
+    }
+
+    private final List<Object> stack = new ArrayList<Object>();
+    private final Table registry = new Table();
+    private final Table globals = new Table();
+    private final List<Integer> freeRefs = new ArrayList<Integer>();
+    private int nextRef = 1;
+    // Stack position of index 1 in the running function
+    private int base = 0;
+    private long tablesCreated = 0;
+
+    /**
+     * Returns the number of tables created so far.
+     */
+    public long getTablesCreated() {
+        return tablesCreated;
+    }
+
+    /**
+     * Returns the number of values referenced from the registry.
+     */
+    public int getRefCount() {
+        return registry.size();
+    }
+
+    /**
+     * Returns the value at the given index as held on the stack.
+     */
+    public Object getValue(int index) {
+        return get(index);
+    }
+
+    public boolean isOpen() {
+        return true;
+    }
+
+    // Stack
+
+    public int getTop() {
+        return stack.size() - base;
+    }
+
+    public void setTop(int index) {
+        int size = index >= 0 ? base + index : stack.size() + index + 1;
+        if (size < base) {
+            throw new IllegalArgumentException("stack underflow");
+        }
+        while (stack.size() > size) {
+            stack.remove(stack.size() - 1);
+        }
+        while (stack.size() < size) {
+            stack.add(null);
+        }
+    }
+
+    public void pop(int count) {
+        setTop(-count - 1);
+    }
+
+    public int absIndex(int index) {
+        return index > 0 || index <= REGISTRYINDEX ? index : getTop() + index + 1;
+    }
+
+    public void pushValue(int index) {
+        push(get(index));
+    }
+
+    public void remove(int index) {
+        stack.remove(position(index));
+    }
+
+    public void insert(int index) {
+        int position = position(index);
+        stack.add(position, stack.remove(stack.size() - 1));
+    }
+
+    // Push
+
+    public void pushNil() {
+        push(null);
+    }
+
+    public void pushBoolean(boolean value) {
+        push(value);
+    }
+
+    public void pushNumber(double value) {
+        push(value);
+    }
+
+    public void pushInteger(int value) {
+        push((double) value);
+    }
+
+    public void pushString(String value) {
+        push(value);
+    }
+
+    public void pushJavaFunction(JavaFunction function) {
+        push(function);
+    }
+
+    public void newTable() {
+        tablesCreated++;
+        push(new Table());
+    }
+
+    public void newTable(int arrayCount, int recordCount) {
+        newTable();
+    }
+
+    // Type checks and conversions
+
+    public LuaType type(int index) {
+        if (!isValid(index)) {
+            return null;
+        }
+
+        Object value = get(index);
+        if (value == null) {
+            return LuaType.NIL;
+        } else if (value instanceof Boolean) {
+            return LuaType.BOOLEAN;
+        } else if (value instanceof Double) {
+            return LuaType.NUMBER;
+        } else if (value instanceof String) {
+            return LuaType.STRING;
+        } else if (value instanceof Table) {
+            return LuaType.TABLE;
+        } else if (value instanceof JavaFunction) {
+            return LuaType.FUNCTION;
+        }
+        return LuaType.USERDATA;
+    }
+
+    public boolean isNil(int index) {
+        return type(index) == LuaType.NIL;
+    }
+
+    public boolean isNoneOrNil(int index) {
+        return get(index) == null;
+    }
+
+    public boolean isBoolean(int index) {
+        return type(index) == LuaType.BOOLEAN;
+    }
+
+    public boolean isNumber(int index) {
+        return toNumberOrNull(get(index)) != null;
+    }
+
+    public boolean isString(int index) {
+        Object value = get(index);
+        return value instanceof String || value instanceof Double;
+    }
+
+    public boolean isTable(int index) {
+        return type(index) == LuaType.TABLE;
+    }
+
+    public boolean isFunction(int index) {
+        return type(index) == LuaType.FUNCTION;
+    }
+
+    public boolean isJavaFunction(int index) {
+        return isFunction(index);
+    }
+
+    public boolean toBoolean(int index) {
+        Object value = get(index);
+        return value != null && !Boolean.FALSE.equals(value);
+    }
+
+    public double toNumber(int index) {
+        Double number = toNumberOrNull(get(index));
+        return number != null ? number : 0.0;
+    }
+
+    public int toInteger(int index) {
+        return (int) toNumber(index);
+    }
+
+    public String toString(int index) {
+        return toStringOrNull(get(index));
+    }
+
+    public String checkString(int index) {
+        String value = toStringOrNull(get(index));
+        if (value == null) {
+            throw argumentError(index, "string");
+        }
+        return value;
+    }
+
+    public String checkString(int index, String defaultValue) {
+        return isNoneOrNil(index) ? defaultValue : checkString(index);
+    }
+
+    public double checkNumber(int index) {
+        Double value = toNumberOrNull(get(index));
+        if (value == null) {
+            throw argumentError(index, "number");
+        }
+        return value;
+    }
+
+    public double checkNumber(int index, double defaultValue) {
+        return isNoneOrNil(index) ? defaultValue : checkNumber(index);
+    }
+
+    public int checkInteger(int index) {
+        return (int) checkNumber(index);
+    }
+
+    public int checkInteger(int index, int defaultValue) {
+        return isNoneOrNil(index) ? defaultValue : checkInteger(index);
+    }
+
+    public boolean checkBoolean(int index) {
+        if (!isBoolean(index)) {
+            throw argumentError(index, "boolean");
+        }
+        return (Boolean) get(index);
+    }
+
+    public boolean checkBoolean(int index, boolean defaultValue) {
+        return isNoneOrNil(index) ? defaultValue : checkBoolean(index);
+    }
+
+    public int length(int index) {
+        Object value = get(index);
+        if (value instanceof String) {
+            return ((String) value).length();
+        }
+
+        int length = 0;
+        if (value instanceof Table) {
+            while (((Table) value).get((double) (length + 1)) != null) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    // Tables
+
+    public void getField(int index, String key) {
+        push(table(index).get(key));
+    }
+
+    public void setField(int index, String key) {
+        Table table = table(index);
+        table.put(key, popValue());
+    }
+
+    public void getGlobal(String name) {
+        push(globals.get(name));
+    }
+
+    public void setGlobal(String name) {
+        globals.put(name, popValue());
+    }
+
+    public void rawGet(int index) {
+        Table table = table(index);
+        push(table.get(normalize(popValue())));
+    }
+
+    public void rawGet(int index, int key) {
+        push(table(index).get((double) key));
+    }
+
+    public void rawSet(int index) {
+        Table table = table(index);
+        Object value = popValue();
+        table.put(normalize(popValue()), value);
+    }
+
+    public void rawSet(int index, int key) {
+        Table table = table(index);
+        table.put((double) key, popValue());
+    }
+
+    public boolean next(int index) {
+        Table table = table(index);
+        Object key = popValue();
+
+        Iterator<Map.Entry<Object, Object>> entries = table.fields.entrySet().iterator();
+        if (key != null) {
+            while (entries.hasNext() && !entries.next().getKey().equals(key)) {
+                // Skip to the entry after the key
+            }
+        }
+        if (!entries.hasNext()) {
+            return false;
+        }
+
+        Map.Entry<Object, Object> entry = entries.next();
+        push(entry.getKey());
+        push(entry.getValue());
+        return true;
+    }
+
+    // References
+
+    public int ref(int index) {
+        Table table = table(index);
+        Object value = popValue();
+        if (value == null) {
+            return -1;
+        }
+
+        int ref = freeRefs.isEmpty() ? nextRef++ : freeRefs.remove(freeRefs.size() - 1);
+        table.put((double) ref, value);
+        return ref;
+    }
+
+    public void unref(int index, int ref) {
+        if (ref <= 0) {
+            return;
+        }
+
+        Table table = table(index);
+        if (table.get((double) ref) != null) {
+            table.put((double) ref, null);
+            freeRefs.add(ref);
+        }
+    }
+
+    // Functions
+
+    /**
+     * Registers the functions into the global table of the given name and leaves that table on the stack.
+     */
+    public void register(String moduleName, NamedJavaFunction[] functions) {
+        Object module = globals.get(moduleName);
+        if (!(module instanceof Table)) {
+            module = new Table();
+            tablesCreated++;
+            globals.put(moduleName, module);
+        }
+
+        for (NamedJavaFunction function : functions) {
+            ((Table) module).put(function.getName(), function);
+        }
+        push(module);
+    }
+
+    /**
+     * Calls the function below the given number of arguments on top of the stack.
+     */
+    public void call(int argCount, int returnCount) {
+        int position = stack.size() - argCount - 1;
+        if (position < base) {
+            throw new IllegalArgumentException("stack underflow");
+        }
+
+        Object function = stack.get(position);
+        if (!(function instanceof JavaFunction)) {
+            throw new IllegalArgumentException("attempt to call a " + typeName(function) + " value");
+        }
+
+        int savedBase = base;
+        List<Object> results;
+        base = position + 1;
+        try {
+            int count = ((JavaFunction) function).invoke(this);
+            results = new ArrayList<Object>(stack.subList(stack.size() - count, stack.size()));
+        } finally {
+            base = savedBase;
+            while (stack.size() > position) {
+                stack.remove(stack.size() - 1);
+            }
+        }
+
+        int count = returnCount == MULTRET ? results.size() : returnCount;
+        for (int i = 0; i < count; i++) {
+            push(i < results.size() ? results.get(i) : null);
+        }
+    }
+
+    // Internals
+
+    private void push(Object value) {
+        stack.add(normalize(value));
+    }
+
+    private Object popValue() {
+        if (stack.size() <= base) {
+            throw new IllegalArgumentException("stack underflow");
+        }
+        return stack.remove(stack.size() - 1);
+    }
+
+    private boolean isValid(int index) {
+        if (index == REGISTRYINDEX || index == GLOBALSINDEX) {
+            return true;
+        }
+        int position = index > 0 ? base + index - 1 : stack.size() + index;
+        return index != 0 && position >= base && position < stack.size();
+    }
+
+    private int position(int index) {
+        if (!isValid(index) || index <= REGISTRYINDEX) {
+            throw new IllegalArgumentException("invalid stack index " + index);
+        }
+        return index > 0 ? base + index - 1 : stack.size() + index;
+    }
+
+    private Object get(int index) {
+        if (index == REGISTRYINDEX) {
+            return registry;
+        } else if (index == GLOBALSINDEX) {
+            return globals;
+        }
+        return isValid(index) ? stack.get(position(index)) : null;
+    }
+
+    private Table table(int index) {
+        Object value = get(index);
+        if (!(value instanceof Table)) {
+            throw new IllegalArgumentException("attempt to index a " + typeName(value) + " value");
+        }
+        return (Table) value;
+    }
+
+    private IllegalArgumentException argumentError(int index, String expected) {
+        return new IllegalArgumentException("bad argument #" + index + " (" + expected + " expected, got "
+                + typeName(get(index)) + ")");
+    }
+
+    private static Object normalize(Object value) {
+        return value instanceof Number && !(value instanceof Double) ? ((Number) value).doubleValue() : value;
+    }
+
+    private static Double toNumberOrNull(Object value) {
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        if (value instanceof String) {
+            try {
+                return Double.valueOf(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static String toStringOrNull(Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Double) {
+            double number = (Double) value;
+            return number == Math.rint(number) && !Double.isInfinite(number)
+                    ? Long.toString((long) number) : Double.toString(number);
+        }
+        return null;
+    }
+
+    private static String typeName(Object value) {
+        if (value == null) {
+            return "nil";
+        } else if (value instanceof Boolean) {
+            return "boolean";
+        } else if (value instanceof Double) {
+            return "number";
+        } else if (value instanceof String) {
+            return "string";
+        } else if (value instanceof Table) {
+            return "table";
+        } else if (value instanceof JavaFunction) {
+            return "function";
+        }
+        return "userdata";
+    }
+}
@@ -0,0 +1,232 @@
+//
+//  AdaptiveOfflineControllerTest.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveOfflineControllerTest {
+    private static final NetworkState ONLINE = new NetworkState(true, false, false);
+    private static final NetworkState DISCONNECTED = new NetworkState(false, false, false);
+    private static final NetworkState METERED = new NetworkState(true, true, false);
+    private static final NetworkState METERED_POWER_SAVE = new NetworkState(true, true, true);
+
+    private FakeNetworkStateSource source;
+    private RecordingSink sink;
+    private ManualScheduler scheduler;
+    private AdaptiveOfflineController controller;
+
+    @Before
+    public void setUp() {
+        source = new FakeNetworkStateSource(ONLINE);
+        sink = new RecordingSink();
+        scheduler = new ManualScheduler();
+        controller = new AdaptiveOfflineController(source, sink, scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void policy() {
+        assertFalse(AdaptiveOfflineController.shouldBeOffline(ONLINE));
+        assertTrue(AdaptiveOfflineController.shouldBeOffline(DISCONNECTED));
+        assertTrue(AdaptiveOfflineController.shouldBeOffline(new NetworkState(false, true, true)));
+        assertFalse(AdaptiveOfflineController.shouldBeOffline(METERED));
+        assertFalse(AdaptiveOfflineController.shouldBeOffline(new NetworkState(true, false, true)));
+        assertTrue(AdaptiveOfflineController.shouldBeOffline(METERED_POWER_SAVE));
+    }
+
+    @Test
+    public void adaptiveModeStartsAndStopsTheSource() {
+        controller.setAdaptive(true);
+        assertNotNull(source.observer);
+
+        controller.setAdaptive(false);
+        assertNull(source.observer);
+        assertTrue(sink.modes.isEmpty());
+    }
+
+    @Test
+    public void goesOfflineImmediatelyWhenTheLinkGoesBad() {
+        controller.setAdaptive(true);
+
+        source.report(DISCONNECTED);
+        assertEquals(list(true), sink.modes);
+        assertEquals(0, scheduler.scheduled.size());
+
+        // Still offline: not applied again
+        source.report(METERED_POWER_SAVE);
+        assertEquals(list(true), sink.modes);
+    }
+
+    @Test
+    public void goesBackOnlineAfterTheFlushDelay() {
+        controller.setAdaptive(true);
+        source.report(DISCONNECTED);
+
+        source.report(ONLINE);
+        assertEquals(list(true), sink.modes);
+        assertEquals(1, scheduler.scheduled.size());
+        assertEquals(AdaptiveOfflineController.FLUSH_DELAY_MS, scheduler.delaysMillis.get(0).longValue());
+
+        scheduler.runNext();
+        assertEquals(list(true, false), sink.modes);
+    }
+
+    @Test
+    public void flappingLinkSchedulesOneFlush() {
+        controller.setAdaptive(true);
+        source.report(DISCONNECTED);
+
+        source.report(ONLINE);
+        source.report(METERED);
+        assertEquals(1, scheduler.scheduled.size());
+
+        scheduler.runNext();
+        assertEquals(list(true, false), sink.modes);
+    }
+
+    @Test
+    public void badLinkBeforeTheFlushCancelsIt() {
+        controller.setAdaptive(true);
+        source.report(DISCONNECTED);
+        source.report(ONLINE);
+        ScheduledFuture<?> flush = scheduler.futures.get(0);
+
+        source.report(METERED_POWER_SAVE);
+        assertTrue(flush.isCancelled());
+        assertEquals(list(true), sink.modes);
+    }
+
+    @Test
+    public void manualOfflineModeOverridesTheNetwork() {
+        controller.setAdaptive(true);
+        controller.setManualOfflineMode(true);
+        assertEquals(list(true), sink.modes);
+
+        source.report(DISCONNECTED);
+        source.report(ONLINE);
+        assertEquals(0, scheduler.scheduled.size());
+
+        controller.setManualOfflineMode(false);
+        assertEquals(1, scheduler.scheduled.size());
+        scheduler.runNext();
+        assertEquals(list(true, false), sink.modes);
+    }
+
+    @Test
+    public void manualOfflineModeIsForwardedWithoutAdaptiveMode() {
+        controller.setManualOfflineMode(true);
+        controller.setManualOfflineMode(false);
+
+        assertEquals(list(true, false), sink.modes);
+        assertEquals(0, scheduler.scheduled.size());
+    }
+
+    @Test
+    public void leavingAdaptiveModeGoesOnlineImmediately() {
+        controller.setAdaptive(true);
+        source.report(DISCONNECTED);
+
+        controller.setAdaptive(false);
+        assertEquals(list(true, false), sink.modes);
+        assertEquals(0, scheduler.scheduled.size());
+    }
+
+    private static List<Boolean> list(Boolean... modes) {
+        List<Boolean> result = new ArrayList<Boolean>();
+        for (Boolean mode : modes) {
+            result.add(mode);
+        }
+        return result;
+    }
+
+    private static final class FakeNetworkStateSource implements NetworkStateSource {
+        private final NetworkState initial;
+        Observer observer;
+
+        FakeNetworkStateSource(NetworkState initial) {
+            this.initial = initial;
+        }
+
+        @Override
+        public NetworkState start(Observer observer) {
+            this.observer = observer;
+            return initial;
+        }
+
+        @Override
+        public void stop() {
+            observer = null;
+        }
+
+        void report(NetworkState state) {
+            if (observer != null) {
+                observer.onNetworkStateChanged(state);
+            }
+        }
+    }
+
+    private static final class RecordingSink implements AdaptiveOfflineController.OfflineModeSink {
+        final List<Boolean> modes = new ArrayList<Boolean>();
+
+        @Override
+        public void setOfflineMode(boolean offlineMode) {
+            modes.add(offlineMode);
+        }
+    }
+
+    /**
+     * Records scheduled tasks and their delays instead of running them; tests run them explicitly.
+     */
+    private static final class ManualScheduler extends ScheduledThreadPoolExecutor {
+        final List<Runnable> scheduled = new ArrayList<Runnable>();
+        final List<Long> delaysMillis = new ArrayList<Long>();
+        final List<ScheduledFuture<?>> futures = new ArrayList<ScheduledFuture<?>>();
+
+        ManualScheduler() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            scheduled.add(command);
+            delaysMillis.add(unit.toMillis(delay));
+            // Never fires on its own, but can be cancelled like a real one
+            ScheduledFuture<?> future = super.schedule(command, 1, TimeUnit.DAYS);
+            futures.add(future);
+            return future;
+        }
+
+        void runNext() {
+            ScheduledFuture<?> future = futures.remove(0);
+            Runnable command = scheduled.remove(0);
+            delaysMillis.remove(0);
+            if (!future.isCancelled()) {
+                command.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+//
+//  Benchmark.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import java.util.Arrays;
+
+/**
+ * Times a task for the benchmark tests. Results are medians over several runs after a warm-up, so a
+ * single slow run on a busy machine does not decide the comparison.
+ */
+final class Benchmark {
+    private static final int WARM_UP_RUNS = 3;
+
+    private Benchmark() {
+    }
+
+    /**
+     * Runs the task the given number of times after a warm-up and returns the median duration in nanoseconds.
+     */
+    static long median(int runs, Runnable task) {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            task.run();
+        }
+
+        long[] durations = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            task.run();
+            durations[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(durations);
+        return durations[runs / 2];
+    }
+
+    /**
+     * Prints a result line of the benchmark of the given name.
+     */
+    static void report(String benchmark, String variant, long nanos) {
+        System.out.println(String.format("%s: %s %.3f ms", benchmark, variant, nanos / 1e6));
+    }
+}
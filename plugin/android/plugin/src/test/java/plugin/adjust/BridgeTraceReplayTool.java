@@ -0,0 +1,68 @@
+//
+//  BridgeTraceReplayTool.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import java.io.FileInputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Replays a bridge trace pulled from a device into the plugin on a desktop JVM and prints a summary.
+ * <p>
+ * Usage: BridgeTraceReplayTool &lt;trace file&gt; [speed], with the unit test classpath. A speed of 1
+ * replays at the original pace, higher faster, and 0 (the default) as fast as possible.
+ */
+public final class BridgeTraceReplayTool {
+    private BridgeTraceReplayTool() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: BridgeTraceReplayTool <trace file> [speed]");
+            System.exit(2);
+        }
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 0.0;
+
+        final PluginHarness harness = new PluginHarness();
+        try {
+            final PluginReplayTarget plugin =
+                    new PluginReplayTarget(harness.loader, harness.L, harness.sdkCallbacks);
+
+            // Callbacks reach the Lua listeners on the frame after each record, as on a device
+            BridgeTraceReplayer.Target target = new BridgeTraceReplayer.Target() {
+                @Override
+                public void onCall(String function, Object[] args) {
+                    plugin.onCall(function, args);
+                    harness.runFrame();
+                }
+
+                @Override
+                public void onCallback(int listenerType, String message) {
+                    plugin.onCallback(listenerType, message);
+                    harness.runFrame();
+                }
+            };
+
+            long start = System.nanoTime();
+            int records = new BridgeTraceReplayer(target, speed).replay(new FileInputStream(args[0]));
+            harness.awaitSdk();
+            double elapsedMillis = (System.nanoTime() - start) / 1e6;
+
+            System.out.println(records + " records replayed in " + String.format("%.1f", elapsedMillis) + " ms");
+            for (Map.Entry<String, Integer> entry
+                    : new TreeMap<String, Integer>(harness.sdk.getCallCounts()).entrySet()) {
+                System.out.println("  Adjust." + entry.getKey() + ": " + entry.getValue());
+            }
+            System.out.println("  listener calls: " + plugin.getListenerCalls());
+            System.out.println("  skipped calls: " + plugin.getSkippedCalls());
+        } finally {
+            harness.close();
+        }
+    }
+}
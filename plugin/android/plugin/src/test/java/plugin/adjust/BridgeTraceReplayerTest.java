@@ -0,0 +1,109 @@
+//
+//  BridgeTraceReplayerTest.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import com.adjust.sdk.AdjustEventSuccess;
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class BridgeTraceReplayerTest {
+    @Test
+    public void replaysRecordedCallbacksInOrder() throws Exception {
+        File file = File.createTempFile("bridge-trace", ".bin");
+        try {
+            BridgeTraceWriter writer = new BridgeTraceWriter(file, new String[] { "create", "trackEvent" });
+            writer.recordCallback(PluginState.TYPE_SESSION_TRACKING_SUCCESS, "{\"message\":\"Session tracked\"}");
+            writer.recordCallback(PluginState.TYPE_ATTRIBUTION, "{\"trackerToken\":\"abc123\"}");
+            writer.close();
+
+            RecordingTarget target = new RecordingTarget();
+            int records = new BridgeTraceReplayer(target, 0.0).replay(new FileInputStream(file));
+
+            assertEquals(2, records);
+            List<String> expected = new ArrayList<String>();
+            expected.add(PluginState.TYPE_SESSION_TRACKING_SUCCESS + ":{\"message\":\"Session tracked\"}");
+            expected.add(PluginState.TYPE_ATTRIBUTION + ":{\"trackerToken\":\"abc123\"}");
+            assertEquals(expected, target.records);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void replaysRecordedCallAndCallbackIntoThePlugin() throws Exception {
+        PluginHarness recording = new PluginHarness();
+        PluginHarness replaying = new PluginHarness();
+        try {
+            String path = (String) recording.call("startBridgeTrace");
+            recording.call("setEventTrackingSuccessListener", new JavaFunction() {
+                @Override
+                public int invoke(LuaState L) {
+                    return 0;
+                }
+            });
+            recording.create("2fm9gkqubvpc");
+            recording.call("trackEvent", PluginHarness.table("eventToken", "abc123"));
+            AdjustEventSuccess eventSuccess = new AdjustEventSuccess();
+            eventSuccess.message = "Event tracked";
+            eventSuccess.eventToken = "abc123";
+            recording.sdkCallbacks.onFinishedEventTrackingSucceeded(eventSuccess);
+            recording.call("stopBridgeTrace");
+
+            PluginReplayTarget target = new PluginReplayTarget(replaying.loader, replaying.L, replaying.sdkCallbacks);
+            new BridgeTraceReplayer(target, 0.0).replay(new FileInputStream(path));
+            replaying.runFrame();
+
+            assertEquals(1, replaying.sdk.getCalls("onCreate"));
+            assertEquals(1, replaying.sdk.getCalls("trackEvent"));
+            assertArrayEquals(new long[] { 1, 1, 0, 0 }, replaying.eventStats.get("abc123"));
+            assertEquals(1, target.getListenerCalls());
+            assertEquals(0, target.getSkippedCalls());
+        } finally {
+            recording.close();
+            replaying.close();
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws Exception {
+        try {
+            new BridgeTraceReplayer(new RecordingTarget(), 0.0).replay(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5 }));
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static final class RecordingTarget implements BridgeTraceReplayer.Target {
+        final List<String> records = new ArrayList<String>();
+
+        @Override
+        public void onCall(String function, Object[] args) {
+            records.add(function + "/" + args.length);
+        }
+
+        @Override
+        public void onCallback(int listenerType, String message) {
+            records.add(listenerType + ":" + message);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+//
+//  EarlyStartTest.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.app.Application;
+
+import com.ansca.corona.CoronaRuntime;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EarlyStartTest {
+    private static final String CONFIG = "{\"appToken\":\"2fm9gkqubvpc\",\"environment\":\"sandbox\"}";
+
+    private final List<PluginHarness> harnesses = new ArrayList<PluginHarness>();
+
+    @After
+    public void tearDown() {
+        for (PluginHarness harness : harnesses) {
+            harness.close();
+        }
+    }
+
+    @Test
+    public void requestReturnsBeforeTheConfigurationIsRead() throws Exception {
+        PluginHarness harness = harness();
+        CountDownLatch gate = new CountDownLatch(1);
+
+        harness.earlyStart.request(harness.context, config(CONFIG, gate, 0));
+
+        assertEquals(0, harness.sdk.getCalls("onCreate"));
+        assertFalse(harness.earlyStart.isStarted());
+        assertEquals(1, harness.context.getLifecycleCallbacks().size());
+
+        gate.countDown();
+        assertTrue(harness.awaitSdk());
+        assertEquals(1, harness.sdk.getCalls("onCreate"));
+        assertTrue(harness.earlyStart.isStarted());
+    }
+
+    @Test
+    public void lifecycleCallbacksForwardUntilThePluginTakesOver() throws Exception {
+        PluginHarness harness = harness();
+        harness.earlyStart.request(harness.context, config(CONFIG, null, 0));
+        Application.ActivityLifecycleCallbacks callbacks = harness.context.getLifecycleCallbacks().get(0);
+        harness.context.resumeActivity();
+        assertTrue(harness.awaitSdk());
+
+        harness.require();
+
+        assertTrue(harness.context.getLifecycleCallbacks().isEmpty());
+        assertFalse(harness.earlyStart.isFollowingActivities());
+        callbacks.onActivityPaused(null);
+        harness.loader.onSuspended(CoronaRuntime.of(harness.L));
+        harness.loader.onResumed(CoronaRuntime.of(harness.L));
+        assertTrue(harness.awaitSdk());
+
+        // The unregistered callbacks no longer forward; the plugin reports the runtime's pause and resume
+        assertEquals(Arrays.asList("onCreate", "onResume", "onPause", "onResume"), harness.sdk.getCallOrder());
+    }
+
+    @Test
+    public void pluginReportsTheResumeTheCallbacksHaveNotSeen() throws Exception {
+        PluginHarness harness = harness();
+        harness.earlyStart.request(harness.context, config(CONFIG, null, 0));
+        assertTrue(harness.awaitSdk());
+
+        harness.require();
+        assertTrue(harness.awaitSdk());
+
+        assertEquals(Arrays.asList("onCreate", "onResume"), harness.sdk.getCallOrder());
+    }
+
+    @Test
+    public void createAttachesToTheEarlyStartedSdk() throws Exception {
+        PluginHarness harness = harness();
+        harness.earlyStart.request(harness.context, config(CONFIG, null, 0));
+        harness.context.resumeActivity();
+        assertTrue(harness.awaitSdk());
+        harness.require();
+
+        harness.create("2fm9gkqubvpc");
+        assertTrue(harness.awaitSdk());
+
+        assertEquals(1, harness.sdk.getCalls("onCreate"));
+        assertEquals(1, harness.sdk.getCalls("onResume"));
+    }
+
+    @Test
+    public void createAttachesWhenRequiredWhileTheEarlyStartRuns() throws Exception {
+        PluginHarness harness = harness();
+        CountDownLatch gate = new CountDownLatch(1);
+        harness.earlyStart.request(harness.context, config(CONFIG, gate, 0));
+        harness.context.resumeActivity();
+
+        harness.require();
+        harness.create("2fm9gkqubvpc", "shouldLaunchDeeplink", false);
+        assertTrue(harness.earlyStart.isFollowingActivities());
+        gate.countDown();
+        assertTrue(harness.awaitSdk());
+
+        assertEquals(Arrays.asList("onCreate", "onResume"), harness.sdk.getCallOrder());
+        assertTrue(harness.context.getLifecycleCallbacks().isEmpty());
+        assertFalse(harness.loader.state().shouldLaunchDeeplink);
+    }
+
+    @Test
+    public void createStartsTheSdkWhenTheConfigurationIsMissing() throws Exception {
+        PluginHarness harness = harness();
+        harness.earlyStart.request(harness.context, config(null, null, 0));
+        harness.context.resumeActivity();
+        assertTrue(harness.awaitSdk());
+
+        assertTrue(harness.context.getLifecycleCallbacks().isEmpty());
+        assertFalse(harness.earlyStart.isStarted());
+
+        harness.require();
+        harness.create("2fm9gkqubvpc");
+        assertTrue(harness.awaitSdk());
+
+        assertEquals(Arrays.asList("onCreate", "onResume"), harness.sdk.getCallOrder());
+    }
+
+    @Test
+    public void benchmarkStartupTimeline() throws Exception {
+        // Stands in for opening the asset and parsing a configuration file
+        long readCostNanos = TimeUnit.MILLISECONDS.toNanos(5);
+        long[] syncMain = new long[9];
+        long[] asyncMain = new long[9];
+        long[] syncOnCreate = new long[9];
+        long[] asyncOnCreate = new long[9];
+
+        for (int i = 0; i < syncMain.length; i++) {
+            // Before: the configuration was read on the main thread, then the start was queued
+            PluginHarness sync = harness();
+            long start = System.nanoTime();
+            JSONObject json = config(CONFIG, null, readCostNanos).read();
+            sync.earlyStart.request(sync.context, preRead(json));
+            syncMain[i] = System.nanoTime() - start;
+            assertTrue(sync.awaitSdk());
+            syncOnCreate[i] = sync.sdk.getOnCreateNanos() - start;
+
+            // Now: the SDK thread reads the configuration
+            PluginHarness async = harness();
+            start = System.nanoTime();
+            async.earlyStart.request(async.context, config(CONFIG, null, readCostNanos));
+            asyncMain[i] = System.nanoTime() - start;
+            assertTrue(async.awaitSdk());
+            asyncOnCreate[i] = async.sdk.getOnCreateNanos() - start;
+        }
+
+        Benchmark.report("Application.onCreate() on the main thread", "config read on main thread", median(syncMain));
+        Benchmark.report("Application.onCreate() on the main thread", "config read on SDK thread", median(asyncMain));
+        Benchmark.report("Time to Adjust.onCreate()", "config read on main thread", median(syncOnCreate));
+        Benchmark.report("Time to Adjust.onCreate()", "config read on SDK thread", median(asyncOnCreate));
+        assertTrue(median(asyncMain) < median(syncMain));
+    }
+
+    private PluginHarness harness() throws Exception {
+        PluginHarness harness = new PluginHarness(new FakeAdjustSdk(), false);
+        harnesses.add(harness);
+        return harness;
+    }
+
+    // A configuration source returning the given JSON, null for a missing file, after the gate opens and the
+    // read cost is spent
+    private static EarlyStart.ConfigSource config(final String json, final CountDownLatch gate,
+                                                  final long readCostNanos) {
+        return new EarlyStart.ConfigSource() {
+            @Override
+            public JSONObject read() {
+                if (gate != null) {
+                    try {
+                        gate.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                if (readCostNanos > 0) {
+                    long end = System.nanoTime() + readCostNanos;
+                    while (System.nanoTime() < end) {
+                        LockSupport.parkNanos(end - System.nanoTime());
+                    }
+                }
+
+                try {
+                    return json != null ? new JSONObject(json) : null;
+                } catch (JSONException e) {
+                    return null;
+                }
+            }
+        };
+    }
+
+    private static EarlyStart.ConfigSource preRead(final JSONObject json) {
+        return new EarlyStart.ConfigSource() {
+            @Override
+            public JSONObject read() {
+                return json;
+            }
+        };
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,92 @@
+//
+//  EventSchedulerTest.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import com.adjust.sdk.AdjustEvent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventSchedulerTest {
+    private final List<AdjustEvent> forwarded = new ArrayList<AdjustEvent>();
+    private ScheduledThreadPoolExecutor scheduler;
+    private EventScheduler eventScheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new ScheduledThreadPoolExecutor(1);
+        eventScheduler = new EventScheduler(new EventScheduler.EventSink() {
+            @Override
+            public void trackEvent(AdjustEvent event) {
+                forwarded.add(event);
+            }
+        }, scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void forwardsNothingBeforeStart() {
+        AdjustEvent purchase = new AdjustEvent("abc123");
+        AdjustEvent levelUp = new AdjustEvent("def456");
+        AdjustEvent tap = new AdjustEvent("ghi789");
+
+        eventScheduler.submit(purchase, true, false);
+        eventScheduler.submit(levelUp, true, true);
+        eventScheduler.submit(tap, false, true);
+        assertTrue(forwarded.isEmpty());
+
+        eventScheduler.start();
+
+        // The low priority event waits for the next drain
+        List<AdjustEvent> expected = new ArrayList<AdjustEvent>();
+        expected.add(purchase);
+        expected.add(levelUp);
+        assertEquals(expected, forwarded);
+        assertEquals(2, eventScheduler.getHighPriorityForwarded());
+        assertEquals(1, eventScheduler.getLowPriorityQueued());
+    }
+
+    @Test
+    public void forwardsHighPriorityEventsImmediatelyOnceStarted() {
+        eventScheduler.start();
+        AdjustEvent event = new AdjustEvent("abc123");
+
+        eventScheduler.submit(event, true, true);
+
+        assertEquals(1, forwarded.size());
+        assertEquals(event, forwarded.get(0));
+    }
+
+    @Test
+    public void startKeepsHeldEventsWhileHolding() {
+        AdjustEvent purchase = new AdjustEvent("abc123");
+        AdjustEvent levelUp = new AdjustEvent("def456");
+
+        eventScheduler.setHolding(true);
+        eventScheduler.submit(purchase, true, false);
+        eventScheduler.submit(levelUp, true, true);
+        eventScheduler.start();
+
+        assertEquals(1, forwarded.size());
+        assertEquals(purchase, forwarded.get(0));
+        assertEquals(1, eventScheduler.getHeldQueued());
+    }
+}
@@ -0,0 +1,138 @@
+//
+//  EventStatsTest.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventStatsTest {
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("event-stats", ".bin");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void countsPerToken() {
+        EventStats stats = new EventStats();
+
+        stats.onTracked("abc123");
+        stats.onTracked("abc123");
+        stats.onSucceeded("abc123");
+        stats.onFailed("abc123", true);
+        stats.onFailed("def456", false);
+        stats.onTracked(null);
+
+        assertArrayEquals(new long[] { 2, 1, 0, 1 }, stats.get("abc123"));
+        assertArrayEquals(new long[] { 0, 0, 1, 0 }, stats.get("def456"));
+        assertArrayEquals(new long[] { 0, 0, 0, 0 }, stats.get("ghi789"));
+    }
+
+    @Test
+    public void countsManyTokens() {
+        EventStats stats = new EventStats();
+
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j <= i; j++) {
+                stats.onTracked("token" + i);
+            }
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(new long[] { i + 1, 0, 0, 0 }, stats.get("token" + i));
+        }
+    }
+
+    @Test
+    public void persistedCountsAreAddedToNewOnes() {
+        EventStats stats = new EventStats();
+        stats.setFile(file);
+        stats.onTracked("abc123");
+        stats.onSucceeded("abc123");
+        stats.onFailed("def456", true);
+        stats.persist();
+
+        EventStats next = new EventStats();
+        next.setFile(file);
+        next.onTracked("abc123");
+
+        assertArrayEquals(new long[] { 2, 1, 0, 0 }, next.get("abc123"));
+        assertArrayEquals(new long[] { 0, 0, 0, 1 }, next.get("def456"));
+    }
+
+    @Test
+    public void ignoresFileOfAnotherVersion() throws IOException {
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+        output.writeInt(99);
+        output.writeInt(1);
+        output.writeUTF("abc123");
+        for (int counter = 0; counter < EventStats.COUNTER_COUNT; counter++) {
+            output.writeLong(5);
+        }
+        output.close();
+
+        EventStats stats = new EventStats();
+        stats.setFile(file);
+
+        assertArrayEquals(new long[] { 0, 0, 0, 0 }, stats.get("abc123"));
+    }
+
+    @Test
+    public void ignoresTruncatedFileAsAWhole() throws IOException {
+        EventStats stats = new EventStats();
+        stats.setFile(file);
+        stats.onTracked("abc123");
+        stats.onTracked("def456");
+        stats.persist();
+
+        // Cut into the counters of the second token
+        RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+        truncated.setLength(truncated.length() - 4);
+        truncated.close();
+
+        EventStats next = new EventStats();
+        next.setFile(file);
+        next.onTracked("abc123");
+
+        assertArrayEquals(new long[] { 1, 0, 0, 0 }, next.get("abc123"));
+        assertArrayEquals(new long[] { 0, 0, 0, 0 }, next.get("def456"));
+    }
+
+    @Test
+    public void ignoresFileWithInvalidTokenCount() throws IOException {
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+        output.writeInt(1);
+        output.writeInt(Integer.MAX_VALUE);
+        output.writeUTF("abc123");
+        output.close();
+
+        EventStats stats = new EventStats();
+        stats.setFile(file);
+
+        assertArrayEquals(new long[] { 0, 0, 0, 0 }, stats.get("abc123"));
+    }
+}
@@ -0,0 +1,149 @@
+//
+//  EventTablePoolTest.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import com.adjust.sdk.AdjustSessionSuccess;
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EventTablePoolTest {
+    private static final int BURST = 1000;
+
+    @Test
+    public void releasedTableIsRefilledInPlace() {
+        LuaState L = new LuaState();
+        EventTablePool pool = new EventTablePool();
+
+        int ref = pool.push(L, "adjust_sessionTrackingSuccess");
+        Object table = L.getValue(-1);
+        L.pushString("Session tracked");
+        L.setField(-2, "message");
+        L.pop(1);
+        pool.release(L, ref);
+        long tablesCreated = L.getTablesCreated();
+
+        assertEquals(ref, pool.push(L, "adjust_sessionTrackingSuccess"));
+        assertSame(table, L.getValue(-1));
+        assertEquals(tablesCreated, L.getTablesCreated());
+
+        // The name stays, the previous message is there until the next delivery overwrites it
+        L.getField(-1, "name");
+        assertEquals("adjust_sessionTrackingSuccess", L.toString(-1));
+        L.getField(-2, "message");
+        assertEquals("Session tracked", L.toString(-1));
+    }
+
+    @Test
+    public void keepsAtMostTwoIdleTablesPerName() {
+        LuaState L = new LuaState();
+        EventTablePool pool = new EventTablePool();
+
+        int[] refs = new int[3];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = pool.push(L, "adjust_eventTrackingSuccess");
+        }
+        L.setTop(0);
+        int other = pool.push(L, "adjust_attribution");
+        L.setTop(0);
+        pool.release(L, other);
+        assertEquals(4, L.getRefCount());
+
+        for (int ref : refs) {
+            pool.release(L, ref);
+        }
+
+        // The third table was dropped from the registry; the other name keeps its own
+        assertEquals(3, L.getRefCount());
+        long tablesCreated = L.getTablesCreated();
+        for (int i = 0; i < refs.length; i++) {
+            pool.push(L, "adjust_eventTrackingSuccess");
+        }
+        assertEquals(tablesCreated + 1, L.getTablesCreated());
+    }
+
+    @Test
+    public void clearReleasesEveryReference() {
+        LuaState L = new LuaState();
+        EventTablePool pool = new EventTablePool();
+
+        pool.release(L, pool.push(L, "adjust_attribution"));
+        pool.push(L, "adjust_attribution");
+        pool.push(L, "adjust_attribution");
+        L.setTop(0);
+        assertEquals(2, L.getRefCount());
+
+        pool.clear(L);
+
+        assertEquals(0, L.getRefCount());
+    }
+
+    @Test
+    public void newRuntimeGetsNewTables() {
+        LuaState first = new LuaState();
+        LuaState second = new LuaState();
+        EventTablePool pool = new EventTablePool();
+
+        int ref = pool.push(first, "adjust_attribution");
+        pool.release(first, ref);
+        pool.push(second, "adjust_attribution");
+
+        assertEquals(1, second.getTablesCreated());
+        assertEquals(1, second.getRefCount());
+    }
+
+    @Test
+    public void burstOfCallbacksReusesEventTables() throws Exception {
+        long unpooled = burstTablesCreated(false);
+        long pooled = burstTablesCreated(true);
+
+        System.out.println("1000 callback burst: " + unpooled + " event tables created unpooled, "
+                + pooled + " pooled");
+        assertEquals(BURST, unpooled);
+        assertTrue(pooled <= 2);
+    }
+
+    // Tables the Lua GC would have to collect after a burst of session callbacks delivered to one listener
+    private static long burstTablesCreated(boolean poolEventTables) throws Exception {
+        PluginHarness harness = new PluginHarness();
+        try {
+            final AtomicInteger delivered = new AtomicInteger();
+            harness.call("setSessionTrackingSuccessListener", new JavaFunction() {
+                @Override
+                public int invoke(LuaState L) {
+                    delivered.incrementAndGet();
+                    return 0;
+                }
+            });
+            harness.create("2fm9gkqubvpc", "poolEventTables", poolEventTables);
+            harness.runAllFrames();
+
+            long tablesCreated = harness.L.getTablesCreated();
+            for (int i = 0; i < BURST; i++) {
+                AdjustSessionSuccess sessionSuccess = new AdjustSessionSuccess();
+                sessionSuccess.message = "Session tracked";
+                sessionSuccess.adid = "adid" + i;
+                harness.sdkCallbacks.onFinishedSessionTrackingSucceeded(sessionSuccess);
+            }
+            harness.runAllFrames();
+
+            assertEquals(BURST, delivered.get());
+            return harness.L.getTablesCreated() - tablesCreated;
+        } finally {
+            harness.close();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+//
+//  FakeAdjustSdk.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.adjust.sdk.AdjustAttribution;
+import com.adjust.sdk.AdjustConfig;
+import com.adjust.sdk.AdjustEvent;
+import com.adjust.sdk.OnDeviceIdsRead;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records the calls the plugin makes into the SDK. Each call can be given a cost, spent on the calling
+ * thread, to stand in for the work the real SDK does there.
+ */
+final class FakeAdjustSdk implements AdjustSdk {
+    private final long callCostNanos;
+    private final Map<String, Integer> calls = new HashMap<String, Integer>();
+    private final List<AdjustEvent> trackedEvents = new ArrayList<AdjustEvent>();
+    private final List<String> callOrder = new ArrayList<String>();
+    private volatile long onCreateNanos = 0;
+    private volatile boolean enabled = true;
+
+    FakeAdjustSdk() {
+        this(0);
+    }
+
+    FakeAdjustSdk(long callCostNanos) {
+        this.callCostNanos = callCostNanos;
+    }
+
+    /**
+     * Returns how often the SDK method of the given name was called.
+     */
+    synchronized int getCalls(String method) {
+        Integer count = calls.get(method);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Returns the names of the SDK methods called, in call order.
+     */
+    synchronized List<String> getCallOrder() {
+        return new ArrayList<String>(callOrder);
+    }
+
+    synchronized Map<String, Integer> getCallCounts() {
+        return new HashMap<String, Integer>(calls);
+    }
+
+    synchronized List<AdjustEvent> getTrackedEvents() {
+        return new ArrayList<AdjustEvent>(trackedEvents);
+    }
+
+    /**
+     * Returns System.nanoTime() of the onCreate() call, 0 before it.
+     */
+    long getOnCreateNanos() {
+        return onCreateNanos;
+    }
+
+    @Override
+    public void onCreate(AdjustConfig adjustConfig) {
+        record("onCreate");
+        onCreateNanos = System.nanoTime();
+    }
+
+    @Override
+    public void onResume() {
+        record("onResume");
+    }
+
+    @Override
+    public void onPause() {
+        record("onPause");
+    }
+
+    @Override
+    public void trackEvent(AdjustEvent event) {
+        synchronized (this) {
+            trackedEvents.add(event);
+        }
+        record("trackEvent");
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        record("setEnabled");
+    }
+
+    @Override
+    public boolean isEnabled() {
+        record("isEnabled");
+        return enabled;
+    }
+
+    @Override
+    public void setOfflineMode(boolean offlineMode) {
+        record("setOfflineMode");
+    }
+
+    @Override
+    public void setPushToken(String pushToken) {
+        record("setPushToken");
+    }
+
+    @Override
+    public void setReferrer(String referrer, Context context) {
+        record("setReferrer");
+    }
+
+    @Override
+    public void appWillOpenUrl(Uri uri) {
+        record("appWillOpenUrl");
+    }
+
+    @Override
+    public void sendFirstPackages() {
+        record("sendFirstPackages");
+    }
+
+    @Override
+    public void addSessionCallbackParameter(String key, String value) {
+        record("addSessionCallbackParameter");
+    }
+
+    @Override
+    public void addSessionPartnerParameter(String key, String value) {
+        record("addSessionPartnerParameter");
+    }
+
+    @Override
+    public void removeSessionCallbackParameter(String key) {
+        record("removeSessionCallbackParameter");
+    }
+
+    @Override
+    public void removeSessionPartnerParameter(String key) {
+        record("removeSessionPartnerParameter");
+    }
+
+    @Override
+    public void resetSessionCallbackParameters() {
+        record("resetSessionCallbackParameters");
+    }
+
+    @Override
+    public void resetSessionPartnerParameters() {
+        record("resetSessionPartnerParameters");
+    }
+
+    @Override
+    public String getAdid() {
+        record("getAdid");
+        return null;
+    }
+
+    @Override
+    public AdjustAttribution getAttribution() {
+        record("getAttribution");
+        return null;
+    }
+
+    @Override
+    public void getGoogleAdId(Context context, OnDeviceIdsRead onDeviceIdsRead) {
+        record("getGoogleAdId");
+    }
+
+    private void record(String method) {
+        synchronized (this) {
+            Integer count = calls.get(method);
+            calls.put(method, count == null ? 1 : count + 1);
+            callOrder.add(method);
+        }
+
+        if (callCostNanos > 0) {
+            spend(callCostNanos);
+        }
+    }
+
+    // Blocks the calling thread for the given time, as the SDK's disk and lock work would
+    private static void spend(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            LockSupport.parkNanos(Math.min(nanos, 50000L));
+        }
+    }
+}
@@ -0,0 +1,269 @@
+//
+//  FakeApplication.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Application for JVM tests: a temporary files directory, in-memory shared preferences, and activity
+ * lifecycle callbacks the test triggers itself. System services are unavailable.
+ */
+final class FakeApplication extends Application {
+    static final String PACKAGE_NAME = "com.example.game";
+
+    private final File filesDir;
+    private final Map<String, FakePreferences> preferences = new HashMap<String, FakePreferences>();
+    private final List<ActivityLifecycleCallbacks> lifecycleCallbacks = new ArrayList<ActivityLifecycleCallbacks>();
+
+    FakeApplication() throws IOException {
+        filesDir = File.createTempFile("adjust-plugin", "");
+        if (!filesDir.delete() || !filesDir.mkdir()) {
+            throw new IOException("Failed to create " + filesDir);
+        }
+    }
+
+    /**
+     * Deletes the files directory and what the plugin wrote into it.
+     */
+    void delete() {
+        File[] files = filesDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        filesDir.delete();
+    }
+
+    /**
+     * Returns the registered activity lifecycle callbacks.
+     */
+    synchronized List<ActivityLifecycleCallbacks> getLifecycleCallbacks() {
+        return new ArrayList<ActivityLifecycleCallbacks>(lifecycleCallbacks);
+    }
+
+    /**
+     * Reports an activity resume to the registered callbacks.
+     */
+    void resumeActivity() {
+        for (ActivityLifecycleCallbacks callbacks : getLifecycleCallbacks()) {
+            callbacks.onActivityResumed(null);
+        }
+    }
+
+    /**
+     * Reports an activity pause to the registered callbacks.
+     */
+    void pauseActivity() {
+        for (ActivityLifecycleCallbacks callbacks : getLifecycleCallbacks()) {
+            callbacks.onActivityPaused(null);
+        }
+    }
+
+    @Override
+    public synchronized void registerActivityLifecycleCallbacks(ActivityLifecycleCallbacks callbacks) {
+        lifecycleCallbacks.add(callbacks);
+    }
+
+    @Override
+    public synchronized void unregisterActivityLifecycleCallbacks(ActivityLifecycleCallbacks callbacks) {
+        lifecycleCallbacks.remove(callbacks);
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public String getPackageName() {
+        return PACKAGE_NAME;
+    }
+
+    @Override
+    public File getFilesDir() {
+        return filesDir;
+    }
+
+    @Override
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        FakePreferences shared = preferences.get(name);
+        if (shared == null) {
+            shared = new FakePreferences();
+            preferences.put(name, shared);
+        }
+        return shared;
+    }
+
+    @Override
+    public Object getSystemService(String name) {
+        return null;
+    }
+
+    @Override
+    public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+        return null;
+    }
+
+    @Override
+    public void unregisterReceiver(BroadcastReceiver receiver) {
+    }
+
+    private static final class FakePreferences implements SharedPreferences {
+        private final Map<String, Object> values = new HashMap<String, Object>();
+
+        @Override
+        public synchronized Map<String, ?> getAll() {
+            return new HashMap<String, Object>(values);
+        }
+
+        @Override
+        public String getString(String key, String defaultValue) {
+            return (String) get(key, defaultValue);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, Set<String> defaultValues) {
+            return (Set<String>) get(key, defaultValues);
+        }
+
+        @Override
+        public int getInt(String key, int defaultValue) {
+            return (Integer) get(key, defaultValue);
+        }
+
+        @Override
+        public long getLong(String key, long defaultValue) {
+            return (Long) get(key, defaultValue);
+        }
+
+        @Override
+        public float getFloat(String key, float defaultValue) {
+            return (Float) get(key, defaultValue);
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defaultValue) {
+            return (Boolean) get(key, defaultValue);
+        }
+
+        @Override
+        public synchronized boolean contains(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new FakeEditor();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        private synchronized Object get(String key, Object defaultValue) {
+            return values.containsKey(key) ? values.get(key) : defaultValue;
+        }
+
+        private final class FakeEditor implements Editor {
+            // A null value removes the key
+            private final Map<String, Object> changes = new HashMap<String, Object>();
+            private boolean clear = false;
+
+            @Override
+            public Editor putString(String key, String value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                changes.put(key, values != null ? new HashSet<String>(values) : null);
+                return this;
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor remove(String key) {
+                changes.put(key, null);
+                return this;
+            }
+
+            @Override
+            public Editor clear() {
+                clear = true;
+                return this;
+            }
+
+            @Override
+            public void apply() {
+                commit();
+            }
+
+            @Override
+            public boolean commit() {
+                synchronized (FakePreferences.this) {
+                    if (clear) {
+                        values.clear();
+                    }
+                    for (Map.Entry<String, Object> change : changes.entrySet()) {
+                        if (change.getValue() == null) {
+                            values.remove(change.getKey());
+                        } else {
+                            values.put(change.getKey(), change.getValue());
+                        }
+                    }
+                }
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+//
+//  JsonResponseTest.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import com.adjust.sdk.AdjustEventSuccess;
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JsonResponseTest {
+    private final List<String> responses = new ArrayList<String>();
+    private final List<String> messages = new ArrayList<String>();
+    private PluginHarness harness;
+
+    @Before
+    public void setUp() throws Exception {
+        harness = new PluginHarness();
+    }
+
+    @After
+    public void tearDown() {
+        harness.close();
+    }
+
+    @Test
+    public void lazyResponseIsOnlyConvertedWhenLuaReadsIt() throws Exception {
+        harness.call("setEventTrackingSuccessListener", listener(false));
+        harness.create("2fm9gkqubvpc", "lazyJsonResponse", true);
+        CountingJSONObject response = response(10);
+
+        harness.sdkCallbacks.onFinishedEventTrackingSucceeded(eventSuccess(response));
+        harness.runFrame();
+
+        assertEquals(1, messages.size());
+        assertFalse(messages.get(0).contains("jsonResponse"));
+        assertEquals(0, response.toStringCalls);
+    }
+
+    @Test
+    public void lazyResponseIsConvertedOnceForRepeatedReads() throws Exception {
+        harness.call("setEventTrackingSuccessListener", listener(true));
+        harness.create("2fm9gkqubvpc", "lazyJsonResponse", true);
+        CountingJSONObject response = response(10);
+
+        harness.sdkCallbacks.onFinishedEventTrackingSucceeded(eventSuccess(response));
+        harness.runFrame();
+
+        assertEquals(2, responses.size());
+        assertEquals(response.toString(), responses.get(0));
+        assertEquals(responses.get(0), responses.get(1));
+        // Once by the accessor, once by the comparison above
+        assertEquals(2, response.toStringCalls);
+    }
+
+    @Test
+    public void eagerResponseIsConvertedBeforeDelivery() throws Exception {
+        harness.call("setEventTrackingSuccessListener", listener(false));
+        harness.create("2fm9gkqubvpc");
+        CountingJSONObject response = response(10);
+
+        harness.sdkCallbacks.onFinishedEventTrackingSucceeded(eventSuccess(response));
+        assertEquals(1, response.toStringCalls);
+        harness.runFrame();
+
+        assertEquals(1, messages.size());
+        assertTrue(messages.get(0).contains("jsonResponse"));
+    }
+
+    @Test
+    public void benchmarkEagerAgainstLazyResponseOnLargeObject() throws Exception {
+        final CountingJSONObject response = response(5000);
+        long eager = deliveryNanos(false, response);
+
+        harness.close();
+        harness = new PluginHarness();
+        long lazy = deliveryNanos(true, response);
+
+        Benchmark.report("jsonResponse", "eager toString()", eager);
+        Benchmark.report("jsonResponse", "lazy accessor, unread", lazy);
+        assertTrue(lazy < eager);
+    }
+
+    // Median time of delivering a callback with the response to a listener that does not read it
+    private long deliveryNanos(boolean lazy, final JSONObject response) {
+        harness.call("setEventTrackingSuccessListener", listener(false));
+        harness.create("2fm9gkqubvpc", "lazyJsonResponse", lazy);
+
+        return Benchmark.median(15, new Runnable() {
+            @Override
+            public void run() {
+                harness.sdkCallbacks.onFinishedEventTrackingSucceeded(eventSuccess(response));
+                harness.runFrame();
+            }
+        });
+    }
+
+    // A listener recording the message, and the response read twice through event.getJsonResponse() if asked to
+    private JavaFunction listener(final boolean readResponse) {
+        return new JavaFunction() {
+            @Override
+            public int invoke(LuaState L) {
+                L.getField(1, "message");
+                messages.add(L.toString(-1));
+                L.pop(1);
+
+                if (readResponse) {
+                    for (int i = 0; i < 2; i++) {
+                        L.getField(1, "getJsonResponse");
+                        L.call(0, 1);
+                        responses.add(L.toString(-1));
+                        L.pop(1);
+                    }
+                }
+                return 0;
+            }
+        };
+    }
+
+    private static AdjustEventSuccess eventSuccess(JSONObject response) {
+        AdjustEventSuccess eventSuccess = new AdjustEventSuccess();
+        eventSuccess.message = "Event tracked";
+        eventSuccess.eventToken = "abc123";
+        eventSuccess.jsonResponse = response;
+        return eventSuccess;
+    }
+
+    // A server response of the given number of entries, each a small object
+    private static CountingJSONObject response(int entries) throws JSONException {
+        CountingJSONObject response = new CountingJSONObject();
+        for (int i = 0; i < entries; i++) {
+            JSONObject entry = new JSONObject();
+            entry.put("id", i);
+            entry.put("name", "entry " + i);
+            entry.put("enabled", i % 2 == 0);
+            response.put("key" + i, entry);
+        }
+        response.toStringCalls = 0;
+        return response;
+    }
+
+    private static final class CountingJSONObject extends JSONObject {
+        int toStringCalls = 0;
+
+        @Override
+        public String toString() {
+            toStringCalls++;
+            return super.toString();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+//
+//  NativeListenersTest.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import com.adjust.sdk.AdjustAttribution;
+import com.adjust.sdk.AdjustEventSuccess;
+import com.adjust.sdk.AdjustSessionFailure;
+import com.adjust.sdk.AdjustSessionSuccess;
+import com.adjust.sdk.OnAttributionChangedListener;
+import com.adjust.sdk.OnEventTrackingSucceededListener;
+import com.adjust.sdk.OnSessionTrackingFailedListener;
+import com.adjust.sdk.OnSessionTrackingSucceededListener;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NativeListenersTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final NativeListeners nativeListeners = new NativeListeners();
+    private final List<Object> received = Collections.synchronizedList(new ArrayList<Object>());
+
+    @Test
+    public void deliversOnBackgroundThreadInNotificationOrder() throws InterruptedException {
+        final Thread caller = Thread.currentThread();
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        nativeListeners.addAttributionChangedListener(new OnAttributionChangedListener() {
+            @Override
+            public void onAttributionChanged(AdjustAttribution attribution) {
+                threads.add(Thread.currentThread());
+                received.add(attribution);
+            }
+        });
+
+        List<AdjustAttribution> sent = new ArrayList<AdjustAttribution>();
+        for (int i = 0; i < 100; i++) {
+            AdjustAttribution attribution = new AdjustAttribution();
+            attribution.trackerToken = "tracker" + i;
+            sent.add(attribution);
+            nativeListeners.onAttributionChanged(attribution);
+        }
+        awaitDelivered();
+
+        assertEquals(sent, received);
+        for (Thread thread : threads) {
+            assertNotSame(caller, thread);
+            assertEquals("adjust-native-callbacks", thread.getName());
+        }
+    }
+
+    @Test
+    public void deliversEachCallbackTypeOnlyToItsOwnListeners() throws InterruptedException {
+        // Registered for attribution changes only, though it implements both interfaces
+        nativeListeners.addAttributionChangedListener(new AttributionAndEventListener());
+
+        nativeListeners.onEventTrackingSucceeded(new AdjustEventSuccess());
+        AdjustAttribution attribution = new AdjustAttribution();
+        nativeListeners.onAttributionChanged(attribution);
+        awaitDelivered();
+
+        assertEquals(Collections.<Object>singletonList(attribution), received);
+    }
+
+    @Test
+    public void stopsDeliveringAfterRemoval() throws InterruptedException {
+        OnSessionTrackingFailedListener listener = new OnSessionTrackingFailedListener() {
+            @Override
+            public void onFinishedSessionTrackingFailed(AdjustSessionFailure failure) {
+                received.add(failure);
+            }
+        };
+        nativeListeners.addSessionTrackingFailedListener(listener);
+        AdjustSessionFailure first = new AdjustSessionFailure();
+        nativeListeners.onSessionTrackingFailed(first);
+        awaitDelivered();
+
+        nativeListeners.removeSessionTrackingFailedListener(listener);
+        nativeListeners.onSessionTrackingFailed(new AdjustSessionFailure());
+        awaitDelivered();
+
+        assertEquals(Collections.<Object>singletonList(first), received);
+    }
+
+    @Test
+    public void failingListenerDoesNotStopTheOthers() throws InterruptedException {
+        nativeListeners.addEventTrackingSucceededListener(new OnEventTrackingSucceededListener() {
+            @Override
+            public void onFinishedEventTrackingSucceeded(AdjustEventSuccess success) {
+                throw new IllegalStateException("listener failure");
+            }
+        });
+        nativeListeners.addEventTrackingSucceededListener(new OnEventTrackingSucceededListener() {
+            @Override
+            public void onFinishedEventTrackingSucceeded(AdjustEventSuccess success) {
+                received.add(success);
+            }
+        });
+
+        AdjustEventSuccess first = new AdjustEventSuccess();
+        AdjustEventSuccess second = new AdjustEventSuccess();
+        nativeListeners.onEventTrackingSucceeded(first);
+        nativeListeners.onEventTrackingSucceeded(second);
+        awaitDelivered();
+
+        List<Object> expected = new ArrayList<Object>();
+        expected.add(first);
+        expected.add(second);
+        assertEquals(expected, received);
+    }
+
+    @Test
+    public void registeringTwiceDeliversOnce() throws InterruptedException {
+        OnAttributionChangedListener listener = new AttributionAndEventListener();
+        nativeListeners.addAttributionChangedListener(listener);
+        nativeListeners.addAttributionChangedListener(listener);
+
+        nativeListeners.onAttributionChanged(new AdjustAttribution());
+        awaitDelivered();
+
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    public void rejectsNullListener() {
+        try {
+            nativeListeners.addDeeplinkResponseListener(null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void receivesSdkCallbacksBeforeLoaderIsAttached() throws InterruptedException {
+        nativeListeners.addAttributionChangedListener(new AttributionAndEventListener());
+        SdkCallbacks sdkCallbacks = new SdkCallbacks(new EventStats(), nativeListeners);
+
+        AdjustAttribution attribution = new AdjustAttribution();
+        sdkCallbacks.onAttributionChanged(attribution);
+        awaitDelivered();
+
+        assertEquals(Collections.<Object>singletonList(attribution), received);
+    }
+
+    /**
+     * Waits until the background thread has delivered everything notified so far, by queueing a
+     * notification of a type no test listens to behind it.
+     */
+    private void awaitDelivered() throws InterruptedException {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final AdjustSessionSuccess marker = new AdjustSessionSuccess();
+        OnSessionTrackingSucceededListener sentinel = new OnSessionTrackingSucceededListener() {
+            @Override
+            public void onFinishedSessionTrackingSucceeded(AdjustSessionSuccess success) {
+                if (success == marker) {
+                    delivered.countDown();
+                }
+            }
+        };
+        nativeListeners.addSessionTrackingSucceededListener(sentinel);
+        nativeListeners.onSessionTrackingSucceeded(marker);
+
+        assertTrue(delivered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        nativeListeners.removeSessionTrackingSucceededListener(sentinel);
+    }
+
+    private final class AttributionAndEventListener
+            implements OnAttributionChangedListener, OnEventTrackingSucceededListener {
+        @Override
+        public void onAttributionChanged(AdjustAttribution attribution) {
+            received.add(attribution);
+        }
+
+        @Override
+        public void onFinishedEventTrackingSucceeded(AdjustEventSuccess success) {
+            received.add(success);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+//
+//  PluginHarness.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import com.ansca.corona.CoronaRuntime;
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The plugin as required from Lua, running against a {@link FakeAdjustSdk} and the test LuaState.
+ * <p>
+ * Functions are called like Lua calls them, through the registered library table. Callbacks queued for
+ * Lua run when the test runs a frame.
+ */
+final class PluginHarness {
+    static final String LIBRARY_NAME = "plugin.adjust";
+
+    final FakeApplication context;
+    final FakeAdjustSdk sdk;
+    final SdkExecutor sdkExecutor = new SdkExecutor();
+    final EventStats eventStats = new EventStats();
+    final NativeListeners nativeListeners = new NativeListeners();
+    final SdkCallbacks sdkCallbacks = new SdkCallbacks(eventStats, nativeListeners);
+    final ProcessGuard processGuard;
+    final EarlyStart earlyStart;
+    final LuaState L = new LuaState();
+    LuaLoader loader;
+
+    PluginHarness() throws IOException {
+        this(new FakeAdjustSdk());
+    }
+
+    PluginHarness(FakeAdjustSdk sdk) throws IOException {
+        this(sdk, true);
+    }
+
+    /**
+     * Creates the harness, and requires the plugin if asked to. Otherwise the test can request an early
+     * start first and call {@link #require()} later.
+     */
+    PluginHarness(FakeAdjustSdk sdk, boolean require) throws IOException {
+        this.sdk = sdk;
+        context = new FakeApplication();
+        processGuard = new ProcessGuard(context, FakeApplication.PACKAGE_NAME);
+        earlyStart = new EarlyStart(sdk, sdkExecutor, sdkCallbacks, eventStats, new GoogleAdIdPrefetcher(),
+                processGuard);
+        if (require) {
+            require();
+        }
+    }
+
+    /**
+     * Creates the LuaLoader and runs require("plugin.adjust").
+     */
+    void require() {
+        loader = new LuaLoader(context, processGuard, sdk, sdkExecutor, sdkCallbacks, eventStats, earlyStart);
+
+        L.pushString(LIBRARY_NAME);
+        loader.invoke(L);
+        L.setTop(0);
+    }
+
+    /**
+     * Returns a Lua table of the given keys and values.
+     */
+    static Map<String, Object> table(Object... keysAndValues) {
+        Map<String, Object> table = new LinkedHashMap<String, Object>();
+        for (int i = 0; i + 1 < keysAndValues.length; i += 2) {
+            table.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return table;
+    }
+
+    /**
+     * Calls the library function of the given name and returns its first result, null if it returned none.
+     */
+    Object call(String function, Object... args) {
+        L.setTop(0);
+        L.getGlobal(LIBRARY_NAME);
+        L.getField(-1, function);
+        L.remove(-2);
+        for (Object arg : args) {
+            push(arg);
+        }
+
+        try {
+            L.call(args.length, 1);
+            return L.getValue(-1);
+        } finally {
+            L.setTop(0);
+        }
+    }
+
+    /**
+     * Calls create() with the given app token in the sandbox environment and further options.
+     */
+    void create(String appToken, Object... options) {
+        Map<String, Object> config = table(options);
+        config.put("appToken", appToken);
+        config.put("environment", "sandbox");
+        call("create", config);
+    }
+
+    /**
+     * Runs the runtime tasks queued so far, as the next Corona frame would.
+     */
+    void runFrame() {
+        CoronaRuntime.of(L).runFrame();
+    }
+
+    /**
+     * Runs frames until no runtime task is left.
+     */
+    void runAllFrames() {
+        CoronaRuntime.of(L).runAllFrames();
+    }
+
+    /**
+     * Waits for the calls queued on the ordered SDK thread, if any.
+     */
+    boolean awaitSdk() {
+        return sdkExecutor.await(5000);
+    }
+
+    /**
+     * Releases the Lua references and deletes the plugin's files.
+     */
+    void close() {
+        if (loader != null) {
+            loader.onExiting(CoronaRuntime.of(L));
+        }
+        context.delete();
+    }
+
+    private void push(Object value) {
+        if (value instanceof Map) {
+            L.newTable();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                push(entry.getValue());
+                L.setField(-2, (String) entry.getKey());
+            }
+        } else if (value instanceof JavaFunction) {
+            L.pushJavaFunction((JavaFunction) value);
+        } else if (value instanceof Boolean) {
+            L.pushBoolean((Boolean) value);
+        } else if (value instanceof Number) {
+            L.pushNumber(((Number) value).doubleValue());
+        } else if (value instanceof String) {
+            L.pushString((String) value);
+        } else {
+            L.pushNil();
+        }
+    }
+}
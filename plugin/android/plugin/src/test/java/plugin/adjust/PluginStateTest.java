@@ -0,0 +1,225 @@
+//
+//  PluginStateTest.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import com.ansca.corona.CoronaLua;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PluginStateTest {
+    private static final int TYPE = PluginState.TYPE_EVENT_TRACKING_SUCCESS;
+    private static final ListenerFilter ANY = new ListenerFilter(null, null);
+
+    @Test
+    public void matchReturnsHandlesOfMatchingListeners() {
+        PluginState state = PluginState.INITIAL.withPrimary(TYPE, 10, null);
+        int primary = state.nextHandle() - 1;
+        int filtered = state.nextHandle();
+        state = state.withListener(TYPE, 11, new ListenerFilter(Collections.singleton("abc123"), null), null);
+        state = state.withListener(PluginState.TYPE_ATTRIBUTION, 12, ANY, null);
+
+        assertArrayEquals(new int[] { primary, filtered }, state.match(TYPE, "abc123", false));
+        assertArrayEquals(new int[] { primary }, state.match(TYPE, "def456", false));
+        assertNull(state.match(PluginState.TYPE_SESSION_TRACKING_SUCCESS, null, null));
+        assertEquals(10, state.ref(primary));
+        assertEquals(11, state.ref(filtered));
+    }
+
+    @Test
+    public void reusedReferenceDoesNotTakeOverAMatchedHandle() {
+        PluginState state = PluginState.INITIAL;
+        int removed = state.nextHandle();
+        state = state.withListener(TYPE, 7, ANY, null);
+        int[] matched = state.match(TYPE, null, null);
+
+        // The listener goes away and Lua hands its reference to the next one
+        state = state.withoutListener(removed);
+        int added = state.nextHandle();
+        state = state.withListener(TYPE, 7, ANY, null);
+
+        assertArrayEquals(new int[] { removed }, matched);
+        assertEquals(CoronaLua.REFNIL, state.ref(removed));
+        assertEquals(7, state.ref(added));
+    }
+
+    @Test
+    public void replacedPrimaryListenerGetsANewHandle() {
+        PluginState state = PluginState.INITIAL.withPrimary(TYPE, 3, null);
+        int first = state.match(TYPE, null, null)[0];
+        state = state.withPrimary(TYPE, 3, null);
+        int second = state.match(TYPE, null, null)[0];
+
+        assertTrue(first != second);
+        assertEquals(CoronaLua.REFNIL, state.ref(first));
+        assertEquals(3, state.ref(second));
+
+        state = state.withPrimary(TYPE, CoronaLua.REFNIL, null);
+        assertEquals(CoronaLua.REFNIL, state.primary(TYPE));
+        assertNull(state.match(TYPE, null, null));
+    }
+
+    @Test
+    public void withoutListenersKeepsHandlesCounting() {
+        PluginState state = PluginState.INITIAL.withListener(TYPE, 1, ANY, null);
+        int handle = state.nextHandle() - 1;
+        state = state.withoutListeners();
+
+        assertEquals(CoronaLua.REFNIL, state.ref(handle));
+        assertTrue(state.nextHandle() > handle);
+        assertEquals(0, state.listeners().length);
+    }
+
+    /**
+     * SDK threads match callbacks against the current state while the Lua thread adds and removes listeners
+     * and delivers the matched callbacks. References are reused as soon as they are deleted, like Lua's
+     * registry does. Every delivery must reach the listener it was matched to, or nobody.
+     */
+    @Test
+    public void listenerChurnNeverMisroutesCallbacks() throws InterruptedException {
+        final AtomicReference<PluginState> state = new AtomicReference<PluginState>(PluginState.INITIAL);
+        final Object stateLock = new Object();
+        final ConcurrentLinkedQueue<int[]> deliveries = new ConcurrentLinkedQueue<int[]>();
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicLong matched = new AtomicLong();
+
+        List<Thread> sdkThreads = new ArrayList<Thread>();
+        for (int i = 0; i < 3; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int callback = 0; callback < 20000; callback++) {
+                        // Bounded, so the Lua thread keeps up
+                        while (pending.get() >= 256) {
+                            try {
+                                Thread.sleep(1);
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+
+                        int[] handles = state.get().match(TYPE, "abc123", false);
+                        if (handles != null) {
+                            pending.incrementAndGet();
+                            deliveries.add(handles);
+                            matched.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            sdkThreads.add(thread);
+            thread.start();
+        }
+
+        // The Lua thread: registry slots hold the handle of the listener owning the reference
+        Random random = new Random(42);
+        FakeRegistry registry = new FakeRegistry();
+        List<Integer> live = new ArrayList<Integer>();
+        long delivered = 0;
+        long misrouted = 0;
+
+        while (isAnyAlive(sdkThreads) || !deliveries.isEmpty()) {
+            int action = random.nextInt(4);
+            if (action == 0 || live.isEmpty()) {
+                synchronized (stateLock) {
+                    PluginState current = state.get();
+                    int handle = current.nextHandle();
+                    state.set(current.withListener(TYPE, registry.newRef(handle), ANY, null));
+                    live.add(handle);
+                }
+            } else if (action == 1) {
+                int handle = live.remove(random.nextInt(live.size()));
+                int ref;
+                synchronized (stateLock) {
+                    PluginState current = state.get();
+                    ref = current.listener(handle);
+                    state.set(current.withoutListener(handle));
+                }
+                registry.deleteRef(ref);
+            } else if (action == 2) {
+                int previous;
+                synchronized (stateLock) {
+                    PluginState current = state.get();
+                    previous = current.primary(TYPE);
+                    state.set(current.withPrimary(TYPE, registry.newRef(current.nextHandle()), null));
+                }
+                registry.deleteRef(previous);
+            } else {
+                int[] handles;
+                while ((handles = deliveries.poll()) != null) {
+                    pending.decrementAndGet();
+                    for (int handle : handles) {
+                        int ref = state.get().ref(handle);
+                        if (ref == CoronaLua.REFNIL) {
+                            continue;
+                        }
+                        if (registry.owner(ref) != handle) {
+                            misrouted++;
+                        }
+                        delivered++;
+                    }
+                }
+            }
+        }
+
+        assertEquals(0, misrouted);
+        assertTrue(matched.get() > 0);
+        assertTrue(delivered > 0);
+    }
+
+    private static boolean isAnyAlive(List<Thread> threads) {
+        for (Thread thread : threads) {
+            if (thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hands out the lowest free reference, so deleted references are reused right away.
+     */
+    private static final class FakeRegistry {
+        private final List<Integer> owners = new ArrayList<Integer>();
+
+        int newRef(int owner) {
+            int ref = owners.indexOf(null);
+            if (ref == -1) {
+                owners.add(owner);
+                return owners.size();
+            }
+            owners.set(ref, owner);
+            return ref + 1;
+        }
+
+        void deleteRef(int ref) {
+            if (ref != CoronaLua.REFNIL) {
+                owners.set(ref - 1, null);
+            }
+        }
+
+        int owner(int ref) {
+            Integer owner = owners.get(ref - 1);
+            return owner != null ? owner : -1;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+//
+//  SdkExecutorTest.java
+//  Adjust
+//
+//  Copyright (c) 2018 adjust GmbH. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package plugin.adjust;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SdkExecutorTest {
+    private static final int CALLS = 1000;
+
+    @Test
+    public void runsInlineUntilOrderedModeIsEnabled() {
+        SdkExecutor executor = new SdkExecutor();
+        final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                thread.set(Thread.currentThread());
+            }
+        });
+
+        assertSame(Thread.currentThread(), thread.get());
+        assertTrue(executor.await(0));
+    }
+
+    @Test
+    public void orderedModeRunsCallsInSubmissionOrderOffTheCallingThread() {
+        SdkExecutor executor = new SdkExecutor();
+        executor.enableOrdered();
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+
+        for (int i = 0; i < CALLS; i++) {
+            final int call = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    thread.set(Thread.currentThread());
+                    order.add(call);
+                }
+            });
+        }
+
+        assertTrue(executor.await(5000));
+        assertEquals(CALLS, order.size());
+        for (int i = 0; i < CALLS; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+        assertNotSame(Thread.currentThread(), thread.get());
+    }
+
+    @Test
+    public void awaitDrainsSlowCalls() {
+        SdkExecutor executor = new SdkExecutor();
+        executor.enableOrdered();
+        final AtomicInteger done = new AtomicInteger();
+
+        for (int i = 0; i < 20; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    sleep(2);
+                    done.incrementAndGet();
+                }
+            });
+        }
+
+        assertTrue(executor.await(5000));
+        assertEquals(20, done.get());
+    }
+
+    @Test
+    public void awaitTimesOutBehindABlockedCall() throws Exception {
+        SdkExecutor executor = new SdkExecutor();
+        executor.enableOrdered();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        assertFalse(executor.await(50));
+        release.countDown();
+        assertTrue(executor.await(5000));
+    }
+
+    @Test
+    public void failingCallDoesNotStopTheCallsBehindIt() {
+        SdkExecutor executor = new SdkExecutor();
+        executor.enableOrdered();
+        final AtomicInteger done = new AtomicInteger();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("SDK call failed");
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.incrementAndGet();
+            }
+        });
+
+        assertTrue(executor.await(5000));
+        assertEquals(1, done.get());
+    }
+
+    @Test
+    public void benchmarkLuaThreadTimeInlineAgainstOrdered() throws Exception {
+        long inline = dispatchNanos(false);
+        long ordered = dispatchNanos(true);
+
+        Benchmark.report("adjust_* dispatch", "inline", inline);
+        Benchmark.report("adjust_* dispatch", "ordered", ordered);
+        assertTrue(ordered < inline);
+    }
+
+    // Median Lua thread time of 50 session parameter calls into an SDK spending 200 us per call
+    private static long dispatchNanos(boolean ordered) throws Exception {
+        final PluginHarness harness = new PluginHarness(new FakeAdjustSdk(200000L));
+        try {
+            harness.create("2fm9gkqubvpc", "asyncSdkCalls", ordered);
+            final AtomicInteger value = new AtomicInteger();
+
+            long nanos = Benchmark.median(9, new Runnable() {
+                @Override
+                public void run() {
+                    // Distinct values, so none of the calls is dropped as unchanged
+                    for (int i = 0; i < 50; i++) {
+                        harness.call("addSessionCallbackParameter", "key" + i, "value" + value.incrementAndGet());
+                    }
+                }
+            });
+
+            assertTrue(harness.awaitSdk());
+            assertEquals(value.get(), harness.sdk.getCalls("addSessionCallbackParameter"));
+            return nanos;
+        } finally {
+            harness.close();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
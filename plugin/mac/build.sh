@@ -3,7 +3,7 @@
 path=`dirname $0`
 
 OUTPUT_DIR=$1
-TARGET_NAME=plugin_library
+TARGET_NAME=plugin_adjust
 OUTPUT_SUFFIX=dylib
 CONFIG=Release
 
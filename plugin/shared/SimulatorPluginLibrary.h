@@ -13,9 +13,9 @@
 
 // ----------------------------------------------------------------------------
 
-// This corresponds to the name of the library, e.g. [Lua] require "plugin.library"
+// This corresponds to the name of the library, e.g. [Lua] require "plugin.adjust"
 // where the '.' is replaced with '_'
-CORONA_EXPORT int luaopen_plugin_library( lua_State *L );
+CORONA_EXPORT int luaopen_plugin_adjust( lua_State *L );
 
 // ----------------------------------------------------------------------------
 
@@ -0,0 +1,750 @@
+local Library = require "CoronaLibrary"
+local json = require "json"
+
+-- Create simulator library
+-- Mirrors every function registered by the Android LuaLoader. Calls are recorded in memory,
+-- SDK callbacks are scripted with realistic latency and the time spent in Lua listeners is profiled,
+-- so analytics code can be exercised and measured in the Corona Simulator.
+local lib = Library:new{ name='plugin.adjust', publisherId='com.adjust' }
+
+-- Simulator state
+-- ------------------------
+local defaultConfig = {
+	-- Milliseconds between a call and the scripted SDK callback it triggers
+	latency = {
+		session = 350,
+		attribution = 900,
+		event = 250,
+		getter = 16,
+	},
+	-- Probability (0..1) that a session or event package fails
+	failureRate = 0,
+	-- willRetry value reported for failures
+	willRetry = true,
+	-- Payload size of the scripted jsonResponse, in characters
+	jsonResponseSize = 64,
+	attribution = {
+		trackerToken = "abc123",
+		trackerName = "Simulator::Tracker",
+		network = "Simulator",
+		campaign = "",
+		adgroup = "",
+		creative = "",
+		clickLabel = "",
+		adid = "00000000000000000000000000000000",
+	},
+	adid = "00000000000000000000000000000000",
+	googleAdId = "00000000-0000-0000-0000-000000000000",
+	-- Print every simulated call
+	verbose = false,
+}
+
+local config
+local calls
+local callProfile
+local listenerProfile
+local listeners
+local filteredListeners
+local nextHandle
+local enabled
+local offlineMode
+local started
+local lazyJsonResponse
+local schedulerMetrics
+local applied
+local suppressed
+local diagnosticsThresholdMs
+local eventTables
+local eventStats
+local heldEvents
+local attributionDebounceMs
+local lastAttribution
+local pendingAttribution
+local parameterLimits
+local parameterViolations
+local timers
+local googleAdIdMetrics
+
+local function copy(t)
+	local result = {}
+	for k, v in pairs(t) do
+		result[k] = type(v) == "table" and copy(v) or v
+	end
+	return result
+end
+
+local function reset()
+	config = copy(defaultConfig)
+	calls = {}
+	callProfile = {}
+	listenerProfile = {}
+	listeners = {}
+	filteredListeners = {}
+	nextHandle = 1
+	enabled = true
+	offlineMode = false
+	started = false
+	lazyJsonResponse = false
+	-- Values last applied through the setters; session parameters as { [key] = value or false }
+	applied = { sessionCallbackParameters = {}, sessionPartnerParameters = {} }
+	suppressed = {}
+	diagnosticsThresholdMs = nil
+	eventTables = nil
+	-- Counters per event token; not persisted in the simulator
+	eventStats = {}
+	-- Events kept during gameplay, nil when not holding
+	heldEvents = nil
+	-- Attributions equal to the last one delivered are dropped, rapid changes are merged
+	attributionDebounceMs = 250
+	lastAttribution = nil
+	pendingAttribution = nil
+	-- Size limits from create(), in bytes; nil when none are set
+	parameterLimits = nil
+	-- Start times by timer name, from system.getTimer()
+	timers = {}
+	googleAdIdMetrics = { prefetching = false, resolved = false, lookupMs = -1, answeredFromCache = 0 }
+	parameterViolations = { keyTooLong = 0, valueTooLong = 0, setTooLarge = 0, truncated = 0, rejected = 0 }
+	schedulerMetrics = {
+		highPriorityForwarded = 0,
+		lowPriorityForwarded = 0,
+		lowPriorityQueued = 0,
+		lowPriorityMaxQueued = 0,
+		lowPriorityAverageWaitMs = 0,
+		lowPriorityMaxWaitMs = 0,
+		held = 0,
+		heldQueued = 0,
+	}
+end
+
+reset()
+
+local function addTime(profile, key, elapsed)
+	local entry = profile[key]
+	if not entry then
+		entry = { count = 0, totalMs = 0, maxMs = 0 }
+		profile[key] = entry
+	end
+	entry.count = entry.count + 1
+	entry.totalMs = entry.totalMs + elapsed
+	if elapsed > entry.maxMs then
+		entry.maxMs = elapsed
+	end
+end
+
+local function record(name, ...)
+	calls[#calls + 1] = { name = name, time = system.getTimer(), args = { ... } }
+end
+
+-- Wraps a simulator function so each call is recorded and its own cost is profiled
+local function define(name, fn)
+	lib[name] = function(...)
+		local start = system.getTimer()
+		record(name, ...)
+		if config.verbose then
+			print("[Adjust simulator]: " .. name)
+		end
+		local a, b = fn(...)
+		local elapsed = system.getTimer() - start
+		addTime(callProfile, name, elapsed)
+		if diagnosticsThresholdMs and elapsed > diagnosticsThresholdMs then
+			print(string.format("[Adjust simulator]: adjust.%s blocked the calling thread for %.3f ms (threshold %d ms)",
+				name, elapsed, diagnosticsThresholdMs))
+		end
+		return a, b
+	end
+end
+
+-- Calls a Lua listener and profiles the time spent in it, per event name
+-- With poolEventTables one table per event name is reused, as on device, so listeners keeping it show up here too
+local function deliver(listener, name, message, getJsonResponse)
+	local event
+	if eventTables then
+		event = eventTables[name] or { name = name }
+		eventTables[name] = event
+		event.message = message
+		event.getJsonResponse = getJsonResponse
+	else
+		event = { name = name, message = message, getJsonResponse = getJsonResponse }
+	end
+	local start = system.getTimer()
+	if type(listener) == "function" then
+		listener(event)
+	elseif type(listener) == "table" and type(listener[name]) == "function" then
+		listener[name](listener, event)
+	end
+	addTime(listenerProfile, name, system.getTimer() - start)
+end
+
+local function later(delay, fn)
+	timer.performWithDelay(math.max(1, delay), fn)
+end
+
+local function matches(filter, payload)
+	if not filter then
+		return true
+	end
+	if filter.eventToken ~= nil and payload.eventToken ~= nil then
+		local tokens = type(filter.eventToken) == "table" and filter.eventToken or { filter.eventToken }
+		local found = false
+		for _, token in ipairs(tokens) do
+			if token == payload.eventToken then
+				found = true
+				break
+			end
+		end
+		if not found then
+			return false
+		end
+	end
+	if filter.willRetry ~= nil and payload.willRetry ~= nil and tostring(filter.willRetry) ~= payload.willRetry then
+		return false
+	end
+	return true
+end
+
+-- Keeps only the given payload fields, or all of them when fields is nil
+local function project(payload, fields)
+	if not fields then
+		return payload
+	end
+	local result = {}
+	for _, field in ipairs(fields) do
+		result[field] = payload[field]
+	end
+	return result
+end
+
+-- Delivers a scripted SDK callback to the primary and matching filtered listeners of a type
+local function fire(listenerType, name, payload)
+	local targets = {}
+	if listeners[listenerType] then
+		targets[#targets + 1] = listeners[listenerType]
+	end
+	for _, entry in ipairs(filteredListeners) do
+		if entry.type == listenerType and matches(entry.filter, payload) then
+			targets[#targets + 1] = { listener = entry.listener, fields = entry.filter and entry.filter.fields }
+		end
+	end
+	if #targets == 0 then
+		return
+	end
+
+	-- With lazyJsonResponse the server response is left out of message and served by event:getJsonResponse()
+	local getJsonResponse
+	if lazyJsonResponse and payload.jsonResponse ~= nil then
+		local response = payload.jsonResponse
+		payload = copy(payload)
+		payload.jsonResponse = nil
+		getJsonResponse = function()
+			return response
+		end
+	end
+
+	local message = json.encode(payload)
+	for _, target in ipairs(targets) do
+		deliver(target.listener, name, target.fields and json.encode(project(payload, target.fields)) or message, getJsonResponse)
+	end
+end
+
+local function timestamp()
+	return os.date("!%Y-%m-%dT%H:%M:%S.000Z")
+end
+
+local function jsonResponse()
+	return json.encode({ simulator = string.rep("x", config.jsonResponseSize) })
+end
+
+local function failed()
+	return config.failureRate > 0 and math.random() < config.failureRate
+end
+
+local function sameAttribution(a, b)
+	for _, key in ipairs({ "trackerToken", "trackerName", "network", "campaign", "adgroup", "creative", "clickLabel", "adid" }) do
+		if a[key] ~= b[key] then
+			return false
+		end
+	end
+	return true
+end
+
+local function reportAttribution(attribution)
+	local scheduled = pendingAttribution ~= nil
+	pendingAttribution = attribution
+	if scheduled then
+		return
+	end
+	later(attributionDebounceMs, function()
+		local latest = pendingAttribution
+		pendingAttribution = nil
+		if latest and not (lastAttribution and sameAttribution(lastAttribution, latest)) then
+			lastAttribution = latest
+			fire("attribution", "adjust_attribution", copy(latest))
+		end
+	end)
+end
+
+local function scriptSession()
+	later(config.latency.session, function()
+		if failed() then
+			fire("sessionTrackingFailure", "adjust_sessionTrackingFailure", {
+				message = "Simulated session failure",
+				timestamp = timestamp(),
+				adid = config.adid,
+				willRetry = tostring(config.willRetry),
+				jsonResponse = jsonResponse(),
+			})
+		else
+			fire("sessionTrackingSuccess", "adjust_sessionTrackingSuccess", {
+				message = "Session tracked",
+				timestamp = timestamp(),
+				adid = config.adid,
+				jsonResponse = jsonResponse(),
+			})
+		end
+	end)
+	later(config.latency.attribution, function()
+		reportAttribution(copy(config.attribution))
+	end)
+end
+
+local function countEvent(eventToken, counter)
+	local stats = eventStats[eventToken]
+	if not stats then
+		stats = { tracked = 0, succeeded = 0, failed = 0, retried = 0 }
+		eventStats[eventToken] = stats
+	end
+	stats[counter] = stats[counter] + 1
+end
+
+local function scriptEvent(eventToken)
+	later(config.latency.event, function()
+		if failed() then
+			countEvent(eventToken, config.willRetry and "retried" or "failed")
+			fire("eventTrackingFailure", "adjust_eventTrackingFailure", {
+				message = "Simulated event failure",
+				timestamp = timestamp(),
+				adid = config.adid,
+				eventToken = eventToken,
+				willRetry = tostring(config.willRetry),
+				jsonResponse = jsonResponse(),
+			})
+		else
+			countEvent(eventToken, "succeeded")
+			fire("eventTrackingSuccess", "adjust_eventTrackingSuccess", {
+				message = "Event tracked",
+				timestamp = timestamp(),
+				adid = config.adid,
+				eventToken = eventToken,
+				jsonResponse = jsonResponse(),
+			})
+		end
+	end)
+end
+
+-- Answers a getter through its listener after one frame, like the runtime task on device
+local function answer(listener, name, value)
+	if listener == nil then
+		return
+	end
+	later(config.latency.getter, function()
+		deliver(listener, name, value)
+	end)
+end
+
+local function noop()
+end
+
+local function suppress(name)
+	suppressed[name] = (suppressed[name] or 0) + 1
+end
+
+-- Returns true when a setter call would change SDK state, and counts it as suppressed otherwise
+local function changes(name, key, value)
+	if applied[key] == value then
+		suppress(name)
+		return false
+	end
+	applied[key] = value
+	return true
+end
+
+local function violation(kind)
+	parameterViolations[kind] = parameterViolations[kind] + 1
+end
+
+-- Returns the value to pass on, possibly truncated, or nil to drop the parameter
+local function admitParameter(key, value, setBytes)
+	local limits = parameterLimits
+	if not limits then
+		return value
+	end
+	if (limits.maxKeyBytes or 0) > 0 and #key > limits.maxKeyBytes then
+		violation("keyTooLong")
+		violation("rejected")
+		return nil
+	end
+	local maxValueBytes = limits.maxValueBytes or 0
+	if maxValueBytes > 0 and #value > maxValueBytes then
+		violation("valueTooLong")
+		if type(limits.oversized) == "string" and limits.oversized:lower() == "reject" then
+			violation("rejected")
+			return nil
+		end
+		-- Cut before a UTF-8 continuation byte, so no character is split
+		local cut = maxValueBytes
+		while cut > 0 and value:byte(cut + 1) >= 0x80 and value:byte(cut + 1) < 0xC0 do
+			cut = cut - 1
+		end
+		value = value:sub(1, cut)
+		violation("truncated")
+	end
+	if (limits.maxSetBytes or 0) > 0 and setBytes + #key + #value > limits.maxSetBytes then
+		violation("setTooLarge")
+		violation("rejected")
+		return nil
+	end
+	return value
+end
+
+local function admitParameters(parameters)
+	local setBytes = 0
+	for _, parameter in ipairs(parameters or {}) do
+		local value = admitParameter(parameter.key, parameter.value, setBytes)
+		if value then
+			setBytes = setBytes + #parameter.key + #value
+		end
+	end
+end
+
+-- Session parameter setters; a false value marks a key known to be absent. Whether a reset emptied the
+-- set is kept apart from the parameters, so no parameter key can collide with it.
+local function parameterSetters(kind)
+	local name, clearedName = "session" .. kind .. "Parameters", "session" .. kind .. "ParametersCleared"
+	local function parameters()
+		return applied[name]
+	end
+	local add, remove, reset = "addSession" .. kind .. "Parameter", "removeSession" .. kind .. "Parameter", "resetSession" .. kind .. "Parameters"
+
+	define(add, function(key, value)
+		local known = parameters()
+		local setBytes = 0
+		for knownKey, knownValue in pairs(known) do
+			if knownKey ~= key and knownValue then
+				setBytes = setBytes + #knownKey + #knownValue
+			end
+		end
+		value = admitParameter(key, value, setBytes)
+		if value == nil then
+			return
+		end
+		if known[key] == value then
+			suppress(add)
+		else
+			known[key] = value
+		end
+	end)
+	define(remove, function(key)
+		local known = parameters()
+		if known[key] == false or (known[key] == nil and applied[clearedName]) then
+			suppress(remove)
+		else
+			known[key] = false
+		end
+	end)
+	define(reset, function()
+		local known = parameters()
+		local empty = applied[clearedName] == true
+		for _, value in pairs(known) do
+			if value then
+				empty = false
+			end
+		end
+		if empty then
+			suppress(reset)
+		else
+			applied[name] = {}
+			applied[clearedName] = true
+		end
+	end)
+end
+
+-- SDK functions
+-- ------------------------
+define("create", function(adjustConfig)
+	if type(adjustConfig) ~= "table" then
+		print("[Adjust simulator]: create() must be supplied with a table")
+		return
+	end
+	started = true
+	lazyJsonResponse = adjustConfig.lazyJsonResponse == true
+	if type(adjustConfig.parameterLimits) == "table" then
+		parameterLimits = copy(adjustConfig.parameterLimits)
+	end
+	if adjustConfig.attributionDebounceMs ~= nil then
+		attributionDebounceMs = adjustConfig.attributionDebounceMs
+	end
+	if adjustConfig.poolEventTables then
+		eventTables = eventTables or {}
+	end
+	if enabled and not offlineMode then
+		scriptSession()
+	end
+end)
+
+local function forwardEvent(event, highPriority)
+	if highPriority then
+		schedulerMetrics.highPriorityForwarded = schedulerMetrics.highPriorityForwarded + 1
+	else
+		schedulerMetrics.lowPriorityForwarded = schedulerMetrics.lowPriorityForwarded + 1
+	end
+	if started and enabled and not offlineMode then
+		scriptEvent(event.eventToken)
+	end
+end
+
+local function trackEvent(event)
+	if type(event) ~= "table" then
+		print("[Adjust simulator]: trackEvent() must be supplied with a table")
+		return
+	end
+	local highPriority = event.revenue ~= nil or event.transactionId ~= nil or event.priority ~= "low"
+	countEvent(event.eventToken, "tracked")
+	admitParameters(event.callbackParameters)
+	admitParameters(event.partnerParameters)
+	if heldEvents and event.revenue == nil and event.transactionId == nil then
+		heldEvents[#heldEvents + 1] = { event = event, highPriority = highPriority }
+		schedulerMetrics.held = schedulerMetrics.held + 1
+		schedulerMetrics.heldQueued = #heldEvents
+		return
+	end
+	forwardEvent(event, highPriority)
+end
+
+define("trackEvent", trackEvent)
+
+define("startTimer", function(name)
+	timers[name] = system.getTimer()
+end)
+
+define("trackEventWithTimer", function(event, name, durationKey)
+	local start = timers[name]
+	timers[name] = nil
+	if start == nil or type(event) ~= "table" then
+		if start == nil then
+			print("[Adjust simulator]: trackEventWithTimer(): timer " .. tostring(name) .. " was not started")
+		end
+		trackEvent(event)
+		return nil
+	end
+	local duration = math.floor(system.getTimer() - start)
+	local timed = copy(event)
+	timed.partnerParameters = timed.partnerParameters or {}
+	timed.partnerParameters[#timed.partnerParameters + 1] = { key = durationKey or "duration", value = tostring(duration) }
+	trackEvent(timed)
+	return duration
+end)
+
+-- Held events are released together when the game is loading or idle again
+define("setGameState", function(gameState)
+	if gameState == "gameplay" then
+		heldEvents = heldEvents or {}
+	elseif gameState == "loading" or gameState == "idle" then
+		local release = heldEvents or {}
+		heldEvents = nil
+		schedulerMetrics.heldQueued = 0
+		for _, held in ipairs(release) do
+			forwardEvent(held.event, held.highPriority)
+		end
+	else
+		print("[Adjust simulator]: setGameState(): unknown game state " .. tostring(gameState))
+	end
+end)
+
+define("setEnabled", function(value)
+	if changes("setEnabled", "enabled", value) then
+		enabled = value
+	end
+end)
+
+define("isEnabled", function(listener)
+	answer(listener, "adjust_isEnabled", enabled and "true" or "false")
+end)
+
+define("setOfflineMode", function(value)
+	if changes("setOfflineMode", "offlineMode", value) then
+		offlineMode = value
+	end
+end)
+
+define("setReferrer", function(value)
+	changes("setReferrer", "referrer", value)
+end)
+
+define("setPushToken", function(value)
+	changes("setPushToken", "pushToken", value)
+end)
+
+define("appWillOpenUrl", noop)
+define("sendFirstPackage", noop)
+parameterSetters("Callback")
+parameterSetters("Partner")
+
+-- Slow calls are reported as they happen; lib.simulator.printProfile() prints the summary
+define("setDiagnosticsEnabled", function(value, thresholdMs)
+	diagnosticsThresholdMs = value and (thresholdMs or 4) or nil
+end)
+
+define("getSuppressedCalls", function()
+	return copy(suppressed)
+end)
+
+define("getParameterViolations", function()
+	return copy(parameterViolations)
+end)
+
+define("getEventStats", function(eventToken)
+	local stats = eventStats[eventToken]
+	return stats and copy(stats) or { tracked = 0, succeeded = 0, failed = 0, retried = 0 }
+end)
+
+define("getIdfa", function(listener)
+	answer(listener, "adjust_getIdfa", "")
+end)
+
+define("getAttribution", function(listener)
+	answer(listener, "adjust_getAttribution", json.encode(started and config.attribution or {}))
+end)
+
+define("getAdid", function(listener)
+	answer(listener, "adjust_getAdid", started and config.adid or "")
+end)
+
+define("getGoogleAdId", function(listener)
+	if googleAdIdMetrics.resolved then
+		googleAdIdMetrics.answeredFromCache = googleAdIdMetrics.answeredFromCache + 1
+	end
+	answer(listener, "adjust_getGoogleAdId", config.googleAdId)
+end)
+
+-- The simulated lookup takes one getter latency
+define("prefetchGoogleAdId", function()
+	if googleAdIdMetrics.prefetching then
+		return
+	end
+	googleAdIdMetrics.prefetching = true
+	later(config.latency.getter, function()
+		googleAdIdMetrics.resolved = true
+		googleAdIdMetrics.lookupMs = config.latency.getter
+	end)
+end)
+
+define("getGoogleAdIdMetrics", function()
+	return copy(googleAdIdMetrics)
+end)
+
+define("getAmazonAdId", function(listener)
+	answer(listener, "adjust_getAmazonAdId", "")
+end)
+
+define("getEventSchedulerMetrics", function()
+	return copy(schedulerMetrics)
+end)
+
+-- Calls are always recorded in the simulator, see lib.simulator.getCalls()
+define("startBridgeTrace", noop)
+define("stopBridgeTrace", noop)
+
+-- Listeners
+-- ------------------------
+local listenerSetters = {
+	setAttributionListener = "attribution",
+	setEventTrackingSuccessListener = "eventTrackingSuccess",
+	setEventTrackingFailureListener = "eventTrackingFailure",
+	setSessionTrackingSuccessListener = "sessionTrackingSuccess",
+	setSessionTrackingFailureListener = "sessionTrackingFailure",
+	setDeferredDeeplinkListener = "deferredDeeplink",
+}
+
+for name, listenerType in pairs(listenerSetters) do
+	define(name, function(listener, fields)
+		listeners[listenerType] = listener and { listener = listener, fields = fields } or nil
+	end)
+end
+
+define("addListener", function(listenerType, listener, filter)
+	local handle = nextHandle
+	nextHandle = nextHandle + 1
+	filteredListeners[#filteredListeners + 1] = { handle = handle, type = listenerType, listener = listener, filter = filter }
+	return handle
+end)
+
+define("removeListener", function(handle)
+	for i, entry in ipairs(filteredListeners) do
+		if entry.handle == handle then
+			table.remove(filteredListeners, i)
+			return
+		end
+	end
+end)
+
+-- Simulator-only API
+-- ------------------------
+lib.simulator = {}
+
+-- Overrides entries of the scripted behaviour, e.g. { failureRate = 0.2, latency = { event = 1000 } }
+function lib.simulator.configure(options)
+	for k, v in pairs(options) do
+		if type(v) == "table" and type(config[k]) == "table" then
+			for k2, v2 in pairs(v) do
+				config[k][k2] = v2
+			end
+		else
+			config[k] = v
+		end
+	end
+end
+
+-- Fires a callback of the given type with the given payload, e.g. to script a deferred deep link
+function lib.simulator.fire(listenerType, payload)
+	fire(listenerType, "adjust_" .. listenerType, payload)
+end
+
+-- Recorded calls: array of { name, time, args }
+function lib.simulator.getCalls()
+	return calls
+end
+
+-- Profile of the simulator functions (calls) and of the Lua listeners (listeners), per name:
+-- { count, totalMs, maxMs, averageMs }
+function lib.simulator.getProfile()
+	local function finish(profile)
+		local result = {}
+		for name, entry in pairs(profile) do
+			result[name] = {
+				count = entry.count,
+				totalMs = entry.totalMs,
+				maxMs = entry.maxMs,
+				averageMs = entry.totalMs / entry.count,
+			}
+		end
+		return result
+	end
+	return { calls = finish(callProfile), listeners = finish(listenerProfile) }
+end
+
+function lib.simulator.printProfile()
+	local profile = lib.simulator.getProfile()
+	for _, section in ipairs({ "calls", "listeners" }) do
+		print("[Adjust simulator]: " .. section)
+		for name, entry in pairs(profile[section]) do
+			print(string.format("[Adjust simulator]:   %-36s count=%d total=%.3fms avg=%.3fms max=%.3fms",
+				name, entry.count, entry.totalMs, entry.averageMs, entry.maxMs))
+		end
+	end
+end
+
+-- Clears recorded calls, profiles, listeners and configuration
+lib.simulator.reset = reset
+
+-- Return an instance
+return lib